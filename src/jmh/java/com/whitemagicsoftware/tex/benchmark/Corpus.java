@@ -0,0 +1,66 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.benchmark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Loads the formulas of a benchmark tier, one formula per line; lines
+ * starting with {@code #} are comments.
+ */
+public final class Corpus {
+  private Corpus() {
+  }
+
+  /**
+   * @param tier {@code trivial}, {@code typical}, or {@code pathological}
+   * @return the formulas of the given tier
+   */
+  public static String[] load( final String tier ) {
+    final var name = "/corpus/" + tier + ".txt";
+    final var stream = Corpus.class.getResourceAsStream( name );
+
+    if( stream == null ) {
+      throw new IllegalArgumentException( "Unknown corpus tier: " + tier );
+    }
+
+    try( final var in = new BufferedReader(
+        new InputStreamReader( stream, UTF_8 ) ) ) {
+      final var formulas = new ArrayList<String>();
+      String line;
+
+      while( (line = in.readLine()) != null ) {
+        if( !line.isBlank() && !line.startsWith( "#" ) ) {
+          formulas.add( line );
+        }
+      }
+
+      return formulas.toArray( new String[ 0 ] );
+    } catch( final IOException e ) {
+      throw new UncheckedIOException( e );
+    }
+  }
+}
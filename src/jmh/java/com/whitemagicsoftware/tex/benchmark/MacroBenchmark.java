@@ -0,0 +1,372 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.benchmark;
+
+import com.whitemagicsoftware.tex.DefaultTeXFont;
+import com.whitemagicsoftware.tex.TeXEnvironment;
+import com.whitemagicsoftware.tex.TeXFormula;
+import com.whitemagicsoftware.tex.TeXLayout;
+import com.whitemagicsoftware.tex.boxes.Box;
+import com.whitemagicsoftware.tex.graphics.SvgGraphics2D;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.lang.String.format;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Replays every corpus tier plus synthetic deeply nested formulas, from
+ * parsing to the final SVG string, on several threads for a fixed time.
+ * Reports throughput, latency percentiles and histogram, and output size,
+ * and optionally compares them against a stored baseline, exiting with
+ * status 1 on a regression beyond the threshold. A baseline recorded with a
+ * different thread count, corpus size, or depth is refused, also with
+ * status 1, since its measurements aren't comparable.
+ * <p>
+ * Options (all optional): {@code --threads=N}, {@code --warmup=SECONDS},
+ * {@code --duration=SECONDS}, {@code --depth=N}, {@code --baseline=FILE},
+ * {@code --save=FILE}, and {@code --threshold=FRACTION}.
+ * </p>
+ */
+public final class MacroBenchmark {
+  private static final float SIZE = 20f;
+
+  private static final String[] TIERS = {
+      "trivial", "typical", "pathological"
+  };
+
+  private static final String THROUGHPUT = "throughput";
+  private static final String P50 = "p50";
+  private static final String P99 = "p99";
+  private static final String P999 = "p999";
+  private static final String BYTES = "bytesPerFormula";
+
+  private static final String THREADS = "threads";
+  private static final String FORMULAS = "formulas";
+  private static final String DEPTH = "depth";
+
+  private MacroBenchmark() {
+  }
+
+  public static void main( final String[] args ) throws Exception {
+    final var options = new HashMap<String, String>();
+
+    for( final var arg : args ) {
+      final int eq = arg.indexOf( '=' );
+
+      if( !arg.startsWith( "--" ) || eq < 0 ) {
+        throw new IllegalArgumentException( "Expected --name=value: " + arg );
+      }
+
+      options.put( arg.substring( 2, eq ), arg.substring( eq + 1 ) );
+    }
+
+    final int threads = Integer.parseInt( options.getOrDefault(
+        "threads", Integer.toString(
+            Runtime.getRuntime().availableProcessors() ) ) );
+    final int warmup = Integer.parseInt( options.getOrDefault( "warmup", "10" ) );
+    final int duration =
+        Integer.parseInt( options.getOrDefault( "duration", "30" ) );
+    final int depth = Integer.parseInt( options.getOrDefault( "depth", "24" ) );
+    final double threshold =
+        Double.parseDouble( options.getOrDefault( "threshold", "0.10" ) );
+
+    final var corpus = corpus( depth );
+    System.out.printf( "corpus: %d formulas, %d threads%n",
+                       corpus.length, threads );
+
+    run( corpus, threads, warmup );
+    final var result = run( corpus, threads, duration );
+    result.mDepth = depth;
+    result.print();
+
+    final var save = options.get( "save" );
+    if( save != null ) {
+      result.store( Path.of( save ) );
+    }
+
+    final var baseline = options.get( "baseline" );
+    if( baseline != null &&
+        !result.compare( load( Path.of( baseline ) ), threshold ) ) {
+      System.exit( 1 );
+    }
+  }
+
+  /**
+   * Combines every tier with synthetic formulas nested up to the given
+   * depth.
+   */
+  private static String[] corpus( final int depth ) {
+    final var formulas = new ArrayList<String>();
+
+    for( final var tier : TIERS ) {
+      formulas.addAll( Arrays.asList( Corpus.load( tier ) ) );
+    }
+
+    for( int d = 4; d <= depth; d += 4 ) {
+      formulas.add( "\\frac{".repeat( d ) + "1" + "}{2}".repeat( d ) );
+      formulas.add( "x^{".repeat( d ) + "y" + "}".repeat( d ) );
+      formulas.add( "\\sqrt{".repeat( d ) + "x" + "}".repeat( d ) );
+      formulas.add( "{a_{".repeat( d ) + "b" + "}}".repeat( d ) );
+    }
+
+    return formulas.toArray( new String[ 0 ] );
+  }
+
+  private static Result run(
+      final String[] corpus, final int threads, final int seconds )
+      throws Exception {
+    final var executor = Executors.newFixedThreadPool( threads );
+    final long deadline = System.nanoTime() + SECONDS.toNanos( seconds );
+    final long start = System.nanoTime();
+
+    try {
+      final var workers = new ArrayList<Callable<Result>>();
+
+      for( int t = 0; t < threads; t++ ) {
+        final int offset = t * corpus.length / threads;
+        workers.add( () -> replay( corpus, offset, deadline ) );
+      }
+
+      final var result = new Result();
+
+      for( final Future<Result> worker : executor.invokeAll( workers ) ) {
+        result.add( worker.get() );
+      }
+
+      result.mElapsed = System.nanoTime() - start;
+      result.mThreads = threads;
+      result.mFormulas = corpus.length;
+      return result;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static Result replay(
+      final String[] corpus, final int offset, final long deadline ) {
+    final var env = new TeXEnvironment( new DefaultTeXFont( SIZE ) );
+    final var g = new SvgGraphics2D();
+    final var result = new Result();
+    int i = offset;
+
+    g.scale( SIZE, SIZE );
+
+    while( System.nanoTime() < deadline ) {
+      final long began = System.nanoTime();
+      final var formula = new TeXFormula( corpus[ i ] );
+      final Box box = formula.createBox( env );
+
+      final var layout = new TeXLayout( box, SIZE );
+      g.initialize( layout.getWidth(), layout.getHeight() );
+      box.draw( g, layout.getX(), layout.getY() );
+      final var svg = g.toString();
+
+      result.record( System.nanoTime() - began, svg.length() );
+      i = i + 1 == corpus.length ? 0 : i + 1;
+    }
+
+    return result;
+  }
+
+  private static Properties load( final Path path ) throws IOException {
+    final var properties = new Properties();
+
+    try( final Reader in = Files.newBufferedReader( path ) ) {
+      properties.load( in );
+    }
+
+    return properties;
+  }
+
+  /**
+   * Latencies and output sizes of the formulas rendered by one or more
+   * threads.
+   */
+  private static final class Result {
+    private long[] mLatencies = new long[ 1 << 16 ];
+    private int mCount;
+    private long mBytes;
+    private long mElapsed;
+    private int mThreads;
+    private int mFormulas;
+    private int mDepth;
+
+    private void record( final long latency, final int bytes ) {
+      if( mCount == mLatencies.length ) {
+        mLatencies = Arrays.copyOf( mLatencies, mCount * 2 );
+      }
+
+      mLatencies[ mCount++ ] = latency;
+      mBytes += bytes;
+    }
+
+    private void add( final Result other ) {
+      for( int i = 0; i < other.mCount; i++ ) {
+        record( other.mLatencies[ i ], 0 );
+      }
+
+      mBytes += other.mBytes;
+    }
+
+    private Map<String, Double> metrics() {
+      Arrays.sort( mLatencies, 0, mCount );
+
+      final var metrics = new LinkedHashMap<String, Double>();
+      metrics.put( THROUGHPUT, mCount / (mElapsed / 1e9) );
+      metrics.put( P50, percentile( 0.50 ) );
+      metrics.put( P99, percentile( 0.99 ) );
+      metrics.put( P999, percentile( 0.999 ) );
+      metrics.put( BYTES, (double) mBytes / Math.max( 1, mCount ) );
+      return metrics;
+    }
+
+    /**
+     * @return the latency at the given fraction, in microseconds
+     */
+    private double percentile( final double fraction ) {
+      if( mCount == 0 ) {
+        return 0;
+      }
+
+      final int index = (int) Math.ceil( fraction * mCount ) - 1;
+      return mLatencies[ Math.max( 0, index ) ] / 1e3;
+    }
+
+    private void print() {
+      final var m = metrics();
+
+      System.out.printf( "formulas: %d in %.1f s%n", mCount, mElapsed / 1e9 );
+      System.out.printf( "throughput: %.1f formulas/s%n", m.get( THROUGHPUT ) );
+      System.out.printf( "latency: p50=%.1f us, p99=%.1f us, p999=%.1f us, " +
+                             "max=%.1f us%n",
+                         m.get( P50 ), m.get( P99 ), m.get( P999 ),
+                         mCount == 0 ? 0 : mLatencies[ mCount - 1 ] / 1e3 );
+      System.out.printf( "output: %.1f bytes/formula%n", m.get( BYTES ) );
+      System.out.println( "latency histogram (us):" );
+
+      int i = 0;
+
+      for( long bound = 1; i < mCount; bound <<= 1 ) {
+        final int from = i;
+
+        while( i < mCount && mLatencies[ i ] / 1000 < bound ) {
+          i++;
+        }
+
+        if( i > from ) {
+          System.out.printf( "  < %8d: %d%n", bound, i - from );
+        }
+      }
+    }
+
+    private void store( final Path path ) throws IOException {
+      final var properties = new Properties();
+      metrics().forEach( ( k, v ) -> properties.setProperty(
+          k, Double.toString( v ) ) );
+      configuration().forEach( ( k, v ) -> properties.setProperty(
+          k, Integer.toString( v ) ) );
+
+      try( final Writer out = Files.newBufferedWriter( path ) ) {
+        properties.store( out, "MacroBenchmark baseline" );
+      }
+    }
+
+    /**
+     * @return the settings that measurements depend on
+     */
+    private Map<String, Integer> configuration() {
+      final var configuration = new LinkedHashMap<String, Integer>();
+      configuration.put( THREADS, mThreads );
+      configuration.put( FORMULAS, mFormulas );
+      configuration.put( DEPTH, mDepth );
+      return configuration;
+    }
+
+    /**
+     * @return {@code false} if the baseline was recorded with different
+     * settings, or any metric regressed beyond the threshold
+     */
+    private boolean compare( final Properties baseline,
+                             final double threshold ) {
+      final List<String> mismatches = new ArrayList<>();
+
+      for( final var setting : configuration().entrySet() ) {
+        final var stored = baseline.getProperty( setting.getKey() );
+        final var now = Integer.toString( setting.getValue() );
+
+        if( !now.equals( stored ) ) {
+          mismatches.add( format( "%s is %s, baseline has %s",
+                                  setting.getKey(), now, stored ) );
+        }
+      }
+
+      if( !mismatches.isEmpty() ) {
+        System.out.println( "Not comparable with the baseline:" );
+        mismatches.forEach( m -> System.out.println( "  " + m ) );
+        return false;
+      }
+
+      final var current = metrics();
+      final List<String> regressions = new ArrayList<>();
+
+      for( final var metric : current.entrySet() ) {
+        final var stored = baseline.getProperty( metric.getKey() );
+
+        if( stored == null ) {
+          continue;
+        }
+
+        final double was = Double.parseDouble( stored );
+        final double now = metric.getValue();
+        final double change = was == 0 ? 0 : (now - was) / was;
+
+        // Higher is better for throughput only.
+        final double regression =
+            THROUGHPUT.equals( metric.getKey() ) ? -change : change;
+
+        System.out.printf( "%s: %.1f -> %.1f (%+.1f%%)%n",
+                           metric.getKey(), was, now, change * 100 );
+
+        if( regression > threshold ) {
+          regressions.add( format( "%s regressed by %.1f%%",
+                                   metric.getKey(), regression * 100 ) );
+        }
+      }
+
+      regressions.forEach( System.out::println );
+      return regressions.isEmpty();
+    }
+  }
+}
@@ -0,0 +1,193 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.benchmark;
+
+import com.whitemagicsoftware.tex.DefaultTeXFont;
+import com.whitemagicsoftware.tex.TeXEnvironment;
+import com.whitemagicsoftware.tex.TeXFormula;
+import com.whitemagicsoftware.tex.TeXLayout;
+import com.whitemagicsoftware.tex.boxes.Box;
+import com.whitemagicsoftware.tex.graphics.AbstractGraphics2D;
+import com.whitemagicsoftware.tex.graphics.SvgDomGraphics2D;
+import com.whitemagicsoftware.tex.graphics.SvgGraphics2D;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures each rendering phase in isolation: parsing, layout, drawing, and
+ * serializing. Every invocation processes the next formula of the tier, so
+ * scores are formulas per second. Run with {@code -prof gc} (the default in
+ * the build) to report allocation rates.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.Throughput )
+@OutputTimeUnit( TimeUnit.SECONDS )
+@Warmup( iterations = 3, time = 2 )
+@Measurement( iterations = 5, time = 2 )
+@Fork( 1 )
+public class PhaseBenchmark {
+  private static final float SIZE = 20f;
+
+  @Param( { "trivial", "typical", "pathological" } )
+  public String tier;
+
+  private String[] mTex;
+  private TeXFormula[] mFormulas;
+  private Box[] mBoxes;
+  private TeXLayout[] mLayouts;
+  private TeXEnvironment mEnv;
+  private final SvgGraphics2D mSvg = new SvgGraphics2D();
+  private final SvgDomGraphics2D mSvgDom = new SvgDomGraphics2D();
+  private int mIndex;
+
+  @Setup
+  public void setup() {
+    mTex = Corpus.load( tier );
+    mEnv = new TeXEnvironment( new DefaultTeXFont( SIZE ) );
+
+    final int n = mTex.length;
+    mFormulas = new TeXFormula[ n ];
+    mBoxes = new Box[ n ];
+    mLayouts = new TeXLayout[ n ];
+
+    for( int i = 0; i < n; i++ ) {
+      mFormulas[ i ] = new TeXFormula( mTex[ i ] );
+      mBoxes[ i ] = mFormulas[ i ].createBox( mEnv );
+      mLayouts[ i ] = new TeXLayout( mBoxes[ i ], SIZE );
+    }
+
+    mSvg.scale( SIZE, SIZE );
+    mSvgDom.scale( SIZE, SIZE );
+  }
+
+  @Benchmark
+  public TeXFormula parse() {
+    return new TeXFormula( mTex[ next() ] );
+  }
+
+  @Benchmark
+  public Box layout() {
+    return mFormulas[ next() ].createBox( mEnv );
+  }
+
+  @Benchmark
+  public SvgGraphics2D drawSvg() {
+    return draw( mSvg, next() );
+  }
+
+  @Benchmark
+  public SvgDomGraphics2D drawSvgDom() {
+    return draw( mSvgDom, next() );
+  }
+
+  /**
+   * The string builder can only be serialized once per drawing, so each
+   * invocation draws first; see {@link #serializeSvg(DrawnSvg)} for the
+   * serialization alone.
+   */
+  @Benchmark
+  public String drawAndSerializeSvg() {
+    return draw( mSvg, next() ).toString();
+  }
+
+  @Benchmark
+  public String serializeSvg( final DrawnSvg drawn ) {
+    return drawn.mGraphics.toString();
+  }
+
+  @Benchmark
+  public String serializeSvgDom( final DrawnSvgDom drawn ) {
+    return drawn.next().toString();
+  }
+
+  private <G extends AbstractGraphics2D> G draw( final G g, final int i ) {
+    final var layout = mLayouts[ i ];
+
+    g.initialize( layout.getWidth(), layout.getHeight() );
+    mBoxes[ i ].draw( g, layout.getX(), layout.getY() );
+
+    return g;
+  }
+
+  private int next() {
+    final int i = mIndex;
+    mIndex = i + 1 == mTex.length ? 0 : i + 1;
+    return i;
+  }
+
+  /**
+   * Draws the next formula before each invocation, because serializing
+   * {@link SvgGraphics2D} finishes the document. The per-invocation setup
+   * adds timer overhead, which matters most for the trivial tier.
+   */
+  @State( Scope.Thread )
+  public static class DrawnSvg {
+    private final SvgGraphics2D mGraphics = new SvgGraphics2D();
+
+    @Setup( Level.Trial )
+    public void setup() {
+      mGraphics.scale( SIZE, SIZE );
+    }
+
+    @Setup( Level.Invocation )
+    public void draw( final PhaseBenchmark benchmark ) {
+      benchmark.draw( mGraphics, benchmark.next() );
+    }
+  }
+
+  /**
+   * Draws each formula of the tier once; serializing the DOM leaves it
+   * intact, so it's serialized repeatedly.
+   */
+  @State( Scope.Thread )
+  public static class DrawnSvgDom {
+    private SvgDomGraphics2D[] mDrawn;
+    private int mIndex;
+
+    @Setup( Level.Trial )
+    public void setup( final PhaseBenchmark benchmark ) {
+      mDrawn = new SvgDomGraphics2D[ benchmark.mTex.length ];
+
+      for( int i = 0; i < mDrawn.length; i++ ) {
+        mDrawn[ i ] = new SvgDomGraphics2D();
+        mDrawn[ i ].scale( SIZE, SIZE );
+        benchmark.draw( mDrawn[ i ], i );
+      }
+    }
+
+    private SvgDomGraphics2D next() {
+      final var g = mDrawn[ mIndex ];
+      mIndex = (mIndex + 1) % mDrawn.length;
+      return g;
+    }
+  }
+}
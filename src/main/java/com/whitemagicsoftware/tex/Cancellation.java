@@ -0,0 +1,185 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import com.whitemagicsoftware.tex.exceptions.RenderCancelledException;
+
+import java.awt.*;
+import java.time.Duration;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * Stops rendering a formula once it is cancelled or its deadline passes, so
+ * that a render exceeding its budget frees its thread promptly. Parsing
+ * checks between atoms (see {@link TeXFormula#TeXFormula(String,
+ * Cancellation)}), layout checks before each atom (see
+ * {@link TeXEnvironment#setCancellation(Cancellation)}), and drawing checks
+ * before each box that contains other boxes (see {@link #apply(Graphics2D)}).
+ * A cancelled render throws {@link RenderCancelledException}; its partial
+ * result is never returned.
+ * <p>
+ * Instances may be cancelled from any thread, and may be shared by the
+ * formulas of a single request.
+ * </p>
+ */
+public final class Cancellation {
+  /**
+   * Passes the cancellation to the boxes being drawn.
+   */
+  private static final RenderingHints.Key HINT = new RenderingHints.Key( 0 ) {
+    @Override
+    public boolean isCompatibleValue( final Object value ) {
+      return value instanceof Cancellation;
+    }
+  };
+
+  private final boolean mTimed;
+  private final long mDeadline;
+  private volatile boolean mCancelled;
+
+  /**
+   * Creates a cancellation without a deadline, which only stops rendering
+   * once {@link #cancel()} is called.
+   */
+  public Cancellation() {
+    mTimed = false;
+    mDeadline = 0;
+  }
+
+  private Cancellation( final long deadline ) {
+    mTimed = true;
+    mDeadline = deadline;
+  }
+
+  /**
+   * Creates a cancellation that stops rendering once the given time has
+   * elapsed from now, or once {@link #cancel()} is called.
+   *
+   * @param timeout the time budget for rendering
+   * @return a cancellation with a deadline
+   */
+  public static Cancellation after( final Duration timeout ) {
+    return new Cancellation( nanoTime() + timeout.toNanos() );
+  }
+
+  /**
+   * Stops rendering at the next check.
+   */
+  public void cancel() {
+    mCancelled = true;
+  }
+
+  /**
+   * @return {@code true} if rendering must stop
+   */
+  public boolean isCancelled() {
+    return mCancelled || mTimed && nanoTime() - mDeadline >= 0;
+  }
+
+  /**
+   * @throws RenderCancelledException if rendering must stop
+   */
+  public void check() {
+    if( mCancelled ) {
+      throw new RenderCancelledException( "Rendering cancelled" );
+    }
+
+    if( mTimed && nanoTime() - mDeadline >= 0 ) {
+      throw new RenderCancelledException( "Rendering deadline exceeded" );
+    }
+  }
+
+  /**
+   * Makes boxes drawn on the given graphics context check this cancellation,
+   * until the returned scope is closed. The cancellation is stored as a
+   * rendering hint, which every {@link Graphics2D} keeps; closing the scope
+   * restores the cancellation applied before, if any, so that the graphics
+   * context can be reused to draw other formulas.
+   *
+   * @param g the graphics context on which boxes will be drawn
+   * @return the scope in which boxes drawn on the context check this
+   * cancellation
+   */
+  public Scope apply( final Graphics2D g ) {
+    final var scope = new Scope( g, of( g ) );
+    g.setRenderingHint( HINT, this );
+    return scope;
+  }
+
+  /**
+   * Stops boxes drawn on the given graphics context from checking the
+   * cancellation applied to it, if any.
+   *
+   * @param g the graphics context on which boxes will be drawn
+   */
+  public static void clear( final Graphics2D g ) {
+    if( g.getRenderingHint( HINT ) != null ) {
+      // hints cannot be set to null, so the hint is removed from a copy
+      final RenderingHints hints = g.getRenderingHints();
+      hints.remove( HINT );
+      g.setRenderingHints( hints );
+    }
+  }
+
+  /**
+   * Returns the cancellation applied to the given graphics context. Drawing
+   * looks it up once, then checks it before each box that contains other
+   * boxes.
+   *
+   * @param g the graphics context on which boxes are being drawn
+   * @return the applied cancellation, or null if there is none
+   */
+  public static Cancellation of( final Graphics2D g ) {
+    final Object cancellation = g.getRenderingHint( HINT );
+
+    return cancellation instanceof Cancellation
+        ? (Cancellation) cancellation
+        : null;
+  }
+
+  /**
+   * The use of a cancellation by a graphics context, see
+   * {@link #apply(Graphics2D)}.
+   */
+  public static final class Scope implements AutoCloseable {
+    private final Graphics2D mGraphics;
+    private final Cancellation mPrevious;
+
+    private Scope( final Graphics2D g, final Cancellation previous ) {
+      mGraphics = g;
+      mPrevious = previous;
+    }
+
+    /**
+     * Restores the cancellation that was applied to the graphics context
+     * before this scope began, if any.
+     */
+    @Override
+    public void close() {
+      if( mPrevious == null ) {
+        clear( mGraphics );
+      }
+      else {
+        mGraphics.setRenderingHint( HINT, mPrevious );
+      }
+    }
+  }
+}
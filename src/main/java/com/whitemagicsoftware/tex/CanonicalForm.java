@@ -0,0 +1,156 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import com.whitemagicsoftware.tex.atoms.Atom;
+import com.whitemagicsoftware.tex.atoms.CanonicalWriter;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The canonical form of a parsed formula: text that is the same for two
+ * formulas when they parse to the same atoms, however they were written.
+ * For example, {@code x^2}, {@code x^{2}}, {@code x ^ 2}, and
+ * {@code {x}^{2}} all have the canonical form
+ * {@code scripts[0 char[0 'x' _] _ char[0 '2' _]]}. Formulas with the same
+ * canonical form render the same in the same style and size, so the form
+ * (or its fingerprint) can identify renderings in a cache, such as to
+ * transcode each distinct rendering once.
+ * <p>
+ * The fingerprint is the first 128 bits of the SHA-256 digest of the
+ * {@link #VERSION} and the canonical form, encoded as UTF-8. Neither
+ * depends on the JVM, so both may be stored. The version is incremented
+ * whenever an atom changes how it describes itself, so fingerprints from
+ * different versions never match.
+ * </p>
+ */
+public final class CanonicalForm {
+  /**
+   * Version of the canonical form's format.
+   */
+  public static final int VERSION = 1;
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final String mText;
+  private final byte[] mFingerprint;
+
+  private CanonicalForm( final String text ) {
+    mText = text;
+    mFingerprint = digest( VERSION + ":" + text );
+  }
+
+  /**
+   * Returns the canonical form of the given formula.
+   *
+   * @param formula the parsed formula
+   * @return the formula's canonical form, or {@code null} if it contains an
+   * atom that can't be described
+   */
+  public static CanonicalForm of( final TeXFormula formula ) {
+    return of( formula.getRoot() );
+  }
+
+  /**
+   * Returns the canonical form of the tree rooted at the given atom.
+   *
+   * @param root the root of the tree, or {@code null} for an empty formula
+   * @return the tree's canonical form, or {@code null} if it contains an
+   * atom that can't be described
+   */
+  public static CanonicalForm of( final Atom root ) {
+    if( root == null ) {
+      return new CanonicalForm( "" );
+    }
+
+    final var text = new CanonicalWriter().write( root, Integer.MAX_VALUE );
+    return text == null ? null : new CanonicalForm( text );
+  }
+
+  /**
+   * @return the canonical serialization of the formula's atoms
+   */
+  public String getText() {
+    return mText;
+  }
+
+  /**
+   * @return the 128-bit fingerprint, as 32 lowercase hexadecimal digits
+   */
+  public String getFingerprint() {
+    final var hex = new char[ mFingerprint.length * 2 ];
+
+    for( int i = 0; i < mFingerprint.length; i++ ) {
+      hex[ i * 2 ] = HEX[ (mFingerprint[ i ] >> 4) & 0xF ];
+      hex[ i * 2 + 1 ] = HEX[ mFingerprint[ i ] & 0xF ];
+    }
+
+    return new String( hex );
+  }
+
+  /**
+   * @return the first 64 bits of the fingerprint
+   */
+  public long getFingerprint64() {
+    long bits = 0;
+
+    for( int i = 0; i < Long.BYTES; i++ ) {
+      bits = (bits << 8) | (mFingerprint[ i ] & 0xFF);
+    }
+
+    return bits;
+  }
+
+  /**
+   * Compares the canonical forms, not only their fingerprints.
+   */
+  @Override
+  public boolean equals( final Object o ) {
+    return o instanceof CanonicalForm &&
+        mText.equals( ((CanonicalForm) o).mText );
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) getFingerprint64();
+  }
+
+  @Override
+  public String toString() {
+    return getFingerprint();
+  }
+
+  private static byte[] digest( final String text ) {
+    try {
+      final var digest = MessageDigest.getInstance( "SHA-256" );
+      final var bytes = new byte[ 16 ];
+
+      System.arraycopy( digest.digest( text.getBytes( UTF_8 ) ), 0,
+                        bytes, 0, bytes.length );
+      return bytes;
+    } catch( final NoSuchAlgorithmException e ) {
+      // Every Java platform supports SHA-256.
+      throw new IllegalStateException( e );
+    }
+  }
+}
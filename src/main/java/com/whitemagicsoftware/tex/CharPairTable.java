@@ -0,0 +1,239 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static java.util.Arrays.fill;
+
+/**
+ * Maps pairs of characters to their kern amount and ligature replacement.
+ * Each pair is packed into a single {@code int} key ({@code left << 16 |
+ * right}) and stored in an open-addressing table with linear probing, so
+ * that lookups neither allocate nor box.
+ * <p>
+ * The pair {@code (0xFFFF, 0xFFFF)} packs to the reserved free-slot marker
+ * and cannot be stored; both are Unicode non-characters, which never occur
+ * in font metrics.
+ * </p>
+ */
+public final class CharPairTable {
+  /**
+   * Returned by {@link #getLigature(char, char)} when no ligature exists.
+   */
+  public static final int NO_LIGATURE = -1;
+
+  /**
+   * Marks an unused slot in the key array.
+   */
+  private static final int FREE = -1;
+
+  /**
+   * Initial number of slots, must be a power of two.
+   */
+  private static final int INITIAL_CAPACITY = 16;
+
+  private int[] mKeys;
+  private float[] mKerns;
+  private int[] mLigatures;
+  private int mSize;
+
+  public CharPairTable() {
+    allocate( INITIAL_CAPACITY );
+  }
+
+  /**
+   * @param left  left character
+   * @param right right character
+   * @param kern  kern amount to insert between the characters
+   */
+  public void putKern( final char left, final char right, final float kern ) {
+    final int slot = insert( pack( left, right ) );
+    mKerns[ slot ] = kern;
+  }
+
+  /**
+   * @param left     left character
+   * @param right    right character
+   * @param ligature character that replaces both left and right characters
+   */
+  public void putLigature(
+      final char left, final char right, final char ligature ) {
+    final int slot = insert( pack( left, right ) );
+    mLigatures[ slot ] = ligature;
+  }
+
+  /**
+   * @param left  left character
+   * @param right right character
+   * @return the kern amount between the characters, or 0 if not defined.
+   */
+  public float getKern( final char left, final char right ) {
+    final int slot = find( pack( left, right ) );
+    return slot < 0 ? 0 : mKerns[ slot ];
+  }
+
+  /**
+   * @param left  left character
+   * @param right right character
+   * @return the ligature character, or {@link #NO_LIGATURE} if not defined.
+   */
+  public int getLigature( final char left, final char right ) {
+    final int slot = find( pack( left, right ) );
+    return slot < 0 ? NO_LIGATURE : mLigatures[ slot ];
+  }
+
+  /**
+   * @return the number of character pairs having a kern or a ligature.
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Writes the table's slots as they are, so that {@link #read(ByteBuffer)}
+   * can restore them without rehashing.
+   *
+   * @param out receives the table
+   * @throws IOException could not write the table
+   */
+  public void write( final DataOutput out ) throws IOException {
+    out.writeInt( mKeys.length );
+    out.writeInt( mSize );
+
+    for( int i = 0; i < mKeys.length; i++ ) {
+      out.writeInt( mKeys[ i ] );
+      out.writeFloat( mKerns[ i ] );
+      out.writeInt( mLigatures[ i ] );
+    }
+  }
+
+  /**
+   * Replaces the contents of this table with a table written by
+   * {@link #write(DataOutput)}.
+   *
+   * @param in contains the table at its current position
+   */
+  public void read( final ByteBuffer in ) {
+    final int capacity = in.getInt();
+
+    allocate( capacity );
+    mSize = in.getInt();
+
+    for( int i = 0; i < capacity; i++ ) {
+      mKeys[ i ] = in.getInt();
+      mKerns[ i ] = in.getFloat();
+      mLigatures[ i ] = in.getInt();
+    }
+  }
+
+  private int find( final int key ) {
+    final int mask = mKeys.length - 1;
+    int slot = hash( key ) & mask;
+    int k;
+
+    while( (k = mKeys[ slot ]) != FREE ) {
+      if( k == key ) {
+        return slot;
+      }
+
+      slot = (slot + 1) & mask;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the slot for the given key, claiming a free slot if the key
+   * is not yet present. The table is kept at most half full.
+   */
+  private int insert( final int key ) {
+    final int existing = find( key );
+
+    if( existing >= 0 ) {
+      return existing;
+    }
+
+    if( (mSize + 1) << 1 > mKeys.length ) {
+      grow();
+    }
+
+    final int mask = mKeys.length - 1;
+    int slot = hash( key ) & mask;
+
+    while( mKeys[ slot ] != FREE ) {
+      slot = (slot + 1) & mask;
+    }
+
+    mKeys[ slot ] = key;
+    mSize++;
+
+    return slot;
+  }
+
+  private void grow() {
+    final int[] keys = mKeys;
+    final float[] kerns = mKerns;
+    final int[] ligatures = mLigatures;
+
+    allocate( keys.length << 1 );
+
+    final int mask = mKeys.length - 1;
+
+    for( int i = 0; i < keys.length; i++ ) {
+      final int key = keys[ i ];
+
+      if( key != FREE ) {
+        int slot = hash( key ) & mask;
+
+        while( mKeys[ slot ] != FREE ) {
+          slot = (slot + 1) & mask;
+        }
+
+        mKeys[ slot ] = key;
+        mKerns[ slot ] = kerns[ i ];
+        mLigatures[ slot ] = ligatures[ i ];
+      }
+    }
+  }
+
+  private void allocate( final int capacity ) {
+    mKeys = new int[ capacity ];
+    mKerns = new float[ capacity ];
+    mLigatures = new int[ capacity ];
+    fill( mKeys, FREE );
+    fill( mLigatures, NO_LIGATURE );
+  }
+
+  private static int pack( final char left, final char right ) {
+    return left << 16 | right;
+  }
+
+  /**
+   * Fibonacci hashing spreads the packed pairs, whose low bits cluster
+   * around a small range of character codes.
+   */
+  private static int hash( final int key ) {
+    final int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
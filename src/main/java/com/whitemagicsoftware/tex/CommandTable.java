@@ -0,0 +1,193 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+/**
+ * Maps the names of symbols, predefined formulas, text styles and commands
+ * to their handlers, so that the parser can resolve a command with a single
+ * lookup. Names are looked up directly on a range of the parse string,
+ * without creating a substring.
+ * <p>
+ * When a name is defined more than once, the kind with the highest
+ * precedence (lowest value) wins: a symbol hides a predefined formula of the
+ * same name, which hides a text style, which hides a command. The table is
+ * filled while {@link TeXFormula} is initialized and is read-only afterwards.
+ * </p>
+ */
+final class CommandTable {
+  /**
+   * The handler is a {@link com.whitemagicsoftware.tex.atoms.SymbolAtom}.
+   */
+  static final int SYMBOL = 0;
+
+  /**
+   * The handler is a predefined {@link TeXFormula}.
+   */
+  static final int PREDEFINED = 1;
+
+  /**
+   * The handler is the name of the text style.
+   */
+  static final int TEXT_STYLE = 2;
+
+  /**
+   * The handler is the name of the command.
+   */
+  static final int COMMAND = 3;
+
+  /**
+   * Initial number of slots, must be a power of two.
+   */
+  private static final int INITIAL_CAPACITY = 512;
+
+  private String[] mNames;
+  private int[] mHashes;
+  private int[] mKinds;
+  private Object[] mHandlers;
+  private int mSize;
+
+  CommandTable() {
+    allocate( INITIAL_CAPACITY );
+  }
+
+  /**
+   * Defines a name, unless it's already defined with a higher precedence.
+   *
+   * @param name    the command name, without the escape character
+   * @param kind    one of the kind constants
+   * @param handler the object that handles the command
+   */
+  void put( final String name, final int kind, final Object handler ) {
+    int slot = find( name, 0, name.length() );
+
+    if( slot < 0 ) {
+      if( (mSize + 1) << 1 > mNames.length ) {
+        grow();
+      }
+
+      final int hash = name.hashCode();
+      slot = free( hash );
+      mNames[ slot ] = name;
+      mHashes[ slot ] = hash;
+      mSize++;
+    }
+    else if( mKinds[ slot ] < kind ) {
+      return;
+    }
+
+    mKinds[ slot ] = kind;
+    mHandlers[ slot ] = handler;
+  }
+
+  /**
+   * Looks up the command name in the given range of a string.
+   *
+   * @param s     the string containing the name
+   * @param start index of the first character of the name
+   * @param end   index after the last character of the name
+   * @return the slot of the command, or -1 if the name is not defined.
+   */
+  int find( final String s, final int start, final int end ) {
+    // Same as String.hashCode, computed on the range.
+    int hash = 0;
+
+    for( int i = start; i < end; i++ ) {
+      hash = 31 * hash + s.charAt( i );
+    }
+
+    final int length = end - start;
+    final int mask = mNames.length - 1;
+    int slot = mix( hash ) & mask;
+    String name;
+
+    while( (name = mNames[ slot ]) != null ) {
+      if( mHashes[ slot ] == hash && name.length() == length &&
+          s.regionMatches( start, name, 0, length ) ) {
+        return slot;
+      }
+
+      slot = (slot + 1) & mask;
+    }
+
+    return -1;
+  }
+
+  /**
+   * @param slot a slot returned by {@link #find(String, int, int)}
+   * @return the kind of handler in the given slot.
+   */
+  int getKind( final int slot ) {
+    return mKinds[ slot ];
+  }
+
+  /**
+   * @param slot a slot returned by {@link #find(String, int, int)}
+   * @return the handler in the given slot.
+   */
+  Object getHandler( final int slot ) {
+    return mHandlers[ slot ];
+  }
+
+  private int free( final int hash ) {
+    final int mask = mNames.length - 1;
+    int slot = mix( hash ) & mask;
+
+    while( mNames[ slot ] != null ) {
+      slot = (slot + 1) & mask;
+    }
+
+    return slot;
+  }
+
+  private void grow() {
+    final String[] names = mNames;
+    final int[] hashes = mHashes;
+    final int[] kinds = mKinds;
+    final Object[] handlers = mHandlers;
+
+    allocate( names.length << 1 );
+
+    for( int i = 0; i < names.length; i++ ) {
+      if( names[ i ] != null ) {
+        final int slot = free( hashes[ i ] );
+
+        mNames[ slot ] = names[ i ];
+        mHashes[ slot ] = hashes[ i ];
+        mKinds[ slot ] = kinds[ i ];
+        mHandlers[ slot ] = handlers[ i ];
+      }
+    }
+  }
+
+  private void allocate( final int capacity ) {
+    mNames = new String[ capacity ];
+    mHashes = new int[ capacity ];
+    mKinds = new int[ capacity ];
+    mHandlers = new Object[ capacity ];
+  }
+
+  /**
+   * Fibonacci hashing spreads names that share prefixes and suffixes.
+   */
+  private static int mix( final int hash ) {
+    final int h = hash * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
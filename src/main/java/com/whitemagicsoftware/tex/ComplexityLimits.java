@@ -0,0 +1,157 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import com.whitemagicsoftware.tex.exceptions.FormulaTooComplexException;
+
+import static java.lang.String.format;
+
+/**
+ * Bounds on the {@link FormulaComplexity} of formulas accepted for
+ * rendering, so that a single pathological formula cannot monopolize a
+ * shared rendering pool or overflow the stack. Every limit is unbounded
+ * until set.
+ */
+public final class ComplexityLimits {
+  private int mMaxLength = Integer.MAX_VALUE;
+  private int mMaxDepth = Integer.MAX_VALUE;
+  private int mMaxScripts = Integer.MAX_VALUE;
+  private int mMaxFractions = Integer.MAX_VALUE;
+  private int mMaxRoots = Integer.MAX_VALUE;
+  private int mMaxLevels = Integer.MAX_VALUE;
+  private long mMaxCost = Long.MAX_VALUE;
+
+  /**
+   * @param maxLength the most characters a formula may have
+   */
+  public void setMaxLength( final int maxLength ) {
+    mMaxLength = maxLength;
+  }
+
+  /**
+   * @param maxDepth the deepest nesting of braces allowed
+   */
+  public void setMaxDepth( final int maxDepth ) {
+    mMaxDepth = maxDepth;
+  }
+
+  /**
+   * @param maxScripts the most superscripts, subscripts, and primes allowed
+   */
+  public void setMaxScripts( final int maxScripts ) {
+    mMaxScripts = maxScripts;
+  }
+
+  /**
+   * @param maxFractions the most fractions allowed
+   */
+  public void setMaxFractions( final int maxFractions ) {
+    mMaxFractions = maxFractions;
+  }
+
+  /**
+   * @param maxRoots the most roots allowed
+   */
+  public void setMaxRoots( final int maxRoots ) {
+    mMaxRoots = maxRoots;
+  }
+
+  /**
+   * @param maxLevels the deepest stacking of fraction parts, scripts, and
+   *                  roots allowed, which bounds the size of delimiters
+   */
+  public void setMaxLevels( final int maxLevels ) {
+    mMaxLevels = maxLevels;
+  }
+
+  /**
+   * @param maxCost the highest {@link FormulaComplexity#getCost()} allowed
+   */
+  public void setMaxCost( final long maxCost ) {
+    mMaxCost = maxCost;
+  }
+
+  /**
+   * @param complexity the formula's estimated complexity
+   * @return {@code true} if the formula is within every limit
+   */
+  public boolean allows( final FormulaComplexity complexity ) {
+    return exceeded( complexity ) == null;
+  }
+
+  /**
+   * Estimates the formula's complexity and checks it against the limits.
+   *
+   * @param tex the formula to check
+   * @return the formula's estimated complexity
+   * @throws FormulaTooComplexException if the formula exceeds a limit
+   */
+  public FormulaComplexity check( final CharSequence tex ) {
+    final var complexity = FormulaComplexity.estimate( tex );
+    final var exceeded = exceeded( complexity );
+
+    if( exceeded != null ) {
+      throw new FormulaTooComplexException( exceeded );
+    }
+
+    return complexity;
+  }
+
+  /**
+   * @return a description of the first limit exceeded, or {@code null}
+   */
+  private String exceeded( final FormulaComplexity c ) {
+    if( c.getLength() > mMaxLength ) {
+      return message( "length", c.getLength(), mMaxLength );
+    }
+
+    if( c.getDepth() > mMaxDepth ) {
+      return message( "nesting depth", c.getDepth(), mMaxDepth );
+    }
+
+    if( c.getScripts() > mMaxScripts ) {
+      return message( "scripts", c.getScripts(), mMaxScripts );
+    }
+
+    if( c.getFractions() > mMaxFractions ) {
+      return message( "fractions", c.getFractions(), mMaxFractions );
+    }
+
+    if( c.getRoots() > mMaxRoots ) {
+      return message( "roots", c.getRoots(), mMaxRoots );
+    }
+
+    if( c.getLevels() > mMaxLevels ) {
+      return message( "stacked levels", c.getLevels(), mMaxLevels );
+    }
+
+    if( c.getCost() > mMaxCost ) {
+      return message( "estimated cost", c.getCost(), mMaxCost );
+    }
+
+    return null;
+  }
+
+  private static String message(
+      final String limit, final long actual, final long max ) {
+    return format( "Formula %s of %d exceeds the limit of %d",
+                   limit, actual, max );
+  }
+}
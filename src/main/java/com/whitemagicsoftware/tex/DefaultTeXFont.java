@@ -28,6 +28,7 @@
 
 package com.whitemagicsoftware.tex;
 
+import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.exceptions.SymbolMappingNotFoundException;
 import com.whitemagicsoftware.tex.exceptions.TextStyleMappingNotFoundException;
 import com.whitemagicsoftware.tex.parsers.DefaultTeXFontParser;
@@ -52,6 +53,60 @@ public class DefaultTeXFont implements TeXFont {
     public static final int TOP = 0, MID = 1, REP = 2, BOT = 3;
     public static final int WIDTH = 0, HEIGHT = 1, DEPTH = 2, ITALIC = 3;
 
+    /**
+     * Parameter identifiers, indexes into {@link #PARAMETER_NAMES}.
+     */
+    private static final int AXIS_HEIGHT = 0;
+    private static final int BIG_OP_SPACING1 = 1;
+    private static final int BIG_OP_SPACING2 = 2;
+    private static final int BIG_OP_SPACING3 = 3;
+    private static final int BIG_OP_SPACING4 = 4;
+    private static final int BIG_OP_SPACING5 = 5;
+    private static final int DEFAULT_RULE_THICKNESS = 6;
+    private static final int DENOM1 = 7;
+    private static final int DENOM2 = 8;
+    private static final int SUB1 = 9;
+    private static final int SUB2 = 10;
+    private static final int SUB_DROP = 11;
+    private static final int SUP1 = 12;
+    private static final int SUP2 = 13;
+    private static final int SUP3 = 14;
+    private static final int SUP_DROP = 15;
+    private static final int NUM1 = 16;
+    private static final int NUM2 = 17;
+    private static final int NUM3 = 18;
+    private static final int PARAMETER_COUNT = 19;
+
+    /**
+     * Parameter names as they appear in the font description XML.
+     */
+    private static final String[] PARAMETER_NAMES = {
+        "axisheight",
+        "bigopspacing1",
+        "bigopspacing2",
+        "bigopspacing3",
+        "bigopspacing4",
+        "bigopspacing5",
+        "defaultrulethickness",
+        "denom1",
+        "denom2",
+        "sub1",
+        "sub2",
+        "subdrop",
+        "sup1",
+        "sup2",
+        "sup3",
+        "supdrop",
+        "num1",
+        "num2",
+        "num3"
+    };
+
+    /**
+     * Number of distinct sizes: display, text, script, and scriptscript.
+     */
+    private static final int SIZE_COUNT = 4;
+
     private static final String[] defaultTextStyleMappings;
     private static final Map<String, CharFont[]> textStyleMappings;
     private static final Map<String, CharFont> symbolMappings;
@@ -64,6 +119,19 @@ public class DefaultTeXFont implements TeXFont {
     private static final float sScriptScriptFactor;
     private static final int sSpaceFontId;
 
+    /**
+     * Font parameters multiplied by each size's factor, indexed by
+     * {@code size * PARAMETER_COUNT + parameter}. They are independent of
+     * the point size, so all instances share them.
+     */
+    private static final float[] sSizedParameters =
+        new float[ SIZE_COUNT * PARAMETER_COUNT ];
+
+    /**
+     * Size factors, indexed by size.
+     */
+    private static final float[] sSizeFactors = new float[ SIZE_COUNT ];
+
     static {
         final var parser = new DefaultTeXFontParser();
         // general font parameters
@@ -83,107 +151,130 @@ public class DefaultTeXFont implements TeXFont {
         sScriptFactor = generalSettings.get( "scriptfactor" ).floatValue();
         sScriptScriptFactor = generalSettings.get( "scriptscriptfactor" ).floatValue();
         sSpaceFontId = generalSettings.get( SPACEFONTID_ATTR ).intValue();
+
+        for( int size = 0; size < SIZE_COUNT; size++ ) {
+            // Each size spans a style and its cramped variant.
+            final float sizeFactor = getSizeFactor( size << 1 );
+
+            for( int p = 0; p < PARAMETER_COUNT; p++ ) {
+                sSizedParameters[ size * PARAMETER_COUNT + p ] =
+                    getParameter( PARAMETER_NAMES[ p ] ) * sizeFactor;
+            }
+
+            sSizeFactors[ size ] = sizeFactor;
+        }
     }
 
     private final float pointSize;
 
+    /**
+     * Glue boxes shared by all layouts using this font.
+     */
+    private final Box[] glueBoxes;
+
     public DefaultTeXFont(final float pointSize) {
         this.pointSize = pointSize;
+        glueBoxes = Glue.createBoxes( this );
     }
 
     @Override
     public float getAxisHeight( int style ) {
-        return getResizedParameter( "axisheight", style );
+        return getResizedParameter( AXIS_HEIGHT, style );
     }
 
     @Override
     public float getBigOpSpacing1( int style ) {
-        return getResizedParameter( "bigopspacing1", style );
+        return getResizedParameter( BIG_OP_SPACING1, style );
     }
 
     @Override
     public float getBigOpSpacing2( int style ) {
-        return getResizedParameter( "bigopspacing2", style );
+        return getResizedParameter( BIG_OP_SPACING2, style );
     }
 
     @Override
     public float getBigOpSpacing3( int style ) {
-        return getResizedParameter( "bigopspacing3", style );
+        return getResizedParameter( BIG_OP_SPACING3, style );
     }
 
     @Override
     public float getBigOpSpacing4( int style ) {
-        return getResizedParameter( "bigopspacing4", style );
+        return getResizedParameter( BIG_OP_SPACING4, style );
     }
 
     @Override
     public float getBigOpSpacing5( int style ) {
-        return getResizedParameter( "bigopspacing5", style );
+        return getResizedParameter( BIG_OP_SPACING5, style );
     }
 
     @Override
     public float getDefaultRuleThickness( int style ) {
-        return getResizedParameter( "defaultrulethickness", style );
+        return getResizedParameter( DEFAULT_RULE_THICKNESS, style );
     }
 
     @Override
     public float getDenom1( int style ) {
-        return getResizedParameter( "denom1", style );
+        return getResizedParameter( DENOM1, style );
     }
 
     @Override
     public float getDenom2( int style ) {
-        return getResizedParameter( "denom2", style );
+        return getResizedParameter( DENOM2, style );
     }
 
     @Override
     public float getSub1( int style ) {
-        return getResizedParameter( "sub1", style );
+        return getResizedParameter( SUB1, style );
     }
 
     @Override
     public float getSub2( int style ) {
-        return getResizedParameter( "sub2", style );
+        return getResizedParameter( SUB2, style );
     }
 
     @Override
     public float getSubDrop( int style ) {
-        return getResizedParameter( "subdrop", style );
+        return getResizedParameter( SUB_DROP, style );
     }
 
     @Override
     public float getSup1( int style ) {
-        return getResizedParameter( "sup1", style );
+        return getResizedParameter( SUP1, style );
     }
 
     @Override
     public float getSup2( int style ) {
-        return getResizedParameter( "sup2", style );
+        return getResizedParameter( SUP2, style );
     }
 
     @Override
     public float getSup3( int style ) {
-        return getResizedParameter( "sup3", style );
+        return getResizedParameter( SUP3, style );
     }
 
     @Override
     public float getSupDrop( int style ) {
-        return getResizedParameter( "supdrop", style );
+        return getResizedParameter( SUP_DROP, style );
     }
 
     @Override
     public float getNum1( int style ) {
-        return getResizedParameter( "num1", style );
+        return getResizedParameter( NUM1, style );
     }
 
     @Override
     public float getNum2( int style ) {
-        return getResizedParameter( "num2", style );
+        return getResizedParameter( NUM2, style );
     }
 
     @Override
     public float getNum3( int style ) {
-        return getResizedParameter( "num3", style );
+        return getResizedParameter( NUM3, style );
+    }
+
+    @Override
+    public Box getGlue( final int lType, final int rType, final int style ) {
+        return glueBoxes[ Glue.index( lType, rType, style ) ];
     }
 
     @Override
@@ -197,8 +288,9 @@ public class DefaultTeXFont implements TeXFont {
         return pointSize;
     }
 
-    private float getResizedParameter(final String p, final int style) {
-        return getParameter( p ) * getSizeFactor( style ) * PIXELS_PER_POINT;
+    private float getResizedParameter(final int p, final int style) {
+        return sSizedParameters[ (style >> 1) * PARAMETER_COUNT + p ] *
+            PIXELS_PER_POINT;
     }
 
     private Char getChar( final char c, final CharFont[] cf, final int style ) {
@@ -395,6 +487,6 @@ public class DefaultTeXFont implements TeXFont {
     }
 
     private float getScaledSizeFactor( final int style ) {
-        return getSizeFactor(style) * PIXELS_PER_POINT;
+        return sSizeFactors[ style >> 1 ] * PIXELS_PER_POINT;
     }
 }
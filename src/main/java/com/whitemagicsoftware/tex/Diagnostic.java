@@ -0,0 +1,65 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import static java.lang.String.format;
+
+/**
+ * Describes a problem found while parsing a formula in tolerant mode. The
+ * message is only formatted when requested, so recording a diagnostic is
+ * cheap.
+ */
+public final class Diagnostic {
+  private final int mPosition;
+  private final String mPattern;
+  private final Object[] mArguments;
+
+  /**
+   * @param position  offset into the parsed string where the problem occurs
+   * @param pattern   message pattern, see {@link String#format}
+   * @param arguments message arguments
+   */
+  Diagnostic(
+      final int position, final String pattern, final Object[] arguments ) {
+    mPosition = position;
+    mPattern = pattern;
+    mArguments = arguments;
+  }
+
+  /**
+   * @return the offset into the parsed string where the problem occurs.
+   */
+  public int getPosition() {
+    return mPosition;
+  }
+
+  /**
+   * @return a description of the problem, the same message that a strict
+   * parse would have thrown.
+   */
+  public String getMessage() {
+    return mArguments.length == 0 ? mPattern : format( mPattern, mArguments );
+  }
+
+  @Override
+  public String toString() {
+    return mPosition + ": " + getMessage();
+  }
+}
@@ -35,19 +35,17 @@ import com.whitemagicsoftware.tex.atoms.SpaceAtom;
 import com.whitemagicsoftware.tex.boxes.Box;
 
 /**
- * Used by RowAtom. The "textSymbol"-property and the type of an atom can change
- * (according to the TeX-algorithms used). Or this atom can be replaced by a
- * ligature, (if it was a CharAtom). But atoms cannot be changed, otherwise
- * different boxes could be made from the same TeXFormula, and that is not
- * desired! This "dummy atom" makes sure that changes to an atom (during the
- * createBox-method of a RowAtom) will be reset.
+ * Used by RowAtom. The type of an atom can change (according to the
+ * TeX-algorithms used). Or this atom can be replaced by a ligature, (if it
+ * was a CharAtom). But atoms cannot be changed, otherwise different boxes
+ * could be made from the same TeXFormula, and atoms could not be shared by
+ * formulas or threads. This "dummy atom" holds the changes to an atom
+ * while a RowAtom is laid out.
  */
 public class Dummy {
 
   private Atom el;
 
-  private boolean textSymbol;
-
   private int type = -1;
 
   /**
@@ -82,6 +80,14 @@ public class Dummy {
     return (type >= 0 ? type : el.getRightType());
   }
 
+  /**
+   * @return the wrapped atom, which is a ligature after
+   * {@link #changeAtom(FixedCharAtom)}
+   */
+  public Atom getAtom() {
+    return el;
+  }
+
   public boolean isCharSymbol() {
     return el instanceof CharSymbolAtom;
   }
@@ -100,37 +106,15 @@ public class Dummy {
    * @param a the ligature atom
    */
   public void changeAtom( final FixedCharAtom a ) {
-    textSymbol = false;
     type = -1;
     el = a;
   }
 
   public Box createBox( final TeXEnvironment rs ) {
-    if( textSymbol ) {
-      ((CharSymbolAtom) el).markAsTextSymbol();
-    }
-    final Box b = el.createBox( rs );
-    if( textSymbol ) {
-      // atom remains unchanged!
-      ((CharSymbolAtom) el).removeMark();
-    }
-    return b;
-  }
-
-  public void markAsTextSymbol() {
-    textSymbol = true;
+    return el.createBox( rs );
   }
 
   public boolean isKern() {
     return el instanceof SpaceAtom;
   }
-
-  /**
-   * Only for Row-elements
-   */
-  public void setPreviousAtom( final Dummy prev ) {
-    if( el instanceof Row ) {
-      ((Row) el).setPreviousAtom( prev );
-    }
-  }
 }
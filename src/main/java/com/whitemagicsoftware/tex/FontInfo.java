@@ -28,9 +28,17 @@
 
 package com.whitemagicsoftware.tex;
 
+import com.whitemagicsoftware.tex.graphics.TrueTypeFont;
+import com.whitemagicsoftware.tex.resources.FontResourceReader;
+import com.whitemagicsoftware.tex.resources.TrueTypeResourceReader;
+
 import java.awt.*;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static java.awt.Font.PLAIN;
 
@@ -50,20 +58,75 @@ public class FontInfo {
   private static final Font DEFAULT_FONT = new Font( null, PLAIN, 0 );
 
   /**
-   * Contains a map of all fonts to font information.
+   * Contains a map of all font identifiers to font information.
+   */
+  private final static Map<Integer, FontInfo> fonts = new HashMap<>();
+
+  /**
+   * Fonts loaded so far, by file name, because several font identifiers may
+   * share the same font file.
    */
-  private final static Map<Integer, Font> fonts = new HashMap<>();
+  private final static Map<String, Font> loaded = new ConcurrentHashMap<>();
 
+  /**
+   * Glyph outlines read so far, by file name.
+   */
+  private final static Map<String, TrueTypeFont> outlines =
+      new ConcurrentHashMap<>();
+
+  /**
+   * Returns the font for the given identifier, loading it if this is the
+   * first time it's needed.
+   *
+   * @param fontId the font identifier
+   * @return the font, or a default font if the identifier is unknown
+   */
   public static Font getFont( final int fontId ) {
-    return fonts.getOrDefault( fontId, DEFAULT_FONT );
+    final FontInfo info = fonts.get( fontId );
+    return info == null ? DEFAULT_FONT : info.getFont();
+  }
+
+  /**
+   * Returns the glyph outlines for the given identifier, reading them if
+   * this is the first time they're needed. Unlike {@link #getFont(int)},
+   * this doesn't involve the platform's font machinery.
+   *
+   * @param fontId the font identifier
+   * @return the glyph outlines, or {@code null} if the identifier is unknown
+   */
+  public static TrueTypeFont getOutlines( final int fontId ) {
+    final FontInfo info = fonts.get( fontId );
+    return info == null ? null : info.getOutlines();
+  }
+
+  /**
+   * Reads the glyph outlines of every font.
+   */
+  static void readOutlines() {
+    for( final FontInfo info : fonts.values() ) {
+      info.getOutlines();
+    }
+  }
+
+  /**
+   * Loads every font and registers it with the local graphics environment,
+   * so that it can be looked up by name (e.g., by graphics contexts that
+   * resolve fonts by family name). Drawing with the library never requires
+   * this.
+   */
+  public static void registerFonts() {
+    for( final FontInfo info : fonts.values() ) {
+      FontResourceReader.register( info.getFont() );
+    }
   }
 
   private final int fontId;
-  private final Font font;
+  private final String fontName;
+  private volatile Font font;
+  private volatile TrueTypeFont outline;
 
   private final float[][] metrics = new float[ NUMBER_OF_CHAR_CODES ][];
-  private final Map<CharTuple, Character> lig = new HashMap<>();
-  private final Map<CharTuple, Float> kern = new HashMap<>();
+  private final CharPairTable ligKern = new CharPairTable();
   private final CharFont[] nextLarger = new CharFont[ NUMBER_OF_CHAR_CODES ];
   private final int[][] extensions = new int[ NUMBER_OF_CHAR_CODES ][];
 
@@ -76,9 +139,87 @@ public class FontInfo {
   private final float space;
   private final float quad;
 
+  /**
+   * Creates the font information written by {@link #write(DataOutput)}.
+   *
+   * @param fontId   the font identifier
+   * @param fontName the name of the font file that the information describes
+   * @param in       contains the font information at its current position
+   * @return the font information
+   */
+  public static FontInfo read(
+      final int fontId, final String fontName, final ByteBuffer in ) {
+    final float xHeight = in.getFloat();
+    final float space = in.getFloat();
+    final float quad = in.getFloat();
+    final FontInfo info =
+        new FontInfo( fontId, fontName, xHeight, space, quad );
+
+    info.skewChar = in.getChar();
+
+    for( int i = in.getShort(); i > 0; i-- ) {
+      final float[] m = new float[ in.get() ];
+
+      info.metrics[ in.getChar() ] = m;
+
+      for( int j = 0; j < m.length; j++ ) {
+        m[ j ] = in.getFloat();
+      }
+    }
+
+    for( int i = in.getShort(); i > 0; i-- ) {
+      final char c = in.getChar();
+      info.nextLarger[ c ] = new CharFont( in.getChar(), in.getInt() );
+    }
+
+    for( int i = in.getShort(); i > 0; i-- ) {
+      final int[] ext = new int[ in.get() ];
+
+      info.extensions[ in.getChar() ] = ext;
+
+      for( int j = 0; j < ext.length; j++ ) {
+        ext[ j ] = in.getInt();
+      }
+    }
+
+    info.ligKern.read( in );
+
+    return info;
+  }
+
+  /**
+   * @param fontId   the font identifier
+   * @param fontName the name of the font file, which is only read when the
+   *                 font is first drawn
+   * @param xHeight  height of the letter 'x'
+   * @param space    width of an inter-word space
+   * @param quad     width of a quad (em)
+   */
+  public FontInfo(
+      int fontId, String fontName, float xHeight, float space, float quad ) {
+    this( fontId, fontName, null, xHeight, space, quad );
+  }
+
+  /**
+   * Describes a font that has already been loaded. Its glyphs are drawn
+   * using the font, because there is no font file to read outlines from.
+   *
+   * @param fontId  the font identifier
+   * @param font    the font that the information describes
+   * @param xHeight height of the letter 'x'
+   * @param space   width of an inter-word space
+   * @param quad    width of a quad (em)
+   */
   public FontInfo(
       int fontId, Font font, float xHeight, float space, float quad ) {
+    this( fontId, null, font, xHeight, space, quad );
+  }
+
+  private FontInfo(
+      final int fontId, final String fontName, final Font font,
+      final float xHeight, final float space, final float quad ) {
     this.fontId = fontId;
+    this.fontName = fontName;
     this.font = font;
     this.xHeight = xHeight;
     this.space = space;
@@ -93,7 +234,7 @@ public class FontInfo {
    * @param k     kern value
    */
   public void addKern( char left, char right, float k ) {
-    kern.put( new CharTuple( left, right ), k );
+    ligKern.putKern( left, right, k );
   }
 
   /**
@@ -102,7 +243,7 @@ public class FontInfo {
    * @param ligChar ligature to replace left and right character
    */
   public void addLigature( char left, char right, char ligChar ) {
-    lig.put( new CharTuple( left, right ), ligChar );
+    ligKern.putLigature( left, right, ligChar );
   }
 
   public int[] getExtension( char ch ) {
@@ -110,21 +251,16 @@ public class FontInfo {
   }
 
   public float getKern( char left, char right, float factor ) {
-    Float obj = kern.get( new CharTuple( left, right ) );
-    if( obj == null ) {
-      return 0;
-    }
-
-    return obj * factor;
+    return ligKern.getKern( left, right ) * factor;
   }
 
   public CharFont getLigature( char left, char right ) {
-    Character obj = lig.get( new CharTuple( left, right ) );
-    if( obj == null ) {
+    final int lig = ligKern.getLigature( left, right );
+    if( lig == CharPairTable.NO_LIGATURE ) {
       return null;
     }
 
-    return new CharFont( obj, fontId );
+    return new CharFont( (char) lig, fontId );
   }
 
   public float[] getMetrics( char c ) {
@@ -175,22 +311,126 @@ public class FontInfo {
     skewChar = c;
   }
 
+  /**
+   * Returns the font, loading it if this is the first time it's needed.
+   *
+   * @return the font that this information describes
+   */
   public Font getFont() {
-    return font;
+    Font f = font;
+
+    if( f == null ) {
+      font = f = loaded.computeIfAbsent(
+          fontName, name -> new FontResourceReader( name ).read() );
+    }
+
+    return f;
+  }
+
+  /**
+   * Returns the glyph outlines, reading them if this is the first time
+   * they're needed.
+   *
+   * @return the glyph outlines of the font that this information describes,
+   * or {@code null} if it was given a loaded font instead of a font file
+   */
+  public TrueTypeFont getOutlines() {
+    TrueTypeFont t = outline;
+
+    if( t == null && fontName != null ) {
+      outline = t = outlines.computeIfAbsent(
+          fontName, name -> new TrueTypeResourceReader( name ).read() );
+    }
+
+    return t;
+  }
+
+  /**
+   * @return the name of the font file that this information describes, or
+   * {@code null} if it was given a loaded font
+   */
+  public String getFontName() {
+    return fontName;
+  }
+
+  /**
+   * Writes everything but the font identifier and the font, see
+   * {@link #read(int, String, ByteBuffer)}.
+   *
+   * @param out receives the font information
+   * @throws IOException could not write the font information
+   */
+  public void write( final DataOutput out ) throws IOException {
+    out.writeFloat( xHeight );
+    out.writeFloat( space );
+    out.writeFloat( quad );
+    out.writeChar( skewChar );
+
+    out.writeShort( count( metrics ) );
+    for( int c = 0; c < NUMBER_OF_CHAR_CODES; c++ ) {
+      final float[] m = metrics[ c ];
+
+      if( m != null ) {
+        out.writeByte( m.length );
+        out.writeChar( c );
+
+        for( final float v : m ) {
+          out.writeFloat( v );
+        }
+      }
+    }
+
+    out.writeShort( count( nextLarger ) );
+    for( int c = 0; c < NUMBER_OF_CHAR_CODES; c++ ) {
+      final CharFont larger = nextLarger[ c ];
+
+      if( larger != null ) {
+        out.writeChar( c );
+        out.writeChar( larger.c );
+        out.writeInt( larger.fontId );
+      }
+    }
+
+    out.writeShort( count( extensions ) );
+    for( int c = 0; c < NUMBER_OF_CHAR_CODES; c++ ) {
+      final int[] ext = extensions[ c ];
+
+      if( ext != null ) {
+        out.writeByte( ext.length );
+        out.writeChar( c );
+
+        for( final int v : ext ) {
+          out.writeInt( v );
+        }
+      }
+    }
+
+    ligKern.write( out );
+  }
+
+  private static int count( final Object[] entries ) {
+    int count = 0;
+
+    for( final Object entry : entries ) {
+      if( entry != null ) {
+        count++;
+      }
+    }
+
+    return count;
   }
 
   private static void putFontInfo(
       final int fontId, final FontInfo fontInfo ) {
-    fonts.put( fontId, fontInfo.getFont() );
+    fonts.put( fontId, fontInfo );
   }
 
   @Override
   public String toString() {
     return getClass().getSimpleName() + "{" +
         "fontId=" + fontId +
-        ", font=" + font +
-        ", lig=" + lig +
-        ", kern=" + kern +
+        ", fontName=" + fontName +
+        ", ligKern=" + ligKern.size() +
         ", skewChar=" + skewChar +
         ", xHeight=" + xHeight +
         ", space=" + space +
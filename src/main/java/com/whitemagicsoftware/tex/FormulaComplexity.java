@@ -0,0 +1,435 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import static java.lang.Character.isLetter;
+import static java.lang.Character.isWhitespace;
+import static java.lang.Math.max;
+import static java.util.Arrays.copyOf;
+
+/**
+ * Estimates what a formula costs to render by scanning its source once,
+ * without building atoms, so that expensive formulas can be refused or
+ * deferred before any work is done on them (see {@link ComplexityLimits}).
+ * The scan keeps its own stack, so no input can overflow the call stack.
+ * <p>
+ * The estimate follows the parser's grammar loosely: unbalanced braces and
+ * unknown commands are counted as they appear rather than reported.
+ * </p>
+ */
+public final class FormulaComplexity {
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final int mLength;
+  private int mDepth;
+  private int mCommands;
+  private int mScripts;
+  private int mFractions;
+  private int mRoots;
+  private int mLevels;
+  private int mDelimiterLevels;
+  private int mAtoms;
+  private int mGroups;
+  private long mExtensionLevels;
+
+  private FormulaComplexity( final int length ) {
+    mLength = length;
+  }
+
+  /**
+   * Scans a formula's source.
+   *
+   * @param tex the formula to scan
+   * @return the formula's complexity
+   */
+  public static FormulaComplexity estimate( final CharSequence tex ) {
+    final var result = new FormulaComplexity( tex.length() );
+    result.scan( tex );
+    return result;
+  }
+
+  /**
+   * Counts the constructs that make a formula expensive. Fraction parts,
+   * scripts, and the contents of roots are stacked one level above their
+   * surroundings; a root's radical, and the delimiters of a
+   * {@code \left...\right} fence, must grow to cover every level stacked
+   * within them.
+   */
+  private void scan( final CharSequence tex ) {
+    final int length = mLength;
+
+    // Per open group or fence: the level and the fraction arguments still
+    // expected to restore when it closes, the level at which a root's
+    // radical or a fence's delimiters start (-1 if neither), whether it's a
+    // fence, and the highest level reached within it.
+    int[] restore = new int[ INITIAL_CAPACITY ];
+    int[] expected = new int[ INITIAL_CAPACITY ];
+    int[] roots = new int[ INITIAL_CAPACITY ];
+    boolean[] fences = new boolean[ INITIAL_CAPACITY ];
+    int[] highest = new int[ INITIAL_CAPACITY ];
+    int depth = 0;
+    int level = 0;
+    int top = 0;
+
+    // Arguments still expected by the preceding command or script.
+    int fractionArgs = 0;
+    boolean scriptArg = false;
+    boolean rootArg = false;
+
+    for( int i = 0; i < length; i++ ) {
+      final char c = tex.charAt( i );
+
+      if( isWhitespace( c ) ) {
+        continue;
+      }
+
+      if( c == '[' && rootArg ) {
+        // Skip the root's index, which is small and typeset on its own.
+        while( i < length && tex.charAt( i ) != ']' ) {
+          i++;
+        }
+
+        continue;
+      }
+
+      // A fence's closing delimiter is part of the fence.
+      final int right = c == '\\' ? command( tex, i, "right" ) : -1;
+
+      if( right >= 0 ) {
+        mAtoms++;
+        mCommands++;
+        i = delimiter( tex, right );
+      }
+
+      if( c == '}' || right >= 0 && depth > 0 && fences[ depth - 1 ] ) {
+        if( depth > 0 ) {
+          depth--;
+
+          final int inner = highest[ depth ];
+
+          if( fences[ depth ] ) {
+            // Each delimiter covers the fence's own level too.
+            extend( inner - roots[ depth ] + 1, 2 );
+          }
+          else if( roots[ depth ] >= 0 ) {
+            extend( inner - roots[ depth ], 1 );
+          }
+
+          level = restore[ depth ];
+          fractionArgs = expected[ depth ];
+          scriptArg = false;
+          rootArg = false;
+
+          if( depth > 0 ) {
+            highest[ depth - 1 ] = max( highest[ depth - 1 ], inner );
+          }
+          else {
+            top = max( top, inner );
+          }
+        }
+
+        continue;
+      }
+
+      if( right >= 0 ) {
+        // Unmatched, so it's only an atom.
+        continue;
+      }
+
+      if( c == '^' || c == '_' || c == '\'' ) {
+        mScripts++;
+        scriptArg = c != '\'';
+        continue;
+      }
+
+      // Anything else is the next argument, or an atom on its own.
+      int argument = level;
+      boolean root = false;
+
+      if( scriptArg ) {
+        scriptArg = false;
+        argument++;
+      }
+      else if( fractionArgs > 0 ) {
+        fractionArgs--;
+        argument++;
+      }
+      else if( rootArg ) {
+        rootArg = false;
+        root = true;
+      }
+
+      final int left = c == '\\' ? command( tex, i, "left" ) : -1;
+
+      if( c == '{' || left >= 0 ) {
+        if( depth == restore.length ) {
+          restore = copyOf( restore, depth << 1 );
+          expected = copyOf( expected, depth << 1 );
+          roots = copyOf( roots, depth << 1 );
+          fences = copyOf( fences, depth << 1 );
+          highest = copyOf( highest, depth << 1 );
+        }
+
+        if( left >= 0 ) {
+          if( root ) {
+            extend( 1, 1 );
+            argument++;
+          }
+
+          mAtoms++;
+          mCommands++;
+          i = delimiter( tex, left );
+        }
+
+        mGroups++;
+        restore[ depth ] = level;
+        expected[ depth ] = fractionArgs;
+        roots[ depth ] = root || left >= 0 ? argument : -1;
+        fences[ depth ] = left >= 0;
+
+        // A radical stacks its contents under a bar.
+        if( root && left < 0 ) {
+          argument++;
+        }
+
+        highest[ depth ] = argument;
+        mDepth = max( mDepth, ++depth );
+        level = argument;
+        fractionArgs = 0;
+        continue;
+      }
+
+      if( root ) {
+        extend( 1, 1 );
+        argument++;
+      }
+
+      mAtoms++;
+
+      if( depth > 0 ) {
+        highest[ depth - 1 ] = max( highest[ depth - 1 ], argument );
+      }
+      else {
+        top = max( top, argument );
+      }
+
+      if( c == '\\' && i + 1 < length ) {
+        final int start = ++i;
+
+        while( i < length && isLetter( tex.charAt( i ) ) ) {
+          i++;
+        }
+
+        mCommands++;
+
+        if( i == start ) {
+          // Escaped symbol, such as \{.
+          continue;
+        }
+
+        if( matches( tex, start, i, "frac" ) ) {
+          mFractions++;
+          fractionArgs = 2;
+        }
+        else if( matches( tex, start, i, "sqrt" ) ) {
+          mRoots++;
+          rootArg = true;
+        }
+
+        i--;
+      }
+    }
+
+    // Unclosed groups still count towards the levels reached.
+    for( int d = depth - 1; d >= 0; d-- ) {
+      top = max( top, highest[ d ] );
+    }
+
+    mLevels = top;
+  }
+
+  /**
+   * Counts extensible delimiters that must cover the given levels.
+   */
+  private void extend( final int levels, final int delimiters ) {
+    mDelimiterLevels = max( mDelimiterLevels, levels );
+    mExtensionLevels += (long) levels * delimiters;
+  }
+
+  /**
+   * Returns the end of the command with the given name.
+   *
+   * @param i the position of the backslash that starts a command
+   * @return the position after the name, or -1 if it's another command
+   */
+  private static int command(
+      final CharSequence tex, final int i, final String name ) {
+    final int end = i + 1 + name.length();
+
+    return end <= tex.length() &&
+        matches( tex, i + 1, end, name ) &&
+        (end == tex.length() || !isLetter( tex.charAt( end ) )) ? end : -1;
+  }
+
+  /**
+   * Skips the delimiter that follows {@code \left} or {@code \right}, such
+   * as {@code (}, {@code \{}, or {@code \langle}.
+   *
+   * @param i the position after the command's name
+   * @return the position of the delimiter's last character
+   */
+  private static int delimiter( final CharSequence tex, int i ) {
+    final int length = tex.length();
+
+    while( i < length && isWhitespace( tex.charAt( i ) ) ) {
+      i++;
+    }
+
+    if( i < length - 1 && tex.charAt( i ) == '\\' ) {
+      final int start = ++i;
+
+      while( i < length && isLetter( tex.charAt( i ) ) ) {
+        i++;
+      }
+
+      // An escaped symbol has a single character.
+      return i == start ? start : i - 1;
+    }
+
+    return i < length ? i : length - 1;
+  }
+
+  private static boolean matches(
+      final CharSequence tex, final int start, final int end,
+      final String name ) {
+    if( end - start != name.length() ) {
+      return false;
+    }
+
+    for( int i = start; i < end; i++ ) {
+      if( tex.charAt( i ) != name.charAt( i - start ) ) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * @return the number of characters in the source
+   */
+  public int getLength() {
+    return mLength;
+  }
+
+  /**
+   * @return the deepest nesting of braces and fences
+   */
+  public int getDepth() {
+    return mDepth;
+  }
+
+  /**
+   * @return the number of characters and commands that produce atoms,
+   * which is about the number of glyphs drawn
+   */
+  public int getAtoms() {
+    return mAtoms;
+  }
+
+  /**
+   * @return the number of commands and escaped symbols
+   */
+  public int getCommands() {
+    return mCommands;
+  }
+
+  /**
+   * @return the number of superscripts, subscripts, and primes
+   */
+  public int getScripts() {
+    return mScripts;
+  }
+
+  /**
+   * @return the number of fractions
+   */
+  public int getFractions() {
+    return mFractions;
+  }
+
+  /**
+   * @return the number of roots
+   */
+  public int getRoots() {
+    return mRoots;
+  }
+
+  /**
+   * @return the deepest stacking of fraction parts, scripts, and roots
+   */
+  public int getLevels() {
+    return mLevels;
+  }
+
+  /**
+   * @return the number of stacked levels that the tallest radical or fence
+   * delimiter must cover, 0 if there are neither roots nor fences
+   */
+  public int getDelimiterLevels() {
+    return mDelimiterLevels;
+  }
+
+  /**
+   * Combines the counts into a single figure, proportional to the time
+   * taken to render the formula: it approximates the number of boxes that
+   * layout creates. Each atom yields about two boxes, as do the shifts of
+   * scripts and each level an extensible delimiter covers; each fraction
+   * adds about six for its rule, struts, and alignment; and each group or
+   * fence adds one for its row, so that deep nesting isn't free.
+   * <p>
+   * Nesting is walked on explicit stacks, so it costs heap rather than call
+   * stack; bound {@link #getDepth()} and {@link #getLevels()} using
+   * {@link ComplexityLimits} to limit it further.
+   * </p>
+   *
+   * @return the estimated cost, in boxes
+   */
+  public long getCost() {
+    return 2L * mAtoms + 2L * mScripts + 6L * mFractions +
+        2L * mExtensionLevels + mGroups;
+  }
+
+  @Override
+  public String toString() {
+    return "FormulaComplexity{" +
+        "length=" + mLength +
+        ", depth=" + mDepth +
+        ", atoms=" + mAtoms +
+        ", commands=" + mCommands +
+        ", scripts=" + mScripts +
+        ", fractions=" + mFractions +
+        ", roots=" + mRoots +
+        ", levels=" + mLevels +
+        ", delimiterLevels=" + mDelimiterLevels +
+        ", cost=" + getCost() +
+        '}';
+  }
+}
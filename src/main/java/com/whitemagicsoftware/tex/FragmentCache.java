@@ -0,0 +1,371 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import com.whitemagicsoftware.tex.atoms.*;
+import com.whitemagicsoftware.tex.boxes.Box;
+import com.whitemagicsoftware.tex.boxes.HorizontalBox;
+
+import java.awt.*;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import static java.lang.String.format;
+
+/**
+ * Keeps the boxes of subformulas, such as {@code \frac{1}{2}} or
+ * {@code \sqrt{2}}, so that any formula containing the same subformula
+ * reuses its box rather than laying it out again. A subformula is
+ * identified by a number for the canonical form of its atoms (see
+ * {@link CanonicalWriter#number(Atom, java.util.function.ToLongFunction)})
+ * and by the environment it's laid out in: the style, the font's class and
+ * size, the colors, and the last font used. Boxes are shared between fonts
+ * of the same class and size.
+ * <p>
+ * Layout uses the cache set on the environment (see
+ * {@link TeXEnvironment#setFragmentCache(FragmentCache)}). Identifying a
+ * subformula costs about as much as laying out characters, scripts, and
+ * rows, so only atoms that stack or stretch boxes are kept: fractions,
+ * roots, fences, big operators, accents, and braces. The parts of a
+ * subformula that isn't kept may still be reused.
+ * </p>
+ * <p>
+ * Cached boxes are never changed: each use gets a new box that contains
+ * the cached one, which its parent may shift. The cache holds a bounded
+ * number of boxes, evicting the least recently used, and may be shared by
+ * threads.
+ * </p>
+ */
+public final class FragmentCache {
+  /**
+   * Independently locked parts of the cache, so that threads seldom wait
+   * for each other.
+   */
+  private static final int STRIPES = 16;
+
+  /**
+   * Canonical forms numbered per box kept, before the numbers are
+   * forgotten.
+   */
+  private static final int FORMS_PER_BOX = 16;
+
+  private final Stripe[] mStripes;
+
+  /**
+   * Numbers of the canonical forms of atoms, each referring to its
+   * children by number. Numbers are never reused, so boxes kept for
+   * forgotten numbers are never found again, and age out.
+   */
+  private final Map<String, Long> mForms = new ConcurrentHashMap<>();
+  private final AtomicLong mNextForm = new AtomicLong();
+  private final int mMaxForms;
+  private final ToLongFunction<String> mIntern = this::intern;
+
+  private final LongAdder mHits = new LongAdder();
+  private final LongAdder mMisses = new LongAdder();
+  private final LongAdder mEvictions = new LongAdder();
+
+  /**
+   * @param capacity the most boxes to keep
+   */
+  public FragmentCache( final int capacity ) {
+    final int stripes = Math.max( 1, Math.min( STRIPES, capacity ) );
+    final int stripeCapacity = Math.max( 1, capacity / stripes );
+
+    mStripes = new Stripe[ stripes ];
+    mMaxForms = (int) Math.min(
+        Integer.MAX_VALUE, (long) stripes * stripeCapacity * FORMS_PER_BOX );
+
+    for( int i = 0; i < stripes; i++ ) {
+      mStripes[ i ] = new Stripe( stripeCapacity );
+    }
+  }
+
+  /**
+   * Identifies the box of the given atom in the given environment.
+   *
+   * @param w    numbers the atom's subtree, and remembers the numbers of
+   *             subtrees numbered earlier in the same layout
+   * @param atom the atom about to be laid out
+   * @param env  the environment in which the atom will be laid out
+   * @return the atom's key, or {@code null} if its box is not to be kept
+   */
+  public Key key(
+      final CanonicalWriter w, final Atom atom, final TeXEnvironment env ) {
+    if( !isFragment( atom ) ) {
+      return null;
+    }
+
+    final long number = w.number( atom, mIntern );
+
+    return number == CanonicalWriter.UNKNOWN ? null : new Key( number, env );
+  }
+
+  /**
+   * Answers whether the given atom's layout is costly enough to be worth
+   * keeping.
+   *
+   * @param atom the atom about to be laid out
+   * @return {@code true} if a key is to be made for the atom
+   */
+  private static boolean isFragment( final Atom atom ) {
+    return atom instanceof FractionAtom ||
+        atom instanceof NthRootAtom ||
+        atom instanceof FencedAtom ||
+        atom instanceof BigOperatorAtom ||
+        atom instanceof AccentedAtom ||
+        atom instanceof OverUnderDelimiterAtom ||
+        atom instanceof UnderOverAtom;
+  }
+
+  /**
+   * Numbers a canonical form, forgetting all numbers once there are too
+   * many.
+   */
+  private long intern( final String form ) {
+    final Long number = mForms.get( form );
+
+    if( number != null ) {
+      return number;
+    }
+
+    if( mForms.size() >= mMaxForms ) {
+      mForms.clear();
+    }
+
+    return mForms.computeIfAbsent(
+        form, f -> mNextForm.getAndIncrement() );
+  }
+
+  /**
+   * Returns the kept box for the given key. The environment is changed as
+   * laying out the atom would have changed it.
+   *
+   * @param key identifies the box, see
+   *            {@link #key(CanonicalWriter, Atom, TeXEnvironment)}
+   * @param env the environment in which the atom is being laid out
+   * @return a new box containing the kept box, or {@code null} if none
+   */
+  public Box get( final Key key, final TeXEnvironment env ) {
+    final Stripe stripe = stripe( key );
+    final Fragment fragment;
+
+    synchronized( stripe ) {
+      fragment = stripe.get( key );
+    }
+
+    if( fragment == null ) {
+      mMisses.increment();
+      return null;
+    }
+
+    mHits.increment();
+
+    env.setColor( fragment.mColor );
+    env.setBackground( fragment.mBackground );
+    env.setLastFontId( fragment.mLastFontId );
+
+    return new HorizontalBox( fragment.mBox );
+  }
+
+  /**
+   * Keeps the box that was laid out for the given key, along with the
+   * environment's settings after laying it out.
+   *
+   * @param key identifies the box, see
+   *            {@link #key(CanonicalWriter, Atom, TeXEnvironment)}
+   * @param env the environment in which the atom was laid out
+   * @param box the atom's box
+   * @return the box for the atom's parent
+   */
+  public Box put( final Key key, final TeXEnvironment env, final Box box ) {
+    // A box positioned by its own atom can't be shifted by another parent.
+    if( box.getShift() != 0 ) {
+      return box;
+    }
+
+    final Fragment fragment = new Fragment( box, env );
+    final Stripe stripe = stripe( key );
+
+    synchronized( stripe ) {
+      stripe.put( key, fragment );
+    }
+
+    return new HorizontalBox( box );
+  }
+
+  /**
+   * Removes every box, but keeps the statistics.
+   */
+  public void clear() {
+    for( final Stripe stripe : mStripes ) {
+      synchronized( stripe ) {
+        stripe.clear();
+      }
+    }
+  }
+
+  /**
+   * @return the number of boxes kept
+   */
+  public int size() {
+    int size = 0;
+
+    for( final Stripe stripe : mStripes ) {
+      synchronized( stripe ) {
+        size += stripe.size();
+      }
+    }
+
+    return size;
+  }
+
+  /**
+   * @return the number of times a box was reused
+   */
+  public long getHits() {
+    return mHits.sum();
+  }
+
+  /**
+   * @return the number of times a box had to be laid out
+   */
+  public long getMisses() {
+    return mMisses.sum();
+  }
+
+  /**
+   * @return the number of boxes removed to make room for others
+   */
+  public long getEvictions() {
+    return mEvictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    final long hits = getHits();
+    final long lookups = hits + getMisses();
+
+    return format( "%d fragments, %d hits, %d misses (%.1f%%), %d evictions",
+                   size(), hits, lookups - hits,
+                   lookups == 0 ? 0.0 : 100.0 * hits / lookups,
+                   getEvictions() );
+  }
+
+  private Stripe stripe( final Key key ) {
+    return mStripes[ Math.floorMod( key.mHash, mStripes.length ) ];
+  }
+
+  /**
+   * Identifies a subformula and the environment it's laid out in.
+   */
+  public static final class Key {
+    private final long mNumber;
+    private final int mStyle;
+    private final Class<?> mFontClass;
+    private final float mSize;
+    private final Color mColor;
+    private final Color mBackground;
+    private final int mLastFontId;
+    private final int mHash;
+
+    private Key( final long number, final TeXEnvironment env ) {
+      final var tf = env.getTeXFont();
+
+      mNumber = number;
+      mStyle = env.getStyle();
+      mFontClass = tf.getClass();
+      mSize = tf.getPointSize();
+      mColor = env.getColor();
+      mBackground = env.getBackground();
+      mLastFontId = env.getLastFontId();
+      mHash = Objects.hash( mNumber, mStyle, mFontClass, mSize, mColor,
+                            mBackground, mLastFontId );
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if( !(o instanceof Key) ) {
+        return false;
+      }
+
+      final Key key = (Key) o;
+      return mHash == key.mHash &&
+          mNumber == key.mNumber &&
+          mStyle == key.mStyle &&
+          mLastFontId == key.mLastFontId &&
+          Float.compare( mSize, key.mSize ) == 0 &&
+          mFontClass == key.mFontClass &&
+          Objects.equals( mColor, key.mColor ) &&
+          Objects.equals( mBackground, key.mBackground );
+    }
+
+    @Override
+    public int hashCode() {
+      return mHash;
+    }
+  }
+
+  /**
+   * A kept box and the environment's settings after laying it out.
+   */
+  private static final class Fragment {
+    private final Box mBox;
+    private final Color mColor;
+    private final Color mBackground;
+    private final int mLastFontId;
+
+    private Fragment( final Box box, final TeXEnvironment env ) {
+      mBox = box;
+      mColor = env.getColor();
+      mBackground = env.getBackground();
+      mLastFontId = env.getLastFontId();
+    }
+  }
+
+  /**
+   * Least recently used boxes, in one part of the cache.
+   */
+  private final class Stripe extends LinkedHashMap<Key, Fragment> {
+    private final int mCapacity;
+
+    private Stripe( final int capacity ) {
+      super( 16, 0.75f, true );
+      mCapacity = capacity;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(
+        final Map.Entry<Key, Fragment> eldest ) {
+      final boolean evict = size() > mCapacity;
+
+      if( evict ) {
+        mEvictions.increment();
+      }
+
+      return evict;
+    }
+  }
+}
@@ -43,6 +43,12 @@ public class Glue {
     // the glue table representing the "glue rules" (as in TeX)
     private static final int[][][] glueTable;
 
+    // number of atom types having glue rules (ORD through INNER)
+    private static final int TYPES = TeXConstants.TYPE_INNER + 1;
+
+    // number of sizes: display, text, script, and scriptscript
+    private static final int SIZES = 4;
+
     static {
         final GlueSettingsParser parser = new GlueSettingsParser();
         glueTypes = parser.getGlueTypes();
@@ -81,20 +87,79 @@ public class Glue {
      */
     public static Box get(
         final int lType, final int rType, final TeXEnvironment env) {
+        return env.getTeXFont().getGlue( lType, rType, env.getStyle() );
+    }
+
+    /**
+     * Creates a box representing the glue between atoms of the given types,
+     * for fonts that don't share precomputed glue boxes.
+     *
+     * @param lType left atom type
+     * @param rType right atom type
+     * @param tf the font that provides the "mu font" quad
+     * @param style the style in which the glue will be drawn
+     * @return a new box representing the glue
+     */
+    public static Box createBox(final int lType, final int rType,
+                                final TeXFont tf, final int style) {
+        final int l = lType >= TYPES ? TeXConstants.TYPE_ORDINARY : lType;
+        final int r = rType >= TYPES ? TeXConstants.TYPE_ORDINARY : rType;
+
+        return glueTypes[glueTable[l][r][style >> 1]].createBox(tf, style);
+    }
+
+    /**
+     * Creates the glue boxes for every combination of left atom type, right
+     * atom type, and size. Glue boxes cannot be modified, so the same box is
+     * shared by all layouts that use the given font.
+     *
+     * @param tf the font that provides the "mu font" quad for each size
+     * @return the glue boxes, to be looked up using {@link #index(int, int, int)}
+     */
+    public static Box[] createBoxes(final TeXFont tf) {
+        final Box[][] boxes = new Box[glueTypes.length][SIZES];
+
+        for (int s = 0; s < SIZES; s++) {
+            for (int t = 0; t < glueTypes.length; t++) {
+                boxes[t][s] = glueTypes[t].createBox(tf, s << 1);
+            }
+        }
+
+        final Box[] result = new Box[TYPES * TYPES * SIZES];
+
+        for (int l = 0; l < TYPES; l++) {
+            for (int r = 0; r < TYPES; r++) {
+                for (int s = 0; s < SIZES; s++) {
+                    result[index(l, r, s << 1)] = boxes[glueTable[l][r][s]][s];
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the position of the glue box in the array created by
+     * {@link #createBoxes(TeXFont)}.
+     *
+     * @param lType left atom type
+     * @param rType right atom type
+     * @param style the style in which the glue will be drawn
+     * @return an index into the glue boxes
+     */
+    public static int index(final int lType, final int rType, final int style) {
         // types > INNER are considered of type ORD for glue calculations
-        final int l = lType > 7 ? TeXConstants.TYPE_ORDINARY : lType;
-        final int r = rType > 7 ? TeXConstants.TYPE_ORDINARY : rType;
+        final int l = lType >= TYPES ? TeXConstants.TYPE_ORDINARY : lType;
+        final int r = rType >= TYPES ? TeXConstants.TYPE_ORDINARY : rType;
 
-        // search right glue-type in "glue-table"
-        return glueTypes[glueTable[l][r][env.getStyle() / 2]].createBox(env);
+        return (l * TYPES + r) * SIZES + (style >> 1);
     }
 
     /**
      * Use "quad" from a font marked as a "mu font"
      */
-    private Box createBox(final TeXEnvironment env) {
-        final TeXFont tf = env.getTeXFont();
-        float quad = tf.getQuad( env.getStyle(), tf.getMuFontId() );
+    private Box createBox(final TeXFont tf, final int style) {
+        final float quad = tf.getQuad( style, tf.getMuFontId() );
         return new GlueBox( space / 18.0f * quad );
     }
 }
@@ -0,0 +1,553 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import com.whitemagicsoftware.tex.atoms.Atom;
+import com.whitemagicsoftware.tex.atoms.RowAtom;
+import com.whitemagicsoftware.tex.boxes.Box;
+import com.whitemagicsoftware.tex.boxes.StrutBox;
+import com.whitemagicsoftware.tex.exceptions.ParseException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static java.lang.System.arraycopy;
+import static java.util.Arrays.copyOf;
+
+/**
+ * A formula that is kept up to date with edits to its source text, such as
+ * keystrokes in a live preview. The text is parsed one atom at a time, and
+ * so are the contents of long groups, such as the argument of a square root.
+ * Only the atoms touched by an edit are parsed again, in the innermost such
+ * group; the others are reused. Likewise, each row of atoms keeps its boxes,
+ * so that laying out the formula again only lays out the atoms near an edit,
+ * and reuses the boxes of the runs of atoms before and after it.
+ * <p>
+ * The atom tree and the rendered result are identical to those of a
+ * {@link TeXFormula} created from the complete text.
+ * </p>
+ * <p>
+ * Boxes are only reused between layouts that use the same {@link TeXFont}
+ * instance, so callers should keep one font per output size.
+ * </p>
+ * <p>
+ * <strong>Caution:</strong> This class is not thread-safe.
+ * </p>
+ */
+public final class IncrementalTeXFormula {
+  private static final int INITIAL_CAPACITY = 4;
+
+  /**
+   * The contents of shorter groups are parsed along with the atom that
+   * contains the group.
+   */
+  private static final int MIN_GROUP_LENGTH = 32;
+
+  /**
+   * The contents of groups nested deeper are parsed along with the atom that
+   * contains the group, which bounds the call stack used for parsing.
+   */
+  private static final int MAX_DEPTH = 32;
+
+  /**
+   * Parses one atom at a time, asking for the contents of groups.
+   */
+  private final TeXFormula mParser = new TeXFormula( this::parseGroup );
+
+  /**
+   * Source text for the formula.
+   */
+  private String mText;
+
+  /**
+   * Atoms of the whole text.
+   */
+  private Group mFormula;
+
+  /**
+   * False after an edit failed to parse; the next edit parses everything.
+   */
+  private boolean mValid;
+
+  private Atom mRoot;
+
+  /**
+   * Position of the edit being parsed, and the number of characters that it
+   * removed and inserted there.
+   */
+  private int mOffset;
+  private int mRemoved;
+  private int mInserted;
+
+  /**
+   * Number of edits, which marks the groups reused for the current edit.
+   */
+  private int mEdits;
+
+  /**
+   * Group being parsed, the position of its contents, and its depth.
+   */
+  private Group mGroup;
+  private int mStart;
+  private int mDepth;
+
+  /**
+   * Groups found in the atom being parsed.
+   */
+  private List<Group> mFound;
+
+  /**
+   * Parses the given text.
+   *
+   * @param s the text to parse
+   * @throws ParseException if the text could not be parsed correctly
+   */
+  public IncrementalTeXFormula( final String s ) throws ParseException {
+    mText = "";
+    edit( 0, 0, s );
+  }
+
+  /**
+   * Replaces part of the source text and parses the atoms that the change
+   * affects.
+   *
+   * @param offset   position in the current text where the edit starts
+   * @param removed  number of characters removed at the offset
+   * @param inserted text inserted at the offset
+   * @throws ParseException if the edited text could not be parsed correctly;
+   *                        the text is changed regardless, but the root
+   *                        is not
+   */
+  public void edit( final int offset, final int removed, final String inserted )
+      throws ParseException {
+    final int length = mText.length();
+
+    if( offset < 0 || removed < 0 || offset + removed > length ) {
+      throw new IndexOutOfBoundsException( String.format(
+          "Edit [%d, %d) outside of text of length %d",
+          offset, offset + removed, length ) );
+    }
+
+    final String text =
+        mText.substring( 0, offset ) + inserted +
+            mText.substring( offset + removed );
+
+    mText = text;
+    mOffset = offset;
+    mRemoved = removed;
+    mInserted = inserted.length();
+    mEdits++;
+
+    final var event = new ParseEvent();
+    event.begin();
+
+    try {
+      if( !mValid ) {
+        mFormula = new Group( null );
+      }
+
+      mValid = false;
+      parse( mFormula, 0, text.length() );
+      mRoot = mFormula.mRoot;
+      mValid = true;
+    } finally {
+      event.end( text );
+    }
+  }
+
+  /**
+   * Parses the atoms of a group's contents that the current edit affects,
+   * or all of them if the group is new.
+   *
+   * @param group the group to parse
+   * @param start position of the group's contents in the current text
+   * @param end   position after the group's contents in the current text
+   */
+  private void parse( final Group group, final int start, final int end )
+      throws ParseException {
+    final int offset = mOffset - start;
+    final int delta = mInserted - mRemoved;
+    final int editEnd = offset + mInserted;
+
+    // The extent of an atom depends on the character following it (e.g.,
+    // a script), so an atom that ends where the edit starts is affected.
+    int first = 0;
+
+    while( first < group.mCount && group.mEnds[ first ] < offset ) {
+      first++;
+    }
+
+    final Group outerGroup = mGroup;
+    final int outerStart = mStart;
+    final List<Group> outerFound = mFound;
+    final List<Group> found = new ArrayList<>();
+
+    mGroup = group;
+    mStart = start;
+    mFound = found;
+
+    int next = first;
+    int pos = start + (first == 0 ? 0 : group.mEnds[ first - 1 ]);
+    int count = 0;
+    Atom[] atoms = new Atom[ INITIAL_CAPACITY ];
+    int[] ends = new int[ INITIAL_CAPACITY ];
+    Group[][] nested = new Group[ INITIAL_CAPACITY ][];
+    boolean resync = false;
+
+    try {
+      while( !resync && pos < end ) {
+        final int from = pos;
+
+        found.clear();
+        pos = mParser.parseNext( mText, start, end, group.mStyle, pos );
+        final Atom atom = mParser.getRoot();
+
+        if( atom == null ) {
+          break;
+        }
+
+        if( count == atoms.length ) {
+          atoms = copyOf( atoms, count << 1 );
+          ends = copyOf( ends, count << 1 );
+          nested = copyOf( nested, count << 1 );
+        }
+
+        atoms[ count ] = atom;
+        ends[ count ] = pos - start;
+
+        if( !found.isEmpty() ) {
+          // positions of groups are kept relative to the atom's start
+          for( final Group g : found ) {
+            g.mOffset -= from;
+          }
+
+          nested[ count ] = found.toArray( new Group[ 0 ] );
+        }
+
+        count++;
+
+        // Past the edit, the parse can resume with the old atoms once both
+        // parses agree on where an atom ends.
+        if( pos - start >= editEnd ) {
+          while( next < group.mCount &&
+              group.mEnds[ next ] + delta < pos - start ) {
+            next++;
+          }
+
+          resync = next < group.mCount &&
+              group.mEnds[ next ] + delta == pos - start;
+        }
+      }
+    } finally {
+      mGroup = outerGroup;
+      mStart = outerStart;
+      mFound = outerFound;
+    }
+
+    group.replace( first, next, resync, atoms, ends, nested, count, delta );
+    group.mLength = end - start;
+  }
+
+  /**
+   * Returns the atom for the contents of a group found while parsing. The
+   * contents of a long group are parsed one atom at a time: if the group
+   * was found before the edit, only the atoms that the edit affects are
+   * parsed again, or none if the edit is outside of the group.
+   *
+   * @param start position of the group's contents in the current text
+   * @param end   position after the group's contents in the current text
+   * @param style text style to parse the contents in
+   * @return the atom, or null to parse the contents with the atom that
+   * contains the group
+   */
+  private Atom parseGroup( final int start, final int end, final String style )
+      throws ParseException {
+    if( end - start < MIN_GROUP_LENGTH || mDepth >= MAX_DEPTH ) {
+      return null;
+    }
+
+    final int delta = mInserted - mRemoved;
+    Group group = null;
+    boolean edited = false;
+
+    if( start <= mOffset ) {
+      // before the edit, or around it
+      group = find( start, style );
+
+      if( group != null ) {
+        final int e = start + group.mLength;
+
+        if( e > mOffset || e != end ) {
+          edited = true;
+
+          if( e < mOffset + mRemoved || e + delta != end ) {
+            group = null;
+          }
+        }
+      }
+    }
+
+    if( group == null && start >= mOffset + mInserted ) {
+      // after the edit
+      group = find( start - delta, style );
+      edited = false;
+
+      if( group != null && (start - delta < mOffset + mRemoved ||
+          start + group.mLength != end) ) {
+        group = null;
+      }
+    }
+
+    if( group == null ) {
+      group = new Group( style );
+      edited = true;
+    }
+
+    group.mEdit = mEdits;
+
+    if( edited ) {
+      mDepth++;
+
+      try {
+        parse( group, start, end );
+      } finally {
+        mDepth--;
+      }
+    }
+
+    if( group.mRoot != null ) {
+      group.mOffset = start;
+      mFound.add( group );
+    }
+
+    return group.mRoot;
+  }
+
+  /**
+   * Returns the group, not yet reused for the current edit, whose contents
+   * started at the given position before the edit, in the atom of the group
+   * being parsed that contained the position.
+   *
+   * @param position position in the text before the edit
+   * @param style    text style of the group's contents
+   * @return the group, or null if none
+   */
+  private Group find( final int position, final String style ) {
+    final Group parent = mGroup;
+    final int offset = position - mStart;
+    int lo = 0;
+    int hi = parent.mCount;
+
+    while( lo < hi ) {
+      final int mid = (lo + hi) >>> 1;
+
+      if( parent.mEnds[ mid ] <= offset ) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid;
+      }
+    }
+
+    if( lo < parent.mCount && parent.mNested[ lo ] != null ) {
+      final int atomStart = lo == 0 ? 0 : parent.mEnds[ lo - 1 ];
+
+      for( final Group g : parent.mNested[ lo ] ) {
+        if( g.mEdit != mEdits && atomStart + g.mOffset == offset &&
+            Objects.equals( g.mStyle, style ) ) {
+          return g;
+        }
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * Returns the source text, including all edits.
+   *
+   * @return the text that was parsed
+   */
+  public String getText() {
+    return mText;
+  }
+
+  /**
+   * Returns the root of the atom tree, which has the same structure as the
+   * root of a {@link TeXFormula} parsed from {@link #getText()}.
+   *
+   * @return the root atom, or null if the formula is empty
+   */
+  public Atom getRoot() {
+    return mRoot;
+  }
+
+  /**
+   * Converts this formula into a box, reusing the boxes of the runs of atoms
+   * that are unchanged since the previous call.
+   *
+   * @param env the environment in which to lay out the formula
+   * @return the box representing the formula
+   */
+  public Box createBox( final TeXEnvironment env ) {
+    final var event = new LayoutEvent();
+    event.begin();
+
+    final Box box = mRoot == null ? new StrutBox() : mRoot.createBox( env );
+
+    event.end( mText, env, box );
+    return box;
+  }
+
+  /**
+   * The atoms of the whole text or of a group's contents, and the groups
+   * found in each atom. The atoms tile the text: each atom spans from the
+   * end of the previous atom.
+   */
+  private static final class Group {
+    /**
+     * Text style that the contents are parsed in.
+     */
+    private final String mStyle;
+
+    /**
+     * Boxes from the most recent layout of the row of atoms.
+     */
+    private final RowAtom.Runs mRuns = new RowAtom.Runs();
+
+    /**
+     * Position of the contents, relative to the start of the atom that
+     * contains the group, and their length.
+     */
+    private int mOffset;
+    private int mLength;
+
+    /**
+     * Atoms, in order; only the first {@link #mCount} are used.
+     */
+    private Atom[] mAtoms = new Atom[ INITIAL_CAPACITY ];
+
+    /**
+     * Position after each atom, relative to the start of the contents.
+     */
+    private int[] mEnds = new int[ INITIAL_CAPACITY ];
+
+    /**
+     * Groups found in each atom, null if none.
+     */
+    private Group[][] mNested = new Group[ INITIAL_CAPACITY ][];
+
+    private int mCount;
+
+    private Atom mRoot;
+
+    /**
+     * Edit for which this group was last found.
+     */
+    private int mEdit;
+
+    private Group( final String style ) {
+      mStyle = style;
+    }
+
+    /**
+     * Replaces the atoms from first to next (inclusive, if the parse
+     * resynchronized there) with the given atoms.
+     */
+    private void replace(
+        final int first, final int next, final boolean resync,
+        final Atom[] atoms, final int[] ends, final Group[][] nested,
+        final int count, final int delta ) {
+      final int kept = resync ? mCount - next - 1 : 0;
+      final int total = first + count + kept;
+
+      if( total > mAtoms.length ) {
+        final int capacity = Integer.highestOneBit( total ) << 1;
+        mAtoms = copyOf( mAtoms, capacity );
+        mEnds = copyOf( mEnds, capacity );
+        mNested = copyOf( mNested, capacity );
+      }
+
+      if( kept > 0 ) {
+        arraycopy( mAtoms, next + 1, mAtoms, first + count, kept );
+        arraycopy( mEnds, next + 1, mEnds, first + count, kept );
+        arraycopy( mNested, next + 1, mNested, first + count, kept );
+
+        for( int i = first + count; i < total; i++ ) {
+          mEnds[ i ] += delta;
+        }
+      }
+
+      arraycopy( atoms, 0, mAtoms, first, count );
+      arraycopy( ends, 0, mEnds, first, count );
+      arraycopy( nested, 0, mNested, first, count );
+
+      for( int i = total; i < mCount; i++ ) {
+        mAtoms[ i ] = null;
+        mNested[ i ] = null;
+      }
+
+      mCount = total;
+      mRoot = createRoot();
+    }
+
+    /**
+     * Mirrors {@link TeXFormula}, which adds atoms to a row that starts with
+     * the first atom (or its elements, when the first atom is itself a row).
+     * Unlike {@link TeXFormula}, the first atom is never modified.
+     */
+    private Atom createRoot() {
+      if( mCount == 0 ) {
+        return null;
+      }
+
+      if( mCount == 1 ) {
+        return mAtoms[ 0 ];
+      }
+
+      final var row = new CachedRowAtom( mRuns, mAtoms[ 0 ] );
+
+      for( int i = 1; i < mCount; i++ ) {
+        row.add( mAtoms[ i ] );
+      }
+
+      return row;
+    }
+  }
+
+  /**
+   * A group's row of atoms, which keeps its boxes in the group for the next
+   * layout of the group's row.
+   */
+  private static final class CachedRowAtom extends RowAtom {
+    private final Runs mRuns;
+
+    private CachedRowAtom( final Runs runs, final Atom atom ) {
+      super( atom );
+      mRuns = runs;
+    }
+
+    @Override
+    protected Runs getRuns() {
+      return mRuns;
+    }
+  }
+}
@@ -0,0 +1,715 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import com.whitemagicsoftware.tex.boxes.Box;
+import com.whitemagicsoftware.tex.exceptions.RenderCancelledException;
+import com.whitemagicsoftware.tex.graphics.SvgGraphics2D;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.whitemagicsoftware.tex.TeXConstants.STYLE_DISPLAY;
+import static com.whitemagicsoftware.tex.TeXConstants.STYLE_TEXT;
+import static java.lang.System.nanoTime;
+
+/**
+ * Copies a document (such as Markdown or HTML) from a {@link Reader} to a
+ * {@link Writer}, replacing the math spans it contains (such as
+ * {@code $...$} and {@code $$...$$}) by their rendering. The document is
+ * read once. Identical spans are rendered once, and distinct spans are
+ * rendered in parallel while the rest of the document is being read. Spans
+ * written differently that parse to the same {@link CanonicalForm}, such as
+ * {@code x^2} and {@code x^{2}}, are given the same id.
+ * <p>
+ * Memory use does not depend on the document size: at most
+ * {@link #setMaxPending(int)} text chunks and spans wait to be written, and
+ * at most {@link #setCacheSize(int)} renderings are kept for deduplication.
+ * A span that recurs after its rendering was evicted is rendered again.
+ * </p>
+ * <p>
+ * Spans are parsed with {@link TeXFormula#parseTolerant(String)}, so invalid
+ * spans are rendered with error markers. A backslash escapes the next
+ * character, so {@code \$} neither opens nor closes a span. An unterminated
+ * span, or one longer than {@link #MAX_FORMULA_LENGTH}, is copied as text.
+ * So is a span that exceeds the {@link #setLimits(ComplexityLimits) limits},
+ * or whose rendering exceeds the {@link #setTimeout(Duration) timeout}.
+ * </p>
+ */
+public final class InlineMathRenderer {
+  /**
+   * Spans longer than this many characters are treated as text.
+   */
+  public static final int MAX_FORMULA_LENGTH = 16384;
+
+  /**
+   * Display math between double dollar signs, and text math between single
+   * dollar signs.
+   */
+  public static final List<Delimiter> DEFAULT_DELIMITERS = List.of(
+      new Delimiter( "$$", "$$", STYLE_DISPLAY ),
+      new Delimiter( "$", "$", STYLE_TEXT )
+  );
+
+  private static final int DEFAULT_CACHE_SIZE = 1024;
+  private static final int DEFAULT_MAX_PENDING = 256;
+
+  /**
+   * Text is queued in chunks of at most this many characters.
+   */
+  private static final int TEXT_CHUNK_SIZE = 8192;
+
+  /**
+   * Writes the rendering of a math span to the output document.
+   */
+  @FunctionalInterface
+  public interface Replacement {
+    /**
+     * @param out   the output document
+     * @param id    identifies the distinct rendering, numbered from 0 in the
+     *              order of first appearance; spans in the same style with
+     *              the same canonical form have the same id
+     * @param tex   the formula, without delimiters
+     * @param svg   the rendered formula
+     * @param first true for the first occurrence of the rendering, such as
+     *              to write the SVG elsewhere once and refer to it by id
+     * @throws IOException could not write the replacement
+     */
+    void write( Writer out, int id, String tex, String svg, boolean first )
+        throws IOException;
+  }
+
+  /**
+   * The opening and closing strings of a math span and the style in which
+   * its formula is rendered.
+   */
+  public static final class Delimiter {
+    private final String mOpen;
+    private final String mClose;
+    private final int mStyle;
+
+    /**
+     * @param open  opens the span, must not be empty
+     * @param close closes the span, must not be empty
+     * @param style one of the style constants from {@link TeXConstants}
+     */
+    public Delimiter( final String open, final String close, final int style ) {
+      if( open.isEmpty() || close.isEmpty() ) {
+        throw new IllegalArgumentException( "Empty math delimiter" );
+      }
+
+      mOpen = open;
+      mClose = close;
+      mStyle = style;
+    }
+  }
+
+  private final float mSize;
+  private final TeXFont mFont;
+  private final Executor mExecutor;
+
+  private List<Delimiter> mDelimiters = DEFAULT_DELIMITERS;
+  private Replacement mReplacement = ( out, id, tex, svg, first ) ->
+      out.write( svg );
+  private int mCacheSize = DEFAULT_CACHE_SIZE;
+  private int mMaxPending = DEFAULT_MAX_PENDING;
+  private RenderListener mListener;
+  private ComplexityLimits mLimits;
+  private long mExpensiveCost;
+  private Executor mExpensiveExecutor;
+  private Duration mTimeout;
+
+  /**
+   * Creates a renderer that renders on the common fork-join pool.
+   *
+   * @param size the font size, in pixels
+   */
+  public InlineMathRenderer( final float size ) {
+    this( size, ForkJoinPool.commonPool() );
+  }
+
+  /**
+   * @param size     the font size, in pixels
+   * @param executor runs the rendering tasks
+   */
+  public InlineMathRenderer( final float size, final Executor executor ) {
+    mSize = size;
+    mFont = new DefaultTeXFont( size );
+    mExecutor = executor;
+  }
+
+  /**
+   * @param delimiters the delimiters to find, in order of precedence; list a
+   *                   delimiter before any delimiter that is its prefix
+   */
+  public void setDelimiters( final List<Delimiter> delimiters ) {
+    mDelimiters = List.copyOf( delimiters );
+  }
+
+  /**
+   * @param replacement writes the rendered spans, by default the SVG is
+   *                    written in place of the span
+   */
+  public void setReplacement( final Replacement replacement ) {
+    mReplacement = replacement;
+  }
+
+  /**
+   * @param cacheSize the number of renderings, and of the canonical forms
+   *                  that identify them, kept for deduplication
+   */
+  public void setCacheSize( final int cacheSize ) {
+    mCacheSize = cacheSize;
+  }
+
+  /**
+   * @param maxPending the number of text chunks and spans that may wait to
+   *                   be written, which bounds the rendering work in flight
+   */
+  public void setMaxPending( final int maxPending ) {
+    mMaxPending = Math.max( 1, maxPending );
+  }
+
+  /**
+   * @param limits spans exceeding these limits are copied as text instead of
+   *               being rendered, {@code null} (the default) to render all
+   *               spans
+   */
+  public void setLimits( final ComplexityLimits limits ) {
+    mLimits = limits;
+  }
+
+  /**
+   * Renders expensive spans on a separate executor, such as a small pool,
+   * so that they cannot hold up the others.
+   *
+   * @param cost     spans whose {@link FormulaComplexity#getCost()} exceeds
+   *                 this are rendered by the given executor
+   * @param executor runs the expensive rendering tasks, {@code null} (the
+   *                 default) to render all spans on the same executor
+   */
+  public void setExpensiveExecutor( final long cost, final Executor executor ) {
+    mExpensiveCost = cost;
+    mExpensiveExecutor = executor;
+  }
+
+  /**
+   * Stops rendering a span once it has taken longer than the given time,
+   * which frees the thread for other spans. The span is copied as text.
+   *
+   * @param timeout the time each span may take to render, measured from
+   *                when its rendering starts, {@code null} (the default)
+   *                to never stop
+   */
+  public void setTimeout( final Duration timeout ) {
+    mTimeout = timeout;
+  }
+
+  /**
+   * @param listener receives the cost of each distinct formula rendered,
+   *                 {@code null} (the default) to measure nothing
+   */
+  public void setListener( final RenderListener listener ) {
+    mListener = listener;
+  }
+
+  /**
+   * Copies the document, replacing its math spans. Neither stream is closed.
+   *
+   * @param in  the document to read
+   * @param out receives the document with math spans replaced
+   * @throws IOException could not read or write the document
+   */
+  public void render( final Reader in, final Writer out ) throws IOException {
+    new Session( in, out ).run();
+  }
+
+  /**
+   * @return the rendered span, or {@code null} if rendering took longer
+   * than the timeout
+   */
+  private Rendered toSvg( final String tex, final int style ) {
+    final var timeout = mTimeout;
+    final var cancellation =
+        timeout == null ? null : Cancellation.after( timeout );
+
+    try {
+      return toSvg( tex, style, cancellation );
+    } catch( final RenderCancelledException e ) {
+      return null;
+    }
+  }
+
+  private Rendered toSvg(
+      final String tex, final int style, final Cancellation cancellation ) {
+    final var listener = mListener;
+
+    if( listener != null ) {
+      return toSvg( tex, style, cancellation, listener );
+    }
+
+    final var formula =
+        TeXFormula.parseTolerant( tex, cancellation ).getFormula();
+    final var box = createBox( formula, style, cancellation );
+    final var g = draw( box, cancellation );
+
+    return new Rendered( g.toString(), CanonicalForm.of( formula ) );
+  }
+
+  /**
+   * Renders the same as {@link #toSvg(String, int, Cancellation)}, timing
+   * each phase.
+   */
+  private Rendered toSvg(
+      final String tex, final int style, final Cancellation cancellation,
+      final RenderListener listener ) {
+    final long start = nanoTime();
+    final var formula =
+        TeXFormula.parseTolerant( tex, cancellation ).getFormula();
+    final long parsed = nanoTime();
+    final var box = createBox( formula, style, cancellation );
+    final long laidOut = nanoTime();
+    final var g = draw( box, cancellation );
+    final long drawn = nanoTime();
+    final var svg = g.toString();
+    final long serialized = nanoTime();
+
+    listener.rendered( new RenderStatistics(
+        tex, formula.getRoot(), box, svg, g.getSegments(),
+        parsed - start, laidOut - parsed, drawn - laidOut,
+        serialized - drawn ) );
+
+    return new Rendered( svg, CanonicalForm.of( formula ) );
+  }
+
+  private Box createBox( final TeXFormula formula, final int style,
+                         final Cancellation cancellation ) {
+    final var env = new TeXEnvironment( style, mFont );
+    env.setCancellation( cancellation );
+
+    return formula.createBox( env );
+  }
+
+  private SvgGraphics2D draw( final Box box, final Cancellation cancellation ) {
+    final var layout = new TeXLayout( box, mSize );
+    final var g = new SvgGraphics2D();
+
+    if( cancellation != null ) {
+      cancellation.apply( g );
+    }
+
+    g.scale( mSize, mSize );
+    g.initialize( layout.getWidth(), layout.getHeight() );
+    box.draw( g, layout.getX(), layout.getY() );
+
+    return g;
+  }
+
+  /**
+   * A rendered formula and the canonical form of its atoms.
+   */
+  private static final class Rendered {
+    private final String mSvg;
+    private final CanonicalForm mForm;
+
+    private Rendered( final String svg, final CanonicalForm form ) {
+      mSvg = svg;
+      mForm = form;
+    }
+  }
+
+  /**
+   * A distinct formula and its (pending) rendering.
+   */
+  private static final class Rendering {
+    private final String mTex;
+    private final CompletableFuture<Rendered> mRendered;
+
+    private Rendering(
+        final String tex, final CompletableFuture<Rendered> rendered ) {
+      mTex = tex;
+      mRendered = rendered;
+    }
+  }
+
+  /**
+   * An occurrence of a formula in the document.
+   */
+  private static final class Occurrence {
+    private final Rendering mRendering;
+    private final Delimiter mDelimiter;
+
+    private Occurrence( final Rendering rendering,
+                        final Delimiter delimiter ) {
+      mRendering = rendering;
+      mDelimiter = delimiter;
+    }
+  }
+
+  /**
+   * Identifies a distinct formula, by its text or its {@link CanonicalForm}:
+   * the same formula in another style renders differently.
+   */
+  private static final class Key {
+    private final Object mFormula;
+    private final int mStyle;
+
+    private Key( final Object formula, final int style ) {
+      mFormula = formula;
+      mStyle = style;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if( !(o instanceof Key) ) {
+        return false;
+      }
+
+      final Key key = (Key) o;
+      return mStyle == key.mStyle && mFormula.equals( key.mFormula );
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * mFormula.hashCode() + mStyle;
+    }
+  }
+
+  /**
+   * The state of rendering one document.
+   */
+  private final class Session {
+    private final Reader mIn;
+    private final Writer mOut;
+
+    private final char[] mBuffer = new char[ TEXT_CHUNK_SIZE ];
+    private int mPos;
+    private int mLimit;
+
+    private final StringBuilder mText = new StringBuilder( TEXT_CHUNK_SIZE );
+    private final StringBuilder mTex = new StringBuilder();
+
+    /**
+     * Text chunks ({@link String}) and spans ({@link Occurrence}) waiting
+     * for preceding spans to be rendered.
+     */
+    private final ArrayDeque<Object> mPending = new ArrayDeque<>();
+
+    private final Map<Key, Rendering> mCache =
+        new LinkedHashMap<>( 16, 0.75f, true ) {
+          @Override
+          protected boolean removeEldestEntry(
+              final Map.Entry<Key, Rendering> eldest ) {
+            return size() > mCacheSize;
+          }
+        };
+
+    /**
+     * Ids of the renderings written, by canonical form (or by text, for
+     * formulas that have none). Ids are given as renderings are written,
+     * because the canonical form is known only once the span is parsed.
+     */
+    private final Map<Key, Integer> mIds =
+        new LinkedHashMap<>( 16, 0.75f, true ) {
+          @Override
+          protected boolean removeEldestEntry(
+              final Map.Entry<Key, Integer> eldest ) {
+            return size() > mCacheSize;
+          }
+        };
+
+    private int mNextId;
+
+    private Session( final Reader in, final Writer out ) {
+      mIn = in;
+      mOut = out;
+    }
+
+    private void run() throws IOException {
+      while( fill( 1 ) ) {
+        final char c = mBuffer[ mPos ];
+
+        if( c == '\\' ) {
+          escape( mText );
+        }
+        else {
+          final Delimiter delimiter = findOpening();
+
+          if( delimiter == null ) {
+            mText.append( c );
+            mPos++;
+          }
+          else {
+            mPos += delimiter.mOpen.length();
+            span( delimiter );
+          }
+        }
+
+        if( mText.length() >= TEXT_CHUNK_SIZE ) {
+          flushText();
+        }
+      }
+
+      flushText();
+
+      while( !mPending.isEmpty() ) {
+        writePending();
+      }
+    }
+
+    /**
+     * Reads the span's formula up to its closing delimiter and queues its
+     * rendering. The current position is just after the opening delimiter.
+     */
+    private void span( final Delimiter delimiter ) throws IOException {
+      final StringBuilder tex = mTex;
+      tex.setLength( 0 );
+
+      while( tex.length() <= MAX_FORMULA_LENGTH && fill( 1 ) ) {
+        if( mBuffer[ mPos ] == '\\' ) {
+          escape( tex );
+        }
+        else if( startsWith( delimiter.mClose ) ) {
+          mPos += delimiter.mClose.length();
+          admit( tex.toString(), delimiter );
+          return;
+        }
+        else {
+          tex.append( mBuffer[ mPos++ ] );
+        }
+      }
+
+      // Unterminated or too long, so it's not math.
+      mText.append( delimiter.mOpen ).append( tex );
+
+      // Copy the rest of a long span, so that its closing delimiter isn't
+      // taken to open another span.
+      while( fill( 1 ) ) {
+        if( mBuffer[ mPos ] == '\\' ) {
+          escape( mText );
+        }
+        else if( startsWith( delimiter.mClose ) ) {
+          mPos += delimiter.mClose.length();
+          mText.append( delimiter.mClose );
+          return;
+        }
+        else {
+          mText.append( mBuffer[ mPos++ ] );
+        }
+
+        if( mText.length() >= TEXT_CHUNK_SIZE ) {
+          flushText();
+        }
+      }
+    }
+
+    /**
+     * Queues the span's rendering, unless it exceeds the limits, in which
+     * case it's copied as text. Estimates the complexity only if needed.
+     */
+    private void admit( final String tex, final Delimiter delimiter )
+        throws IOException {
+      final var limits = mLimits;
+      final var expensive = mExpensiveExecutor;
+      Executor executor = mExecutor;
+
+      if( limits != null || expensive != null ) {
+        final var complexity = FormulaComplexity.estimate( tex );
+
+        if( limits != null && !limits.allows( complexity ) ) {
+          mText.append( delimiter.mOpen )
+               .append( tex )
+               .append( delimiter.mClose );
+          return;
+        }
+
+        if( expensive != null && complexity.getCost() > mExpensiveCost ) {
+          executor = expensive;
+        }
+      }
+
+      queue( tex, delimiter, executor );
+    }
+
+    private void queue(
+        final String tex, final Delimiter delimiter, final Executor executor )
+        throws IOException {
+      flushText();
+
+      final int style = delimiter.mStyle;
+      final Key key = new Key( tex, style );
+      Rendering rendering = mCache.get( key );
+
+      if( rendering == null ) {
+        rendering = new Rendering(
+            tex, CompletableFuture.supplyAsync(
+            () -> toSvg( tex, style ), executor ) );
+        mCache.put( key, rendering );
+      }
+
+      enqueue( new Occurrence( rendering, delimiter ) );
+    }
+
+    private void flushText() throws IOException {
+      if( mText.length() > 0 ) {
+        if( mPending.isEmpty() ) {
+          mOut.append( mText );
+        }
+        else {
+          enqueue( mText.toString() );
+        }
+
+        mText.setLength( 0 );
+      }
+    }
+
+    private void enqueue( final Object item ) throws IOException {
+      mPending.addLast( item );
+
+      while( mPending.size() > mMaxPending ) {
+        writePending();
+      }
+    }
+
+    /**
+     * Writes the oldest pending item, waiting for its rendering if needed.
+     */
+    private void writePending() throws IOException {
+      final Object item = mPending.removeFirst();
+
+      if( item instanceof String ) {
+        mOut.write( (String) item );
+      }
+      else {
+        final Occurrence occurrence = (Occurrence) item;
+        final Rendering rendering = occurrence.mRendering;
+        final Rendered rendered;
+
+        try {
+          rendered = rendering.mRendered.join();
+        } catch( final CompletionException e ) {
+          final Throwable cause = e.getCause();
+          throw cause instanceof RuntimeException
+              ? (RuntimeException) cause
+              : e;
+        }
+
+        final Delimiter delimiter = occurrence.mDelimiter;
+
+        if( rendered == null ) {
+          // Timed out, so it's copied as text.
+          mOut.write( delimiter.mOpen );
+          mOut.write( rendering.mTex );
+          mOut.write( delimiter.mClose );
+        }
+        else {
+          final var form = rendered.mForm;
+          final Key key = new Key(
+              form == null ? rendering.mTex : form, delimiter.mStyle );
+          Integer id = mIds.get( key );
+          final boolean first = id == null;
+
+          if( first ) {
+            id = mNextId++;
+            mIds.put( key, id );
+          }
+
+          mReplacement.write(
+              mOut, id, rendering.mTex, rendered.mSvg, first );
+        }
+      }
+    }
+
+    /**
+     * Copies the escape character and the character it escapes.
+     */
+    private void escape( final StringBuilder sb ) throws IOException {
+      sb.append( mBuffer[ mPos++ ] );
+
+      if( fill( 1 ) ) {
+        sb.append( mBuffer[ mPos++ ] );
+      }
+    }
+
+    private Delimiter findOpening() throws IOException {
+      for( final Delimiter delimiter : mDelimiters ) {
+        if( startsWith( delimiter.mOpen ) ) {
+          return delimiter;
+        }
+      }
+
+      return null;
+    }
+
+    private boolean startsWith( final String s ) throws IOException {
+      final int length = s.length();
+
+      if( mBuffer[ mPos ] != s.charAt( 0 ) || !fill( length ) ) {
+        return false;
+      }
+
+      for( int i = 1; i < length; i++ ) {
+        if( mBuffer[ mPos + i ] != s.charAt( i ) ) {
+          return false;
+        }
+      }
+
+      return true;
+    }
+
+    /**
+     * Ensures that at least the given number of characters can be read from
+     * the buffer at the current position.
+     *
+     * @return false if the document ends before.
+     */
+    private boolean fill( final int count ) throws IOException {
+      if( mLimit - mPos >= count ) {
+        return true;
+      }
+
+      mLimit -= mPos;
+      System.arraycopy( mBuffer, mPos, mBuffer, 0, mLimit );
+      mPos = 0;
+
+      while( mLimit < count ) {
+        final int read = mIn.read( mBuffer, mLimit, mBuffer.length - mLimit );
+
+        if( read < 0 ) {
+          return false;
+        }
+
+        mLimit += read;
+      }
+
+      return true;
+    }
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import com.whitemagicsoftware.tex.boxes.Box;
+import com.whitemagicsoftware.tex.boxes.CharBox;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for laying out a formula's atoms as boxes.
+ */
+@Name( "com.whitemagicsoftware.tex.Layout" )
+@Label( "Formula Layout" )
+@Category( "JMathTeX" )
+@Description( "Creates the boxes of a formula's atoms" )
+final class LayoutEvent extends jdk.jfr.Event {
+  @Label( "Formula Length" )
+  @Description( "Length of the formula's source, 0 if built without one" )
+  int length;
+
+  @Label( "Formula Hash" )
+  @Description( "Hash code of the formula's source, 0 if built without one" )
+  int hash;
+
+  @Label( "Style" )
+  @Description( "TeX style constant the formula started in" )
+  int style;
+
+  @Label( "Point Size" )
+  float size;
+
+  @Label( "Boxes" )
+  int boxes;
+
+  @Label( "Glyphs" )
+  int glyphs;
+
+  /**
+   * Commits this event if the recording asks for it. Counting the boxes
+   * walks the box tree, so only happens when committing.
+   *
+   * @param tex the formula's source, {@code null} if built without one
+   * @param env the environment the formula was laid out in
+   * @param box the formula's box
+   */
+  void end( final String tex, final TeXEnvironment env, final Box box ) {
+    if( shouldCommit() ) {
+      if( tex != null ) {
+        length = tex.length();
+        hash = tex.hashCode();
+      }
+
+      style = env.getStyle();
+      size = env.getFontPointSize();
+      box.visit( b -> {
+        boxes++;
+
+        if( b instanceof CharBox ) {
+          glyphs++;
+        }
+      } );
+
+      commit();
+    }
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for parsing a formula's source into atoms.
+ */
+@Name( "com.whitemagicsoftware.tex.Parse" )
+@Label( "Formula Parse" )
+@Category( "JMathTeX" )
+@Description( "Parses a formula's source into atoms" )
+final class ParseEvent extends jdk.jfr.Event {
+  @Label( "Formula Length" )
+  int length;
+
+  @Label( "Formula Hash" )
+  @Description( "Hash code of the formula's source" )
+  int hash;
+
+  /**
+   * Commits this event if the recording asks for it.
+   *
+   * @param tex the parsed source
+   */
+  void end( final String tex ) {
+    if( shouldCommit() ) {
+      length = tex.length();
+      hash = tex.hashCode();
+      commit();
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import java.util.List;
+
+import static java.util.Collections.unmodifiableList;
+
+/**
+ * The outcome of parsing a formula in tolerant mode: the formula, in which
+ * unparsable parts are replaced by error markers, and the problems found.
+ */
+public final class ParseResult {
+  private final TeXFormula mFormula;
+  private final List<Diagnostic> mDiagnostics;
+
+  ParseResult( final TeXFormula formula, final List<Diagnostic> diagnostics ) {
+    mFormula = formula;
+    mDiagnostics = unmodifiableList( diagnostics );
+  }
+
+  /**
+   * @return the parsed formula, never null.
+   */
+  public TeXFormula getFormula() {
+    return mFormula;
+  }
+
+  /**
+   * @return the problems found, in the order they were found.
+   */
+  public List<Diagnostic> getDiagnostics() {
+    return mDiagnostics;
+  }
+
+  /**
+   * @return true if the formula could not be parsed without problems.
+   */
+  public boolean hasErrors() {
+    return !mDiagnostics.isEmpty();
+  }
+}
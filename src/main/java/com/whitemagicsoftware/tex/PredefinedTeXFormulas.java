@@ -0,0 +1,81 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import java.util.function.BiConsumer;
+
+import static com.whitemagicsoftware.tex.TeXConstants.*;
+
+/**
+ * Builds the predefined formulas: composed symbols that can be used as
+ * commands, such as {@code \ne} and {@code \ldots}. They are built with
+ * direct calls, rather than interpreted from a resource, to keep class
+ * initialization fast and free of reflection.
+ */
+final class PredefinedTeXFormulas {
+  private PredefinedTeXFormulas() {
+  }
+
+  /**
+   * Builds the predefined formulas in order, passing each one to the given
+   * consumer as soon as it's built. Formulas can therefore refer to the
+   * formulas defined before them.
+   *
+   * @param consumer receives the name and formula of each predefined formula
+   */
+  static void define( final BiConsumer<String, TeXFormula> consumer ) {
+    consumer.accept( "ne", new TeXFormula( "\\not\\equals" ) );
+    consumer.accept( "neq", new TeXFormula( "\\not\\equals" ) );
+    consumer.accept(
+        "surd", new TeXFormula( "\\surdsign" ).centerOnAxis() );
+    consumer.accept(
+        "ldots", new TeXFormula( "\\ldotp\\ldotp\\ldotp" )
+            .setFixedTypes( TYPE_INNER, TYPE_INNER ) );
+    consumer.accept(
+        "cdots", new TeXFormula( "\\cdotp\\cdotp\\cdotp" )
+            .setFixedTypes( TYPE_INNER, TYPE_INNER ) );
+    consumer.accept(
+        "bowtie", join( "\\triangleright", "\\triangleleft", -1.8f ) );
+    consumer.accept( "models", join( "\\vert", "\\equals", -3.5f ) );
+    consumer.accept(
+        "doteq", new TeXFormula( "\\equals" )
+            .putOver( "\\ldotp", UNIT_MU, 2, false )
+            .setFixedTypes( TYPE_RELATION, TYPE_RELATION ) );
+    consumer.accept(
+        "cong", new TeXFormula( "\\equals" )
+            .putOver( "\\sim", UNIT_MU, 1, false )
+            .setFixedTypes( TYPE_RELATION, TYPE_RELATION ) );
+  }
+
+  /**
+   * Joins two symbols into one relation, overlapping them by the given
+   * amount of space.
+   */
+  private static TeXFormula join(
+      final String left, final String right, final float kern ) {
+    final TeXFormula g = new TeXFormula( right )
+        .setFixedTypes( TYPE_ORDINARY, TYPE_RELATION );
+
+    return new TeXFormula( left )
+        .setFixedTypes( TYPE_RELATION, TYPE_ORDINARY )
+        .addStrut( UNIT_MU, kern, 0, 0 )
+        .add( g );
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+/**
+ * Receives the costs of each formula rendered, such as to find which
+ * formulas are expensive. Rendering without a listener measures nothing.
+ */
+@FunctionalInterface
+public interface RenderListener {
+  /**
+   * Called after a formula is rendered, on the thread that rendered it, so
+   * implementations must be thread-safe when rendering is concurrent.
+   *
+   * @param statistics what rendering the formula cost
+   */
+  void rendered( RenderStatistics statistics );
+}
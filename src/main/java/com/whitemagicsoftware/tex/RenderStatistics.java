@@ -0,0 +1,177 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import com.whitemagicsoftware.tex.atoms.Atom;
+import com.whitemagicsoftware.tex.boxes.Box;
+import com.whitemagicsoftware.tex.boxes.CharBox;
+
+/**
+ * What rendering one formula to SVG cost: the time spent in each phase of
+ * the pipeline, and the size of what each phase produced. Counting walks the
+ * atom and box trees, so statistics are only gathered when a
+ * {@link RenderListener} asks for them; path segments are counted by
+ * {@link com.whitemagicsoftware.tex.graphics.SvgGraphics2D} as it writes
+ * them.
+ */
+public final class RenderStatistics {
+  private final String mTex;
+  private final long mParseNanos;
+  private final long mLayoutNanos;
+  private final long mDrawNanos;
+  private final long mSerializeNanos;
+  private final int mBytes;
+  private final int mSegments;
+
+  private int mAtoms;
+  private int mBoxes;
+  private int mGlyphs;
+
+  /**
+   * @param tex       the formula's source
+   * @param root      the parsed formula, possibly {@code null} when empty
+   * @param box       the formula's laid out box
+   * @param svg       the serialized document
+   * @param segments  the number of path segments in the document
+   * @param parse     nanoseconds spent parsing
+   * @param layout    nanoseconds spent creating the box
+   * @param draw      nanoseconds spent drawing the box
+   * @param serialize nanoseconds spent serializing the document
+   */
+  RenderStatistics(
+      final String tex, final Atom root, final Box box, final String svg,
+      final int segments, final long parse, final long layout,
+      final long draw, final long serialize ) {
+    mTex = tex;
+    mParseNanos = parse;
+    mLayoutNanos = layout;
+    mDrawNanos = draw;
+    mSerializeNanos = serialize;
+
+    // The document is ASCII, one byte per character.
+    mBytes = svg.length();
+    mSegments = segments;
+
+    if( root != null ) {
+      root.visit( atom -> mAtoms++ );
+    }
+
+    box.visit( b -> {
+      mBoxes++;
+
+      if( b instanceof CharBox ) {
+        mGlyphs++;
+      }
+    } );
+  }
+
+  /**
+   * @return the formula's source
+   */
+  public String getTex() {
+    return mTex;
+  }
+
+  /**
+   * @return nanoseconds spent parsing the source into atoms
+   */
+  public long getParseNanos() {
+    return mParseNanos;
+  }
+
+  /**
+   * @return nanoseconds spent creating boxes from the atoms
+   */
+  public long getLayoutNanos() {
+    return mLayoutNanos;
+  }
+
+  /**
+   * @return nanoseconds spent drawing the boxes
+   */
+  public long getDrawNanos() {
+    return mDrawNanos;
+  }
+
+  /**
+   * @return nanoseconds spent serializing the drawing
+   */
+  public long getSerializeNanos() {
+    return mSerializeNanos;
+  }
+
+  /**
+   * @return nanoseconds spent in all phases
+   */
+  public long getTotalNanos() {
+    return mParseNanos + mLayoutNanos + mDrawNanos + mSerializeNanos;
+  }
+
+  /**
+   * @return the number of atoms parsed
+   */
+  public int getAtoms() {
+    return mAtoms;
+  }
+
+  /**
+   * @return the number of boxes laid out
+   */
+  public int getBoxes() {
+    return mBoxes;
+  }
+
+  /**
+   * @return the number of glyphs drawn
+   */
+  public int getGlyphs() {
+    return mGlyphs;
+  }
+
+  /**
+   * @return the number of path segments written
+   */
+  public int getSegments() {
+    return mSegments;
+  }
+
+  /**
+   * @return the size of the SVG document
+   */
+  public int getBytes() {
+    return mBytes;
+  }
+
+  @Override
+  public String toString() {
+    return "RenderStatistics{" +
+        "parse=" + mParseNanos +
+        "ns, layout=" + mLayoutNanos +
+        "ns, draw=" + mDrawNanos +
+        "ns, serialize=" + mSerializeNanos +
+        "ns, atoms=" + mAtoms +
+        ", boxes=" + mBoxes +
+        ", glyphs=" + mGlyphs +
+        ", segments=" + mSegments +
+        ", bytes=" + mBytes +
+        ", tex='" + mTex + '\'' +
+        '}';
+  }
+}
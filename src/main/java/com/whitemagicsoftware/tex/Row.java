@@ -31,17 +31,13 @@ package com.whitemagicsoftware.tex;
 /**
  * A "composed atom": an atom that consists of child atoms that will be displayed 
  * next to each other horizontally with glue between them.
+ * <p>
+ * When nested in another composed atom, the atom that comes just before
+ * it is needed to determine the glue to insert between that atom and the
+ * first child atom of this composed atom. The enclosing composed atom
+ * passes it along when requesting this atom's box (see
+ * {@link com.whitemagicsoftware.tex.atoms.LayoutStack#getPrevious()}).
+ * </p>
  */
 public interface Row {
-
-   /**
-    * Sets the given dummy containing the atom that comes just before
-    * the first child atom of this "composed atom". This method will allways be called
-    * by another composed atom, so this composed atom will be a child of it (nested). 
-    * This is necessary to determine the glue to insert between the first child atom 
-    * of this nested composed atom and the atom that the dummy contains. 
-    * 
-    * @param dummy the dummy that comes just before this "composed atom"
-    */
-   void setPreviousAtom( Dummy dummy );
 }
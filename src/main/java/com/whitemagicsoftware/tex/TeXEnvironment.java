@@ -52,6 +52,12 @@ public class TeXEnvironment {
     // last used font
     private int lastFontId = NO_FONT;
 
+    // stops the layout when cancelled, shared by all copies
+    private Cancellation cancellation;
+
+    // boxes of subformulas laid out before, shared by all copies
+    private FragmentCache fragmentCache;
+
     /**
      * Creates a new {@link TeXEnvironment} with a default point size with
      * symbols rendered in the largest display size.
@@ -92,7 +98,10 @@ public class TeXEnvironment {
     }
 
     public TeXEnvironment copy() {
-        return new TeXEnvironment( style, tf, background, foreground );
+        final var s = new TeXEnvironment( style, tf, background, foreground );
+        s.cancellation = cancellation;
+        s.fragmentCache = fragmentCache;
+        return s;
     }
 
     /**
@@ -113,6 +122,42 @@ public class TeXEnvironment {
         return s;
     }
 
+    /**
+     * @return the cancellation checked while laying out, or null
+     */
+    public Cancellation getCancellation() {
+        return cancellation;
+    }
+
+    /**
+     * Makes layout check the given cancellation before laying out each atom,
+     * throwing {@link com.whitemagicsoftware.tex.exceptions.RenderCancelledException}
+     * once it's cancelled. Environments derived from this one share it.
+     *
+     * @param c the cancellation to check, or null to never stop
+     */
+    public void setCancellation(Cancellation c) {
+        cancellation = c;
+    }
+
+    /**
+     * @return the cache of subformula boxes used while laying out, or null
+     */
+    public FragmentCache getFragmentCache() {
+        return fragmentCache;
+    }
+
+    /**
+     * Makes layout reuse the boxes of subformulas that were laid out before,
+     * by this or another formula, in the same settings. Environments derived
+     * from this one share the cache.
+     *
+     * @param cache the cache to use, or null to lay out every atom
+     */
+    public void setFragmentCache(FragmentCache cache) {
+        fragmentCache = cache;
+    }
+
     /**
      * @return the background color setting
      */
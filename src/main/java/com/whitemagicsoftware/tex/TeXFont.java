@@ -28,6 +28,7 @@
 
 package com.whitemagicsoftware.tex;
 
+import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.exceptions.SymbolMappingNotFoundException;
 import com.whitemagicsoftware.tex.exceptions.TextStyleMappingNotFoundException;
 
@@ -164,6 +165,20 @@ public interface TeXFont {
 
   float getNum3( int style );
 
+  /**
+   * Get the glue to be inserted between atoms of the given types. The
+   * returned box may be shared and must not be modified. By default, a new
+   * box is created each time; implementations may return precomputed boxes.
+   *
+   * @param lType left atom type
+   * @param rType right atom type
+   * @param style the style in which the glue should be drawn
+   * @return a box representing the glue
+   */
+  default Box getGlue( final int lType, final int rType, final int style ) {
+    return Glue.createBox( lType, rType, this, style );
+  }
+
   float getQuad( int style, int fontCode );
 
   /**
@@ -32,7 +32,6 @@ import com.whitemagicsoftware.tex.atoms.*;
 import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.boxes.StrutBox;
 import com.whitemagicsoftware.tex.exceptions.*;
-import com.whitemagicsoftware.tex.parsers.PredefinedTeXFormulaParser;
 import com.whitemagicsoftware.tex.parsers.TeXFormulaSettingsParser;
 
 import java.awt.*;
@@ -69,10 +68,8 @@ import static java.lang.String.format;
 @SuppressWarnings("unused")
 public class TeXFormula {
 
-    // TeX commands and text styles (for parsing)
-    private static final Set<String> commands = new HashSet<>();
-
-    private static final Set<String> textStyles;
+    // symbols, predefined formulas, text styles and commands (for parsing)
+    private static final CommandTable commandTable = new CommandTable();
 
     // table for putting delimiters over and under formula's,
     // indexed by constants from "TeXConstants"
@@ -130,21 +127,33 @@ public class TeXFormula {
         symbolMappings = parser.parseSymbolMappings();
         delimiterMappings = parser.parseDelimiterMappings();
 
+        SymbolAtom.getSymbols().forEach(
+            (name, symbol) -> commandTable.put(name, CommandTable.SYMBOL, symbol) );
+
         // textstyle commands
-        textStyles = parser.parseTextStyles();
+        for( final String style : parser.parseTextStyles() ) {
+            commandTable.put( style, CommandTable.TEXT_STYLE, style );
+        }
 
         // commands
-        commands.add("frac");
-        commands.add("sqrt");
+        commandTable.put( "frac", CommandTable.COMMAND, "frac" );
+        commandTable.put( "sqrt", CommandTable.COMMAND, "sqrt" );
 
-        // predefined TeXFormula's
-        new PredefinedTeXFormulaParser().parse( predefinedTeXFormulas );
+        // predefined TeXFormula's, added to the command table as they are
+        // built because they can refer to each other
+        PredefinedTeXFormulas.define( ( name, formula ) -> {
+            predefinedTeXFormulas.put( name, formula );
+            commandTable.put( name, CommandTable.PREDEFINED, formula );
+        } );
     }
 
-    // the string to be parsed
+    // the string to be parsed, shared by all nested groups
     private String texString;
 
-    // Length of string to be parsed.
+    // Start of the range being parsed.
+    private int texStringStart;
+
+    // End (exclusive) of the range being parsed.
     private int texStringLen;
 
     // current position in the parse string
@@ -156,12 +165,37 @@ public class TeXFormula {
     // the current text style
     private String textStyle;
 
+    // problems found while parsing in tolerant mode, null in strict mode
+    private List<Diagnostic> diagnostics;
+
+    // position of the closing character of each group in closersFor
+    private int[] closers;
+    private String closersFor;
+
+    // row made for the contents of the most recent group that isn't closed
+    private RowAtom unclosed;
+
+    // stops parsing when cancelled, null while not parsing
+    private Cancellation cancellation;
+
+    // provides the atoms of groups, see IncrementalTeXFormula; null to parse
+    // all groups
+    private GroupParser groupParser;
+
     /**
      * Creates an empty instance.
      */
     public TeXFormula() {
     }
 
+    /*
+     * Creates an instance for parsing with parseNext, which asks the given
+     * group parser for the atom of each group that it finds.
+     */
+    TeXFormula( final GroupParser groupParser ) {
+      this.groupParser = groupParser;
+    }
+
     /**
      * Creates a new TeXFormula from a list of TeXFormula objects.
      * <p>
@@ -200,15 +234,65 @@ public class TeXFormula {
       this( s, null );
     }
 
-   /*
-    * Creates a TeXFormula by parsing the given string in the given text style.
-    * Used when a text style command was found in the parse string.
-    */
-    private TeXFormula(final String s, final String textStyle)
+    /**
+     * Creates a new TeXFormula by parsing the given string, checking the
+     * given cancellation before parsing each atom.
+     *
+     * @param s the string to be parsed
+     * @param cancellation stops parsing once cancelled, or null
+     * @throws ParseException if the string could not be parsed correctly
+     * @throws RenderCancelledException if parsing was cancelled
+     */
+    public TeXFormula( final String s, final Cancellation cancellation )
         throws ParseException {
       assert s != null;
-      this.textStyle = textStyle;
-      parse(s);
+      this.cancellation = cancellation;
+
+      try {
+        parse( s );
+      } finally {
+        this.cancellation = null;
+      }
+    }
+
+    /**
+     * Parses the given string without throwing {@link ParseException}s.
+     * Parts of the string that can't be parsed are replaced by error atoms,
+     * which are drawn as red frames, and the problems are reported as
+     * diagnostics. This suits rendering while the user is typing, when most
+     * intermediate strings are incomplete.
+     *
+     * @param s the string to be parsed
+     * @return the formula and the problems found, if any
+     */
+    public static ParseResult parseTolerant( final String s ) {
+      return parseTolerant( s, null );
+    }
+
+    /**
+     * Parses the given string without throwing {@link ParseException}s,
+     * like {@link #parseTolerant(String)}, checking the given cancellation
+     * before parsing each atom.
+     *
+     * @param s the string to be parsed
+     * @param cancellation stops parsing once cancelled, or null
+     * @return the formula and the problems found, if any
+     * @throws RenderCancelledException if parsing was cancelled
+     */
+    public static ParseResult parseTolerant(
+        final String s, final Cancellation cancellation ) {
+      assert s != null;
+
+      final var formula = new TeXFormula();
+      final var problems = new ArrayList<Diagnostic>( 0 );
+
+      formula.diagnostics = problems;
+      formula.cancellation = cancellation;
+      formula.parse( s );
+      formula.diagnostics = null;
+      formula.cancellation = null;
+
+      return new ParseResult( formula, problems );
     }
 
     /**
@@ -868,57 +952,6 @@ public class TeXFormula {
         return add(new SymbolAtom(SymbolAtom.get(name), type));
     }
 
-   /*
-    * Look for scripts at the current position in the parse string
-    * and attach them to the given atom (if found)
-    */
-    private Atom attachScripts(Atom atom) throws ParseException {
-        skipWhitespace();
-        Atom f = atom;
-
-        if (pos < texStringLen ) {
-            // attach script(s) if present
-            char ch = texString.charAt( pos);
-
-            // ' = ^{\prime... so first replace this, then attach this script
-            if (ch == PRIME) {
-                replaceAccents();
-                ch = texString.charAt( pos);
-            }
-
-            // look for scripts and attach them
-            if (ch == SUPER_SCRIPT || ch == SUB_SCRIPT) {
-                pos++;
-                if (ch == SUPER_SCRIPT) { // superscript
-                    TeXFormula sup = getScript(), sub = new TeXFormula();
-                    skipWhitespace();
-                    if (pos < texStringLen
-                    && texString.charAt( pos) == SUB_SCRIPT) { // both
-                        pos++;
-                        sub = getScript();
-                    }
-                    if(f.getRightType() == TeXConstants.TYPE_BIG_OPERATOR)
-                        f = new BigOperatorAtom(f, sub.root, sup.root);
-                    else
-                        f = new ScriptsAtom(f, sub.root, sup.root);
-                } else { // subscript
-                    TeXFormula sub = getScript(), sup = new TeXFormula();
-                    skipWhitespace();
-                    if (pos < texStringLen
-                    && texString.charAt( pos) == SUPER_SCRIPT) { // both
-                        pos++;
-                        sup = getScript();
-                    }
-                    if(f.getRightType() == TeXConstants.TYPE_BIG_OPERATOR)
-                        f = new BigOperatorAtom(f, sub.root, sup.root);
-                    else
-                        f = new ScriptsAtom(f, sub.root, sup.root);
-                }
-            }
-        }
-        return f;
-    }
-
     /*
      * Converts a character (from the parse string) to an atom (CharAtom or
      * Symbol)
@@ -931,39 +964,41 @@ public class TeXFormula {
           final String symbolName = symbolMappings[ c ];
 
           if( symbolName == null ) {
-            final var m = format( "Unknown character: '%s'", c );
-            throw new ParseException( m );
+            return error( pos - 1, "Unknown character: '%s'", c );
           }
           else {
-            try {
-              return SymbolAtom.get( symbolName );
-            } catch( final SymbolNotFoundException e ) {
-              final var m = format(
+            final SymbolAtom symbol = SymbolAtom.getNullable( symbolName );
+
+            if( symbol == null ) {
+              return error(
+                  pos - 1, new SymbolNotFoundException( symbolName ),
                   "The character '%c' was mapped to unknown symbol name '%s'",
                   c, symbolName );
-              throw new ParseException( m, e );
             }
+
+            return symbol;
           }
         }
         else {
-          final var m = format( "Unknown symbol: '%s'", c );
-          throw new ParseException( m );
+          return error( pos - 1, "Unknown symbol: '%s'", c );
         }
       }
 
       // alphanumeric character
-      return new CharAtom( c, textStyle );
+      return CharAtom.get( c, textStyle );
     }
 
    /*
     * Convert this TeXFormula into a box, starting form the given style
     */
     public Box createBox( TeXEnvironment style) {
-        if( root == null ) {
-          return new StrutBox();
-        }
+        final var event = new LayoutEvent();
+        event.begin();
 
-        return root.createBox(style);
+        final Box box = root == null ? new StrutBox() : root.createBox(style);
+
+        event.end( texString, style, box );
+        return box;
     }
 
     /**
@@ -1259,73 +1294,6 @@ public class TeXFormula {
         return this;
     }
 
-   /**
-    * Get the next group (between the given opening and closing characters)
-    * at the current position in the parse string, return it as a string and
-    * adjust the current position (after the group).
-    */
-    private String getGroup(final char open, final char close)
-        throws ParseException {
-      int group = 0;
-
-      if( pos < texStringLen ) {
-        char ch = texString.charAt( pos );
-
-        if( ch == open ) {
-          final StringBuilder buf = new StringBuilder();
-          pos++;
-          while( pos < texStringLen && !((ch = texString.charAt( pos )) == close && group == 0) ) {
-            if( ch == open ) {
-              group++;
-            }
-            else if( ch == close ) {
-              group--;
-            }
-            buf.append( ch );
-            pos++;
-          }
-
-          // end of string reached, but not processed properly
-          if( pos == texStringLen ) {
-            throw new ParseException( "Illegal end, missing '" + close + "'" );
-          }
-          else {
-            // end of group
-            pos++;
-            return buf.toString();
-          }
-        }
-        else {
-          throw new ParseException( "Missing '" + open + "'" );
-        }
-      }
-
-      // end of string reached, nothing was processed, so let the caller handle
-      // the situation.
-      return "";
-    }
-
-   /*
-    * Get the next script at the current position in the parse string.
-    * If a group opening character is found, this is the next group, otherwise
-    * the next character. Parse it, return it as a TeXFormula and adjust
-    * the current position.
-    */
-    private TeXFormula getScript() throws ParseException {
-        skipWhitespace();
-        if (pos < texStringLen ) {
-            final char ch = texString.charAt( pos);
-            if (ch == L_GROUP) {
-                return new TeXFormula(getGroup(L_GROUP, R_GROUP));
-            } else {
-                pos++;
-                return new TeXFormula(Character.toString(ch));
-            }
-        }
-        // end of string reached, but not processed properly
-        throw new ParseException("illegal end, missing script!");
-    }
-
     /**
      * Changes this TeXFormula into a phantom TeXFormula. It will be rendered
      * invisibly. This means that a strut box (whitespace) will be displayed
@@ -1399,107 +1367,606 @@ public class TeXFormula {
      * Starts parsing the given string (at position 0).
      */
     private void parse( final String s ) throws ParseException {
+      final var event = new ParseEvent();
+      event.begin();
+
       texString = s;
+      texStringStart = 0;
       texStringLen = s.length();
 
-      // Tracks the most recently processed escape command so that when
-      // an L_GROUP is encountered, the previous atom can have its type
-      // checked. This is useful for wrapping accent atoms.
-      Atom atom = null;
+      try {
+        parse( false );
+      } finally {
+        event.end( s );
+      }
+    }
 
-      // The position index (pos) into texString is a non-negative integer.
-      while( pos < texStringLen ) {
-        final char ch = texString.charAt( pos );
+    /*
+     * Parses the given range of the given string, which is parsed in the
+     * given text style, starting at the given position, until one atom has
+     * been added at the top level of the range or the end of the range is
+     * reached. The atom, if any, becomes the root. This allows parsing a
+     * formula, or the contents of a group, one top-level atom at a time,
+     * see IncrementalTeXFormula.
+     *
+     * Returns the position after the atom, including trailing whitespace.
+     */
+    int parseNext( final String s, final int start, final int end,
+                   final String style, final int from )
+        throws ParseException {
+      texString = s;
+      texStringStart = start;
+      texStringLen = end;
+      textStyle = style;
+      pos = from;
+      root = null;
 
-        // ignore white space
-        if( isWhitespace( ch ) ) {
-          pos++;
-        }
-        else if( ch == ESCAPE ) {
-          atom = processEscape();
-
-          // Accented characters will be added when their corresponding
-          // L_GROUP is found. If there is no L_GROUP, then the accent
-          // character will be swallowed.
-          if( !atom.isType( TeXConstants.TYPE_ACCENT ) ) {
-            add( attachScripts( atom ) );
+      parse( true );
+
+      return pos;
+    }
+
+    /*
+     * Parses from the current position to the end of the current range,
+     * adding atoms to the root. If first is set, parsing stops as soon as
+     * the range has a root.
+     *
+     * Nested groups are parsed using an explicit stack of the enclosing
+     * ranges rather than by recursion, so that deeply nested formulas can't
+     * exhaust the call stack. A range that finds a group saves its state
+     * and what remains to be done with the group's atom (see resume); once
+     * the group has been parsed, its root atom is handed back.
+     */
+    private void parse( final boolean first ) throws ParseException {
+      final ArrayDeque<Group> groups = new ArrayDeque<>();
+      Group group = new Group();
+
+      try {
+        while( true ) {
+          final boolean nested;
+
+          if( cancellation != null ) {
+            cancellation.check();
           }
-        }
-        else if( ch == L_GROUP ) {
-          // If the previous was an accent, then add the current formula
-          // to a new accent atom.
-          final var formula = new TeXFormula( getGroup( L_GROUP, R_GROUP ) );
 
-          if( atom != null && atom.isType( TeXConstants.TYPE_ACCENT ) ) {
-            atom = new AccentedAtom( formula.root, atom );
+          if( group.state != Group.NEXT ) {
+            // an argument was found without parsing a nested group
+            nested = resume( group, group.result );
+          }
+          else if( pos < texStringLen &&
+              !(first && root != null && groups.isEmpty()) ) {
+            nested = resume( group, null );
+          }
+          else if( groups.isEmpty() ) {
+            return;
           }
           else {
-            atom = formula.root;
+            final Atom content = restore( group = groups.pop() );
+            Atom result = content;
+
+            if( group.marker != null ) {
+              // Keep the group's contents, followed by the error marker.
+              // When the contents are the row made for a group nested in
+              // this one, that row isn't referenced elsewhere and can be
+              // reused rather than copied.
+              final RowAtom row = content != null && content == unclosed
+                  ? unclosed
+                  : new RowAtom( content );
+              row.add( group.marker );
+              result = unclosed = row;
+              group.marker = null;
+            }
+
+            nested = resume( group, result );
           }
 
-          add( attachScripts( atom ) );
+          if( nested ) {
+            groups.push( group );
+            group = new Group();
+          }
         }
-        else if( ch == R_GROUP ) {
-          final String msg = format(
-              "Found closing '%s' without opening '%s'", R_GROUP, L_GROUP );
-          throw new ParseException( msg );
+      } finally {
+        unclosed = null;
+
+        // leave the outermost range as it was if parsing failed
+        if( !groups.isEmpty() ) {
+          restore( groups.getLast() );
         }
-        else if( ch == SUPER_SCRIPT || ch == SUB_SCRIPT || ch == PRIME ) {
-          // ' = ^{\prime...
-          if( pos == 0 ) {
-            throw new ParseException(
-                "Every script needs a base: \""
-                    + SUPER_SCRIPT + "\", \"" + SUB_SCRIPT + "\" and \""
-                    + PRIME + "\" can't be the first character" );
+      }
+    }
+
+    /*
+     * Restores the parse state that was saved when the given range found
+     * a nested group, after the group. Returns the group's root atom.
+     */
+    private Atom restore( final Group group ) {
+      final Atom content = root;
+
+      root = group.root;
+      textStyle = group.style;
+      texStringStart = group.start;
+      texStringLen = group.end;
+      pos = group.pos;
+      group.root = null;
+
+      return content;
+    }
+
+    /*
+     * Continues parsing in the current range from the given state, with the
+     * atom of the nested group that the range waited for (if any). Parses
+     * the next whitespace, command, group, or character when no atom is in
+     * progress, then adds the resulting atom (if any).
+     *
+     * Returns true if the range has to wait for a nested group, which then
+     * becomes the current range.
+     */
+    private boolean resume( final Group g, final Atom result )
+        throws ParseException {
+      switch( g.state ) {
+        case Group.COMMAND:
+          return command( g, result );
+        case Group.NUMERATOR:
+          g.operand = result;
+          skipWhitespace();
+          return group( g, Group.DENOMINATOR, L_GROUP, R_GROUP, null );
+        case Group.DENOMINATOR: {
+          final Atom num = g.operand;
+          if( num == null || result == null ) {
+            final Atom marker = error( pos,
+                "Either a numerator or denominator must be present" );
+            return command( g, new FractionAtom( num == null ? marker : num,
+                result == null ? marker : result, true ) );
           }
-          else {
-            final String msg = "Double scripts found, use more braces.";
-            throw new ParseException( msg );
+          return command( g, new FractionAtom( num, result, true ) );
+        }
+        case Group.INDEX:
+          g.operand = result;
+          skipWhitespace();
+          return group( g, Group.BASE, L_GROUP, R_GROUP, null );
+        case Group.BASE:
+          return command( g, new NthRootAtom( result, g.operand ) );
+        case Group.ACCENTEE:
+          // If the previous was an accent, then add the current formula
+          // to a new accent atom.
+          g.atom = g.atom != null && g.atom.isType( TeXConstants.TYPE_ACCENT )
+              ? new AccentedAtom( result, g.atom )
+              : result;
+          return scripts( g, g.atom );
+        case Group.SCRIPT: {
+          g.operand = result;
+          skipWhitespace();
+          final char other = g.superscript ? SUB_SCRIPT : SUPER_SCRIPT;
+          if( pos < texStringLen && texString.charAt( pos ) == other ) {
+            // both
+            pos++;
+            return script( g, Group.SCRIPTS );
           }
+          return attach( g, null );
+        }
+        case Group.SCRIPTS:
+          return attach( g, result );
+        default:
+          break;
+      }
+
+      final char ch = texString.charAt( pos );
+
+      // ignore white space
+      if( isWhitespace( ch ) ) {
+        pos++;
+      }
+      else if( ch == ESCAPE ) {
+        return escape( g );
+      }
+      else if( ch == L_GROUP ) {
+        return group( g, Group.ACCENTEE, L_GROUP, R_GROUP, null );
+      }
+      else if( ch == R_GROUP ) {
+        g.atom = error(
+            pos++, "Found closing '%s' without opening '%s'", R_GROUP, L_GROUP );
+        add( g.atom );
+      }
+      else if( ch == SUPER_SCRIPT || ch == SUB_SCRIPT || ch == PRIME ) {
+        // ' = ^{\prime...
+        if( pos == texStringStart ) {
+          g.atom = error(
+              pos, "Every script needs a base: \"%s\", \"%s\" and \"%s\" " +
+                  "can't be the first character",
+              SUPER_SCRIPT, SUB_SCRIPT, PRIME );
         }
         else {
-          atom = convertCharacter( ch );
-          add( attachScripts( atom ) );
+          g.atom = error( pos, "Double scripts found, use more braces." );
         }
+
+        // Attach the scripts to the error marker.
+        return scripts( g, g.atom );
+      }
+      else {
+        g.atom = convertCharacter( ch );
+        return scripts( g, g.atom );
       }
+
+      return false;
+    }
+
+    /*
+     * Tries to find a TeX command or TeX symbol name at the current position
+     * in the parse string (just after an escape character was found), then
+     * starts parsing the command's arguments, if any.
+     */
+    private boolean escape( final Group g ) throws ParseException {
+      final int start = pos;
+      final int end = parseCommand();
+      final int slot = commandTable.find( texString, start + 1, end );
+
+      if( slot < 0 ) {
+        return command( g, error(
+            start, "Unknown symbol or command or predefined formula: '%s'",
+            texString.substring( start + 1, end ) ) );
+      }
+
+      final Object handler = commandTable.getHandler( slot );
+
+      switch( commandTable.getKind( slot ) ) {
+        case CommandTable.SYMBOL:
+          return command( g, (SymbolAtom) handler );
+        case CommandTable.PREDEFINED: {
+          // Copy a row, as in addImpl, so that atoms added to the row later
+          // don't change the predefined formula.
+          final Atom atom = ((TeXFormula) handler).root;
+          return command(
+              g, atom instanceof RowAtom ? new RowAtom( atom ) : atom );
+        }
+        case CommandTable.TEXT_STYLE:
+          skipWhitespace();
+          return group( g, Group.COMMAND, L_GROUP, R_GROUP, (String) handler );
+        default:
+          break;
+      }
+
+      skipWhitespace();
+
+      if( "frac".equals( handler ) ) {
+        return group( g, Group.NUMERATOR, L_GROUP, R_GROUP, null );
+      }
+
+      // sqrt
+      if( pos == texStringLen ) {
+        // end of string reached, but not processed properly
+        return command( g, error( pos, "Unrecognized command: '%s'", handler ) );
+      }
+
+      g.operand = null;
+
+      if( texString.charAt( pos ) == L_BRACK ) {
+        // n-th root
+        return group( g, Group.INDEX, L_BRACK, R_BRACK, null );
+      }
+
+      return group( g, Group.BASE, L_GROUP, R_GROUP, null );
+    }
+
+    /*
+     * Adds the atom produced by an escape sequence. Accented characters will
+     * be added when their corresponding L_GROUP is found. If there is no
+     * L_GROUP, then the accent character will be swallowed.
+     */
+    private boolean command( final Group g, final Atom atom )
+        throws ParseException {
+      g.atom = atom;
+
+      if( atom == null || !atom.isType( TeXConstants.TYPE_ACCENT ) ) {
+        return scripts( g, atom );
+      }
+
+      g.state = Group.NEXT;
+      return false;
+    }
+
+    /*
+     * Looks for scripts at the current position in the parse string to
+     * attach to the given atom, then adds the atom.
+     */
+    private boolean scripts( final Group g, final Atom atom )
+        throws ParseException {
+      skipWhitespace();
+
+      if( pos < texStringLen ) {
+        final char ch = texString.charAt( pos );
+
+        // ' = ^{\prime...
+        if( ch == PRIME || ch == SUPER_SCRIPT || ch == SUB_SCRIPT ) {
+          // scripts on an empty group, such as {}^2
+          g.base = atom == null ? new EmptyAtom() : atom;
+          g.superscript = ch != SUB_SCRIPT;
+
+          // primes are consumed by getPrimes
+          if( ch == PRIME ) {
+            g.state = Group.SCRIPT;
+            g.result = getPrimes();
+            return false;
+          }
+
+          pos++;
+          return script( g, Group.SCRIPT );
+        }
+      }
+
+      add( atom );
+      g.state = Group.NEXT;
+      return false;
+    }
+
+    /*
+     * Gets the next script at the current position in the parse string.
+     * If a group opening character is found, this is the next group,
+     * otherwise the next character.
+     */
+    private boolean script( final Group g, final int state )
+        throws ParseException {
+      skipWhitespace();
+
+      if( pos < texStringLen ) {
+        if( texString.charAt( pos ) == L_GROUP ) {
+          return group( g, state, L_GROUP, R_GROUP, null );
+        }
+
+        g.state = state;
+        final int start = pos++;
+        return nest( g, start, pos, null, pos, null );
+      }
+
+      // end of string reached, but not processed properly
+      g.state = state;
+      g.result = error( pos, "illegal end, missing script!" );
+      return false;
+    }
+
+    /*
+     * Attaches the script that was found first and the given script to the
+     * base atom, then adds the result.
+     */
+    private boolean attach( final Group g, final Atom script ) {
+      final Atom sup = g.superscript ? g.operand : script;
+      final Atom sub = g.superscript ? script : g.operand;
+
+      add( g.base.getRightType() == TeXConstants.TYPE_BIG_OPERATOR
+          ? new BigOperatorAtom( g.base, sub, sup )
+          : ScriptsAtom.get( g.base, sub, sup ) );
+
+      g.base = null;
+      g.operand = null;
+      g.state = Group.NEXT;
+      return false;
     }
 
    /*
-    * Processes the given TeX command (by parsing following command arguments
-    * in the parse string).
+    * Gets the next group (between the given opening and closing characters)
+    * at the current position in the parse string, to be parsed in the given
+    * text style. If there is no group at the current position, the result
+    * (null at the end of the range, otherwise an error) is available
+    * immediately.
     */
-    private Atom processCommands(String command) throws ParseException {
-        skipWhitespace();
-
-        if ("frac".equals(command)) {
-            TeXFormula num = new TeXFormula(getGroup(L_GROUP, R_GROUP));
-            skipWhitespace();
-            TeXFormula denom = new TeXFormula(getGroup(L_GROUP, R_GROUP));
-            if (num.root == null || denom.root == null)
-                throw new ParseException(
-                        "Either a numerator or denominator must be present");
-            return new FractionAtom(num.root, denom.root, true);
-        } else {
-            // sqrt
-            if (pos == texStringLen )
-                // end of string reached, but not processed properly
-                throw new ParseException("Unrecognized command: '"+command+"'");
-
-            final TeXFormula nRoot;
-            if( texString.charAt( pos ) == L_BRACK ) { // n-th root
-              nRoot = new TeXFormula( getGroup( L_BRACK, R_BRACK ) );
-              skipWhitespace();
-            }
-            else {
-              nRoot = new TeXFormula();
+    private boolean group( final Group g, final int state, final char open,
+                           final char close, final String style )
+        throws ParseException {
+      g.state = state;
+
+      if( pos < texStringLen ) {
+        if( texString.charAt( pos ) == open ) {
+          final int start = ++pos;
+          final int end = getCloser( start - 1 );
+
+          // end of string reached, but not processed properly
+          if( end < 0 || end >= texStringLen ) {
+            pos = texStringLen;
+            final Atom marker =
+                error( pos, "Illegal end, missing '%s'", close );
+            return nest( g, start, pos, style, pos, marker );
+          }
+
+          if( groupParser != null ) {
+            final Atom atom = parseGroup( start, end, style );
+
+            if( atom != null ) {
+              pos = end + 1;
+              g.result = atom;
+              return false;
             }
+          }
 
-            final Atom base = new TeXFormula(getGroup(L_GROUP, R_GROUP)).root;
-            return new NthRootAtom( base, nRoot.root);
+          return nest( g, start, end, style, end + 1, null );
         }
+
+        g.result = error( pos, "Missing '%s'", open );
+        return false;
+      }
+
+      // end of string reached, nothing was processed, so let the caller handle
+      // the situation.
+      g.result = null;
+      return false;
+    }
+
+    /*
+     * Asks the group parser for the atom of the group in the given range,
+     * which it may parse with this instance; the parse state of the current
+     * range is kept. Returns null if the group is to be parsed as usual.
+     */
+    private Atom parseGroup( final int start, final int end,
+                             final String style ) throws ParseException {
+      final Atom savedRoot = root;
+      final String savedStyle = textStyle;
+      final int savedStart = texStringStart;
+      final int savedEnd = texStringLen;
+      final int savedPos = pos;
+
+      try {
+        return groupParser.parse( start, end, style );
+      } finally {
+        root = savedRoot;
+        textStyle = savedStyle;
+        texStringStart = savedStart;
+        texStringLen = savedEnd;
+        pos = savedPos;
+      }
     }
 
-    private String parseCommand() {
+    /*
+     * Saves the parse state of the current range, then makes the given range
+     * of the parse string current. Parsing of the saved range continues at
+     * the given position after the nested range.
+     */
+    private boolean nest( final Group g, final int start, final int end,
+                          final String style, final int after,
+                          final Atom marker ) {
+      g.root = root;
+      g.style = textStyle;
+      g.start = texStringStart;
+      g.end = texStringLen;
+      g.pos = after;
+      g.marker = marker;
+
+      root = null;
+      textStyle = style;
+      texStringStart = start;
+      texStringLen = end;
+      pos = start;
+
+      return true;
+    }
+
+    /*
+     * Returns the position of the character that closes the group opened at
+     * the given position, or -1 if the group is never closed. Like a scan
+     * for the closing character, this counts nested groups of the same kind
+     * and does not treat escaped characters specially. The positions are
+     * found once for the whole parse string, so that finding them doesn't
+     * take time proportional to the depth of the groups.
+     */
+    private int getCloser( final int open ) {
+      if( closersFor != texString ) {
+        closers = getClosers( texString );
+        closersFor = texString;
+      }
+
+      return closers[ open ];
+    }
+
+    private static int[] getClosers( final String s ) {
+      final int length = s.length();
+      final int[] closers = new int[ length ];
+
+      // The unclosed groups of each kind are linked through the array,
+      // innermost first.
+      int braces = -1;
+      int brackets = -1;
+
+      for( int i = 0; i < length; i++ ) {
+        final char ch = s.charAt( i );
+
+        if( ch == L_GROUP ) {
+          closers[ i ] = braces;
+          braces = i;
+        }
+        else if( ch == L_BRACK ) {
+          closers[ i ] = brackets;
+          brackets = i;
+        }
+        else if( ch == R_GROUP && braces >= 0 ) {
+          final int open = braces;
+          braces = closers[ open ];
+          closers[ open ] = i;
+        }
+        else if( ch == R_BRACK && brackets >= 0 ) {
+          final int open = brackets;
+          brackets = closers[ open ];
+          closers[ open ] = i;
+        }
+      }
+
+      unlink( closers, braces );
+      unlink( closers, brackets );
+
+      return closers;
+    }
+
+    private static void unlink( final int[] closers, int open ) {
+      while( open >= 0 ) {
+        final int next = closers[ open ];
+        closers[ open ] = -1;
+        open = next;
+      }
+    }
+
+    /*
+     * Provides the atoms of the groups found while parsing with parseNext.
+     */
+    interface GroupParser {
+      /*
+       * Returns the atom for the contents of a group, from the given range
+       * of the parse string in the given text style, or null to parse the
+       * contents as usual.
+       */
+      Atom parse( int start, int end, String style ) throws ParseException;
+    }
+
+    /*
+     * A range of the parse string and the atom in progress there, saved while
+     * a nested group is parsed.
+     */
+    private static final class Group {
+      // What to do with the nested group's atom: nothing is in progress,
+      // it's a command's atom, a fraction's numerator or denominator, an
+      // n-th root's index or base, the group after a possible accent, or
+      // the first or second script.
+      private static final int NEXT = 0;
+      private static final int COMMAND = 1;
+      private static final int NUMERATOR = 2;
+      private static final int DENOMINATOR = 3;
+      private static final int INDEX = 4;
+      private static final int BASE = 5;
+      private static final int ACCENTEE = 6;
+      private static final int SCRIPT = 7;
+      private static final int SCRIPTS = 8;
+
+      private int state;
+
+      // Tracks the most recently processed escape command so that when
+      // an L_GROUP is encountered, the previous atom can have its type
+      // checked. This is useful for wrapping accent atoms.
+      private Atom atom;
+
+      // the atom to which scripts are attached
+      private Atom base;
+
+      // a command's first argument, or the first script
+      private Atom operand;
+
+      // whether the first script is a superscript
+      private boolean superscript;
+
+      // an argument that was found without parsing a nested group
+      private Atom result;
+
+      // parse state of the range, restored after the nested group
+      private Atom root;
+      private String style;
+      private int start;
+      private int end;
+      private int pos;
+
+      // error marker for a nested group that isn't closed
+      private Atom marker;
+    }
+
+    /*
+     * Scans the command name that follows the escape character at the
+     * current position. The name starts just after the escape character;
+     * returns the index after its last character.
+     */
+    private int parseCommand() {
       final int startPos = ++pos;
       char ch = '\0';
 
@@ -1509,52 +1976,47 @@ public class TeXFormula {
       }
 
       if (ch == '\0') {
-        return "";
+        return startPos;
       }
 
       if (pos == startPos) {
         pos++;
       }
 
-      final String command = texString.substring(startPos, pos);
+      final int end = pos;
 
-      if ("cr".equals(command) && pos < texStringLen && texString.charAt(pos) == ' ') {
+      if (end - startPos == 2 && texString.startsWith("cr", startPos)
+          && pos < texStringLen && texString.charAt(pos) == ' ') {
         pos++;
       }
 
-      return command;
+      return end;
     }
 
-    /**
-     * Tries to find a TeX command or TeX symbol name at the current position
-     * in the parse string (just after an escape character was found).
+    /*
+     * Reports a problem found at the given position in the parse string. In
+     * strict mode, a ParseException is thrown. In tolerant mode, a diagnostic
+     * is recorded and an error atom is returned to stand in for the text
+     * that could not be parsed.
      */
-    private Atom processEscape() throws ParseException {
-      final String command = parseCommand();
-
-      final SymbolAtom symbolAtom = SymbolAtom.getNullable( command );
-      if( symbolAtom != null ) {
-        return symbolAtom;
-      }
-
-      final TeXFormula formula = getNullable( command );
-      if( formula != null ) {
-        return formula.root;
-      }
-
-      if( textStyles.contains( command ) ) {
-        skipWhitespace();
-        final var tf = new TeXFormula( getGroup( L_GROUP, R_GROUP ), command );
-        return tf.root;
-      }
+    private Atom error( final int position, final String pattern,
+                        final Object... arguments ) throws ParseException {
+      return error( position, null, pattern, arguments );
+    }
 
-      if( commands.contains( command ) ) {
-        return processCommands( command );
+    private Atom error( final int position, final Throwable cause,
+                        final String pattern, final Object... arguments )
+        throws ParseException {
+      if( diagnostics == null ) {
+        final String msg =
+            arguments.length == 0 ? pattern : format( pattern, arguments );
+        throw cause == null
+            ? new ParseException( msg )
+            : new ParseException( msg, cause );
       }
 
-      final String msg = format(
-          "Unknown symbol or command or predefined formula: '%s'", command );
-      throw new ParseException( msg );
+      diagnostics.add( new Diagnostic( position, pattern, arguments ) );
+      return new ErrorAtom();
     }
 
     /**
@@ -1927,29 +2389,27 @@ public class TeXFormula {
     }
 
    /*
-    * Replaces "'" with "^{\prime}", "''" with "^{\prime\prime}", etc. at the
+    * Parses "'" as "^{\prime}", "''" as "^{\prime\prime}", etc. at the
     * current position in the parse string.
     */
-    private void replaceAccents() {
-        final StringBuilder buf = new StringBuilder();
-        buf.append(SUPER_SCRIPT);
-        buf.append(L_GROUP);
-        buf.append("\\prime");
-        int i = pos + 1;
-        while (i < texStringLen ) {
-          if( texString.charAt( i ) == PRIME ) {
-            buf.append( "\\prime" );
+    private Atom getPrimes() {
+        final Atom prime = SymbolAtom.getNullable( "prime" );
+        final Atom savedRoot = root;
+        root = null;
+        add( prime );
+        pos++;
+        while (pos < texStringLen ) {
+          if( texString.charAt( pos ) == PRIME ) {
+            add( prime );
           }
-          else if( !isWhitespace( texString.charAt( i ) ) ) {
+          else if( !isWhitespace( texString.charAt( pos ) ) ) {
             break;
           }
-          i++;
+          pos++;
         }
-        buf.append(R_GROUP);
-        // construct the new parsing string
-        texString = texString.substring( 0, pos ) + buf.toString()
-            + texString.substring( i );
-        texStringLen = texString.length();
+        final Atom primes = root;
+        root = savedRoot;
+        return primes;
     }
 
     /**
@@ -2081,7 +2541,7 @@ public class TeXFormula {
      * @return the modified TeXFormula
      */
     public TeXFormula setScripts(TeXFormula sub, TeXFormula sup) {
-        root = new ScriptsAtom(root, (sub == null ? null : sub.root),
+        root = ScriptsAtom.get(root, (sub == null ? null : sub.root),
                 (sup == null ? null : sup.root));
         return this;
     }
@@ -2107,7 +2567,7 @@ public class TeXFormula {
      * @return the modified TeXFormula
      */
     public TeXFormula setSubscript(TeXFormula sub) {
-        root = new ScriptsAtom(root, (sub == null ? null : sub.root), null);
+        root = ScriptsAtom.get(root, (sub == null ? null : sub.root), null);
         return this;
     }
 
@@ -2132,7 +2592,7 @@ public class TeXFormula {
      * @return the modified TeXFormula
      */
     public TeXFormula setSuperscript(TeXFormula sup) {
-        root = new ScriptsAtom(root, null, (sup == null ? null : sup.root));
+        root = ScriptsAtom.get(root, null, (sup == null ? null : sup.root));
         return this;
     }
 
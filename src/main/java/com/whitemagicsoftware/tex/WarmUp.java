@@ -0,0 +1,208 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex;
+
+import com.whitemagicsoftware.tex.atoms.SymbolAtom;
+import com.whitemagicsoftware.tex.graphics.RyuDouble;
+import com.whitemagicsoftware.tex.graphics.SvgGraphics2D;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Loads the library's static tables before the first formula needs them,
+ * so that the first request doesn't pay for all of them. Independent
+ * tables load concurrently; {@link TeXFormula} waits for the symbols it
+ * refers to, and the glyph outlines wait for the font metrics that name
+ * them. Optionally, a representative set of formulas is then rendered to
+ * compile the hot paths.
+ * <p>
+ * Calling this more than once is harmless: tables already loaded take no
+ * time to load again.
+ * </p>
+ */
+public final class WarmUp {
+  /**
+   * Representative formulas, covering scripts, fractions, roots, big
+   * operators, delimiters, accents, and text styles.
+   */
+  private static final String[] FORMULAS = {
+      "E=mc^2",
+      "(a+b)^2=a^2 + 2ab + b^2",
+      "\\sigma=\\sqrt{\\sum_{i=1}^{k} p_i(x_i-\\mu)^2}",
+      "\\sqrt[n]{|z| . e^{i \\theta}}",
+      "\\int_{a}^{b} x^2 dx",
+      "\\prod_{i=a}^{b} f(i) \\ne \\sum_{k=0}^{\\infty} x_k",
+      "\\frac{\\frac{1}{2}}{\\frac{3}{4}} - \\vec{u}^2 \\tilde{\\nu}",
+      "\\lbrace [ ( | ) ] \\rbrace \\mathrm{abc} + \\mathcal{XYZ}",
+      "f''(x) + f'(x) \\alpha\\beta\\Gamma 0123456789",
+  };
+
+  /**
+   * Size of the formulas rendered while warming up.
+   */
+  private static final float SIZE = 20f;
+
+  private WarmUp() {
+  }
+
+  /**
+   * Loads the static tables concurrently using the common pool.
+   *
+   * @return how long each stage took
+   */
+  public static Report warmUp() {
+    return warmUp( 0 );
+  }
+
+  /**
+   * Loads the static tables concurrently using the common pool, then renders
+   * the built-in formulas.
+   *
+   * @param passes number of times to render the built-in formulas to SVG on
+   *               the calling thread, 0 to only load the tables
+   * @return how long each stage took
+   */
+  public static Report warmUp( final int passes ) {
+    return warmUp( passes, ForkJoinPool.commonPool() );
+  }
+
+  /**
+   * Loads the static tables concurrently, then renders the built-in
+   * formulas.
+   *
+   * @param passes   number of times to render the built-in formulas to SVG
+   *                 on the calling thread, 0 to only load the tables
+   * @param executor runs the stages that load tables
+   * @return how long each stage took
+   */
+  public static Report warmUp( final int passes, final Executor executor ) {
+    final var report = new Report();
+    final var symbols = report.stage( "symbols", executor,
+                                      () -> initialize( SymbolAtom.class ) );
+    final var fonts = report.stage( "fonts", executor,
+                                    () -> initialize( DefaultTeXFont.class ) );
+    final var stages = CompletableFuture.allOf(
+        symbols.thenCompose( v -> report.stage(
+            "formulas", executor, () -> initialize( TeXFormula.class ) ) ),
+        fonts.thenCompose( v -> report.stage(
+            "outlines", executor, FontInfo::readOutlines ) ),
+        report.stage( "glue", executor, () -> initialize( Glue.class ) ),
+        report.stage( "numbers", executor,
+                      () -> initialize( RyuDouble.class ) )
+    );
+
+    try {
+      stages.join();
+    } catch( final CompletionException e ) {
+      if( e.getCause() instanceof RuntimeException ) {
+        throw (RuntimeException) e.getCause();
+      }
+
+      throw e;
+    }
+
+    if( passes > 0 ) {
+      report.time( "render", () -> render( passes ) );
+    }
+
+    return report;
+  }
+
+  private static void render( final int passes ) {
+    final var font = new DefaultTeXFont( SIZE );
+    final var g = new SvgGraphics2D();
+    g.scale( SIZE, SIZE );
+
+    for( int i = 0; i < passes; i++ ) {
+      for( final var tex : FORMULAS ) {
+        final var env = new TeXEnvironment( font );
+        final var box = new TeXFormula( tex ).createBox( env );
+        final var layout = new TeXLayout( box, SIZE );
+
+        g.initialize( layout.getWidth(), layout.getHeight() );
+        box.draw( g, layout.getX(), layout.getY() );
+        g.toString();
+      }
+    }
+  }
+
+  private static void initialize( final Class<?> c ) {
+    try {
+      Class.forName( c.getName(), true, c.getClassLoader() );
+    } catch( final ClassNotFoundException e ) {
+      throw new IllegalStateException( e );
+    }
+  }
+
+  /**
+   * How long each warm-up stage took, in the order the stages finished.
+   */
+  public static final class Report {
+    private final Map<String, Duration> mTimings = new LinkedHashMap<>();
+
+    private Report() {
+    }
+
+    /**
+     * @return the time taken by each stage, by stage name
+     */
+    public Map<String, Duration> getTimings() {
+      synchronized( mTimings ) {
+        return Collections.unmodifiableMap( new LinkedHashMap<>( mTimings ) );
+      }
+    }
+
+    private CompletableFuture<Void> stage(
+        final String name, final Executor executor, final Runnable stage ) {
+      return CompletableFuture.runAsync( () -> time( name, stage ), executor );
+    }
+
+    private void time( final String name, final Runnable stage ) {
+      final long start = System.nanoTime();
+      stage.run();
+      final var elapsed = Duration.ofNanos( System.nanoTime() - start );
+
+      synchronized( mTimings ) {
+        mTimings.put( name, elapsed );
+      }
+    }
+
+    @Override
+    public String toString() {
+      final var sb = new StringBuilder();
+
+      getTimings().forEach(
+          ( name, elapsed ) -> sb.append( sb.length() == 0 ? "" : ", " )
+                                 .append( name )
+                                 .append( '=' )
+                                 .append( elapsed.toNanos() / 1_000_000.0 )
+                                 .append( "ms" ) );
+
+      return sb.toString();
+    }
+  }
+}
@@ -35,6 +35,8 @@ import com.whitemagicsoftware.tex.exceptions.InvalidTeXFormulaException;
 import com.whitemagicsoftware.tex.exceptions.SymbolNotFoundException;
 import com.whitemagicsoftware.tex.parsers.TeXSymbolParser;
 
+import java.util.function.Consumer;
+
 import static java.lang.Math.min;
 
 /**
@@ -114,13 +116,19 @@ public class AccentedAtom extends Atom {
     }
 
     public Box createBox( TeXEnvironment env) {
-        final TeXFont tf = env.getTeXFont();
-        final int style = env.getStyle();
+        return LayoutStack.layout( this, env );
+    }
 
+    @Override
+    protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
         // set base in cramped style
-        Box b = base == null
-            ? new StrutBox()
-            : base.createBox(env.crampStyle());
+        stack.request( base, env.crampStyle(), b -> stack.finish(
+            createBox( env, b ) ) );
+    }
+
+    private Box createBox( TeXEnvironment env, Box b ) {
+        final TeXFont tf = env.getTeXFont();
+        final int style = env.getStyle();
 
         final float u = b.getWidth();
         float s = 0;
@@ -148,8 +156,9 @@ public class AccentedAtom extends Atom {
         Box y;
         float italic = ch.getItalic();
         if (italic > TeXFormula.PREC) {
-            y = new HorizontalBox( new CharBox( ch));
-            y.add(new StrutBox(italic));
+            final HorizontalBox hBox = new HorizontalBox( new CharBox( ch));
+            hBox.add(new StrutBox(italic));
+            y = hBox;
         } else
             y = new CharBox(ch);
 
@@ -172,4 +181,16 @@ public class AccentedAtom extends Atom {
         vBox.setHeight(total - d);
         return vBox;
     }
+
+    @Override
+    protected void visitChildren( final Consumer<Atom> action ) {
+        visit( accent, action );
+        visit( base, action );
+    }
+
+    @Override
+    protected boolean describe( final CanonicalWriter w ) {
+        w.begin( "accent", type ).child( base ).child( accent );
+        return true;
+    }
 }
@@ -32,6 +32,10 @@ import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.TeXConstants;
 import com.whitemagicsoftware.tex.TeXEnvironment;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
 /**
  * An abstract superclass for all logical mathematical constructions that can be
  * a part of a TeXFormula. All subclasses must implement the abstract
@@ -45,6 +49,13 @@ import com.whitemagicsoftware.tex.TeXEnvironment;
  * The left type will then be used for determining the glue between this atom and the
  * previous one (in a row, if any) and the right type for the glue between this atom and
  * the following one (in a row, if any).
+ * <p>
+ * Atoms must not change once created: whatever changes while laying out is
+ * kept on the {@link LayoutStack} or in a {@link com.whitemagicsoftware.tex.Dummy}.
+ * So atoms can be shared by formulas and threads, as symbols always have
+ * been; see {@link CharAtom#get(char, String)} and
+ * {@link ScriptsAtom#get(Atom, Atom, Atom)}.
+ * </p>
  *
  * @author Kurt Vermeulen
  */
@@ -64,6 +75,36 @@ public abstract class Atom {
     */
    public abstract Box createBox(TeXEnvironment env);
 
+   /**
+    * Lays out this atom on the given stack, which calls this method rather
+    * than {@link #createBox(TeXEnvironment)} so that the boxes of child atoms
+    * can be requested from the stack instead of being created recursively.
+    * Atoms composed of child atoms must override this method, and implement
+    * {@link #createBox(TeXEnvironment)} using
+    * {@link LayoutStack#layout(Atom, TeXEnvironment)}.
+    *
+    * @param stack receives this atom's box, or a request for a child's box
+    * @param env   the current environment settings
+    */
+   protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+      stack.finish( createBox( env ) );
+   }
+
+   /**
+    * Describes this atom for its canonical form: its name, then every setting
+    * that affects its box, then its child atoms. Atoms with the same
+    * description must lay out to the same box in the same environment, so
+    * subclasses that lay out differently must override this method.
+    *
+    * @param w receives the description, starting with
+    *          {@link CanonicalWriter#begin(String, int)}
+    * @return {@code false} if this atom can't be described, which is the
+    * default
+    */
+   protected boolean describe( final CanonicalWriter w ) {
+      return false;
+   }
+
    /**
     * Get the type of the leftermost child atom. Most atoms have no child atoms,
     * so the "left type" and the "right type" are the same: the atom's type. This
@@ -99,4 +140,62 @@ public abstract class Atom {
     public boolean isType( final int type ) {
       return this.type == type;
     }
+
+   /**
+    * Answers whether this is the one atom for its contents, so that atoms
+    * made of shared atoms may be shared in turn.
+    *
+    * @return {@code true} if this atom is shared by formulas
+    */
+   boolean isShared() {
+      return false;
+   }
+
+   /**
+    * Passes this atom, then every atom it is composed of, to the given
+    * action. The tree is walked using an explicit stack, so deep trees can't
+    * exhaust the call stack.
+    *
+    * @param action receives each atom of the tree rooted at this atom
+    */
+   public final void visit( final Consumer<Atom> action ) {
+      final ArrayDeque<Atom> pending = new ArrayDeque<>();
+      final ArrayList<Atom> children = new ArrayList<>();
+      final Consumer<Atom> collect = children::add;
+
+      pending.push( this );
+
+      while( !pending.isEmpty() ) {
+         final Atom atom = pending.pop();
+         action.accept( atom );
+
+         children.clear();
+         atom.visitChildren( collect );
+
+         for( int i = children.size() - 1; i >= 0; i-- ) {
+            pending.push( children.get( i ) );
+         }
+      }
+   }
+
+   /**
+    * Passes each child atom, in order, to the given action. Atoms composed
+    * of child atoms must override this method.
+    *
+    * @param action receives each child atom
+    */
+   protected void visitChildren( final Consumer<Atom> action ) {
+   }
+
+   /**
+    * Passes the given child atom to the action, if present.
+    *
+    * @param atom   the child atom, possibly {@code null}
+    * @param action receives the child atom
+    */
+   protected static void visit( final Atom atom, final Consumer<Atom> action ) {
+      if( atom != null ) {
+         action.accept( atom );
+      }
+   }
 }
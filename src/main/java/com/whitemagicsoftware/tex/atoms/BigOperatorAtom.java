@@ -31,6 +31,8 @@ package com.whitemagicsoftware.tex.atoms;
 import com.whitemagicsoftware.tex.*;
 import com.whitemagicsoftware.tex.boxes.*;
 
+import java.util.function.Consumer;
+
 /**
  * An atom representing a "big operator" (or an atom that acts as one) together
  * with its limits.
@@ -82,18 +84,21 @@ public class BigOperatorAtom extends Atom {
     }
     
     public Box createBox( TeXEnvironment env) {
+        return LayoutStack.layout( this, env );
+    }
+
+    @Override
+    protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
         TeXFont tf = env.getTeXFont();
         int style = env.getStyle();
         
-        Box y;
-        float delta;
-        
         if ((limitsSet && !limits)
         || (!limitsSet && style >= TeXConstants.STYLE_TEXT))
             // if explicitly set to not display as limits or if not set and style
             // is not display, then attach over and under as regular sub- en
             // superscript
-            return new ScriptsAtom(base, under, over).createBox(env);
+            stack.request( new ScriptsAtom(base, under, over), env,
+                           stack::finish );
         else {
             if (base instanceof SymbolAtom
                     && base.type == TeXConstants.TYPE_BIG_OPERATOR) { // single
@@ -106,73 +111,91 @@ public class BigOperatorAtom extends Atom {
                 Box x = new CharBox( c);
                 x.setShift(-(x.getHeight() + x.getDepth()) / 2
                         - env.getTeXFont().getAxisHeight(env.getStyle()));
-                y = new HorizontalBox( x);
+                final HorizontalBox hBox = new HorizontalBox( x);
                 
                 // include delta in width
-                delta = c.getItalic();
+                final float delta = c.getItalic();
                 if (delta > TeXFormula.PREC)
-                    y.add(new StrutBox( delta));
+                    hBox.add(new StrutBox( delta));
+                layoutOver( stack, env, hBox, delta );
             } else { // formula
-                delta = 0;
-                y = new HorizontalBox(base == null ? new StrutBox()
-                : base.createBox(env));
+                stack.request( base, env, b -> layoutOver(
+                    stack, env, new HorizontalBox( b ), 0 ) );
             }
-            
-            // limits
-            Box x = null, z = null;
-            if (over != null)
-                x = over.createBox(env.supStyle());
-            if (under != null)
-                z = under.createBox(env.subStyle());
-            
-            // make boxes equally wide
-            float maxWidth = Math.max(Math.max(x == null ? 0 : x.getWidth(), y
-                    .getWidth()), z == null ? 0 : z.getWidth());
-            x = changeWidth(x, maxWidth);
-            y = changeWidth(y, maxWidth);
-            z = changeWidth(z, maxWidth);
-            
-            // build vertical box
-            VerticalBox vBox = new VerticalBox();
-            
-            float bigop5 = tf.getBigOpSpacing5(style), kern = 0;
-            float xh = 0; // TODO: check why this is not used // NOPMD
-            
-            // over
-            if (over != null && x != null) {
-                vBox.add(new StrutBox(0, bigop5, 0, 0));
-                x.setShift(delta / 2);
-                vBox.add(x);
-                kern = Math.max(tf.getBigOpSpacing1(style), tf
-                        .getBigOpSpacing3(style)
-                        - x.getDepth());
-                vBox.add(new StrutBox(0, kern, 0, 0));
-                xh = vBox.getHeight() + vBox.getDepth();
-            }
-            
-            // base
-            vBox.add(y);
-            
-            // under
-            if (under != null && z != null) {
-                float k = Math.max(tf.getBigOpSpacing2(style), tf
-                        .getBigOpSpacing4(style)
-                        - z.getHeight());
-                vBox.add(new StrutBox(0, k, 0, 0));
-                z.setShift(-delta / 2);
-                vBox.add(z);
-                vBox.add(new StrutBox(0, bigop5, 0, 0));
-            }
-            
-            // set height and depth vertical box and return it
-            float h = y.getHeight(), total = vBox.getHeight() + vBox.getDepth();
-            if (x != null)
-                h += bigop5 + kern + x.getHeight() + x.getDepth();
-            vBox.setHeight(h);
-            vBox.setDepth(total - h);
-            return vBox;
         }
     }
+
+    // limits
+    private void layoutOver( LayoutStack stack, TeXEnvironment env, Box y,
+                             float delta ) {
+        if (over != null)
+            stack.request( over, env.supStyle(),
+                           x -> layoutUnder( stack, env, y, delta, x ) );
+        else
+            layoutUnder( stack, env, y, delta, null );
+    }
+
+    private void layoutUnder( LayoutStack stack, TeXEnvironment env, Box y,
+                              float delta, Box x ) {
+        if (under != null)
+            stack.request( under, env.subStyle(), z -> stack.finish(
+                createBox( env, y, delta, x, z ) ) );
+        else
+            stack.finish( createBox( env, y, delta, x, null ) );
+    }
+
+    private Box createBox( TeXEnvironment env, Box y, float delta, Box x,
+                           Box z ) {
+        TeXFont tf = env.getTeXFont();
+        int style = env.getStyle();
+
+        // make boxes equally wide
+        float maxWidth = Math.max(Math.max(x == null ? 0 : x.getWidth(), y
+                .getWidth()), z == null ? 0 : z.getWidth());
+        x = changeWidth(x, maxWidth);
+        y = changeWidth(y, maxWidth);
+        z = changeWidth(z, maxWidth);
+        
+        // build vertical box
+        VerticalBox vBox = new VerticalBox();
+        
+        float bigop5 = tf.getBigOpSpacing5(style), kern = 0;
+        float xh = 0; // TODO: check why this is not used // NOPMD
+        
+        // over
+        if (over != null && x != null) {
+            vBox.add(new StrutBox(0, bigop5, 0, 0));
+            x.setShift(delta / 2);
+            vBox.add(x);
+            kern = Math.max(tf.getBigOpSpacing1(style), tf
+                    .getBigOpSpacing3(style)
+                    - x.getDepth());
+            vBox.add(new StrutBox(0, kern, 0, 0));
+            xh = vBox.getHeight() + vBox.getDepth();
+        }
+        
+        // base
+        vBox.add(y);
+        
+        // under
+        if (under != null && z != null) {
+            float k = Math.max(tf.getBigOpSpacing2(style), tf
+                    .getBigOpSpacing4(style)
+                    - z.getHeight());
+            vBox.add(new StrutBox(0, k, 0, 0));
+            z.setShift(-delta / 2);
+            vBox.add(z);
+            vBox.add(new StrutBox(0, bigop5, 0, 0));
+        }
+        
+        // set height and depth vertical box and return it
+        float h = y.getHeight(), total = vBox.getHeight() + vBox.getDepth();
+        if (x != null)
+            h += bigop5 + kern + x.getHeight() + x.getDepth();
+        vBox.setHeight(h);
+        vBox.setDepth(total - h);
+        return vBox;
+    }
     
    /*
     * Centers the given box in a new box that has the given width
@@ -183,4 +206,18 @@ public class BigOperatorAtom extends Atom {
 
         return b;
     }
+
+    @Override
+    protected void visitChildren( final Consumer<Atom> action ) {
+        visit( base, action );
+        visit( under, action );
+        visit( over, action );
+    }
+
+    @Override
+    protected boolean describe( final CanonicalWriter w ) {
+        w.begin( "bigop", type ).add( limitsSet ).add( limits )
+            .child( base ).child( under ).child( over );
+        return true;
+    }
 }
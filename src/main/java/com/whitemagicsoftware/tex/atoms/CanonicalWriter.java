@@ -0,0 +1,350 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.atoms;
+
+import java.awt.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Writes the canonical form of atom trees: text that is the same for two
+ * trees when they have the same structure and settings, and so lay out to
+ * the same boxes in the same environment. Each atom writes its name, its
+ * settings, and then its child atoms (see
+ * {@link Atom#describe(CanonicalWriter)}). For example, {@code x^2} is
+ * written as {@code scripts[0 char[0 'x' _] _ char[0 '2' _]]}.
+ * <p>
+ * Subtrees may also be numbered, such that two subtrees have the same
+ * number when they have the same canonical form (see
+ * {@link #number(Atom, ToLongFunction)}). Each atom is then described with
+ * the numbers of its children in place of their canonical forms, so a tree
+ * is numbered in time proportional to its size.
+ * </p>
+ * <p>
+ * The tree is walked using an explicit stack, so deep trees can't exhaust
+ * the call stack. Instances may be reused, but not shared by threads.
+ * </p>
+ */
+public final class CanonicalWriter {
+  /**
+   * Number of subtrees that can't be described.
+   */
+  public static final long UNKNOWN = -1;
+
+  /**
+   * Pending item that closes the most recently opened atom.
+   */
+  private static final Object CLOSE = new Object();
+
+  /**
+   * Pending item that stands for a missing (null) child.
+   */
+  private static final Object NONE = new Object();
+
+  private final StringBuilder mText = new StringBuilder( 64 );
+  private final ArrayDeque<Object> mPending = new ArrayDeque<>();
+  private final ArrayList<Atom> mChildren = new ArrayList<>();
+
+  /**
+   * Subtrees numbered so far, by root; {@code null} when writing complete
+   * canonical forms.
+   */
+  private Map<Atom, Long> mNumbers;
+
+  /**
+   * Whether the next token must be separated from the previous one.
+   */
+  private boolean mSeparate;
+  private int mAtoms;
+
+  /**
+   * Whether a child of the atom being numbered can't be described.
+   */
+  private boolean mUnknown;
+
+  /**
+   * Writes the canonical form of the tree rooted at the given atom.
+   *
+   * @param atom     the root of the tree
+   * @param maxAtoms the most atoms the tree may have
+   * @return the canonical form, or {@code null} if the tree has more atoms
+   * than allowed or contains an atom that can't be described
+   */
+  public String write( final Atom atom, final int maxAtoms ) {
+    final var text = mText;
+    final var pending = mPending;
+    final var children = mChildren;
+
+    text.setLength( 0 );
+    pending.clear();
+    pending.push( atom );
+    mSeparate = false;
+    mAtoms = 0;
+    mNumbers = null;
+
+    while( !pending.isEmpty() ) {
+      final Object next = pending.pop();
+
+      if( next == CLOSE ) {
+        text.append( ']' );
+        mSeparate = true;
+      }
+      else if( next == NONE ) {
+        token().append( '_' );
+      }
+      else {
+        if( ++mAtoms > maxAtoms ) {
+          return null;
+        }
+
+        children.clear();
+
+        if( !((Atom) next).describe( this ) ) {
+          return null;
+        }
+
+        pending.push( CLOSE );
+
+        for( int i = children.size() - 1; i >= 0; i-- ) {
+          final Atom child = children.get( i );
+          pending.push( child == null ? NONE : child );
+        }
+      }
+    }
+
+    return text.toString();
+  }
+
+  /**
+   * Numbers the subtree rooted at the given atom, and those below it. An
+   * atom is described once its children have been numbered, referring to
+   * each child by its number; the description is then numbered by the given
+   * function. Numbers are remembered until {@link #write(Atom, int)} is
+   * called, so the tree must not change in the meantime.
+   *
+   * @param atom   the root of the subtree
+   * @param intern returns a non-negative number for a description, never
+   *               the same for different descriptions; equal subtrees only
+   *               have equal numbers if it returns the same number for
+   *               equal descriptions
+   * @return the subtree's number, or {@link #UNKNOWN} if it contains an
+   * atom that can't be described
+   */
+  public long number( final Atom atom, final ToLongFunction<String> intern ) {
+    if( mNumbers == null ) {
+      mNumbers = new IdentityHashMap<>();
+    }
+
+    final var numbers = mNumbers;
+    final Long known = numbers.get( atom );
+
+    if( known != null ) {
+      return known;
+    }
+
+    final var text = mText;
+    final var pending = mPending;
+    final var children = mChildren;
+
+    pending.clear();
+    pending.push( atom );
+
+    while( !pending.isEmpty() ) {
+      final Atom next = (Atom) pending.peek();
+
+      if( numbers.containsKey( next ) ) {
+        pending.pop();
+        continue;
+      }
+
+      text.setLength( 0 );
+      children.clear();
+      mSeparate = false;
+      mUnknown = false;
+
+      final boolean described = next.describe( this );
+      boolean numbered = true;
+
+      for( int i = children.size() - 1; i >= 0; i-- ) {
+        final Atom child = children.get( i );
+
+        if( child != null && !numbers.containsKey( child ) ) {
+          pending.push( child );
+          numbered = false;
+        }
+      }
+
+      // Describe the atom again once its children have numbers.
+      if( numbered ) {
+        pending.pop();
+        text.append( ']' );
+        numbers.put( next, described && !mUnknown
+            ? intern.applyAsLong( text.toString() )
+            : UNKNOWN );
+      }
+    }
+
+    return numbers.get( atom );
+  }
+
+  /**
+   * Returns the number of atoms written by the last call to
+   * {@link #write(Atom, int)}.
+   *
+   * @return the size of the tree, if it was written completely
+   */
+  public int getAtoms() {
+    return mAtoms;
+  }
+
+  /**
+   * Starts the description of an atom. This must be called first.
+   *
+   * @param name identifies the kind of atom, never to be changed once
+   *             released
+   * @param type the atom's type, one of the type constants from
+   *             {@link com.whitemagicsoftware.tex.TeXConstants}
+   * @return this writer, for the atom's settings
+   */
+  public CanonicalWriter begin( final String name, final int type ) {
+    token().append( name ).append( '[' ).append( type );
+    mSeparate = true;
+    return this;
+  }
+
+  public CanonicalWriter add( final boolean value ) {
+    token().append( value ? 't' : 'f' );
+    return this;
+  }
+
+  public CanonicalWriter add( final int value ) {
+    token().append( value );
+    return this;
+  }
+
+  /**
+   * Writes the value's bits in hexadecimal, which don't depend on how the
+   * platform formats numbers.
+   *
+   * @param value the setting to write
+   * @return this writer
+   */
+  public CanonicalWriter add( final float value ) {
+    token().append( Integer.toHexString( Float.floatToIntBits( value ) ) );
+    return this;
+  }
+
+  public CanonicalWriter add( final char value ) {
+    final var text = token().append( '\'' );
+
+    if( value == '\'' || value == '\\' ) {
+      text.append( '\\' );
+    }
+
+    text.append( value ).append( '\'' );
+    return this;
+  }
+
+  /**
+   * @param value the setting to write, quoted, or {@code null}
+   * @return this writer
+   */
+  public CanonicalWriter add( final String value ) {
+    final var text = token();
+
+    if( value == null ) {
+      text.append( '_' );
+    }
+    else {
+      text.append( '"' );
+
+      for( int i = 0, n = value.length(); i < n; i++ ) {
+        final char c = value.charAt( i );
+
+        if( c == '"' || c == '\\' ) {
+          text.append( '\\' );
+        }
+
+        text.append( c );
+      }
+
+      text.append( '"' );
+    }
+
+    return this;
+  }
+
+  /**
+   * @param value the color to write, as hexadecimal ARGB, or {@code null}
+   * @return this writer
+   */
+  public CanonicalWriter add( final Color value ) {
+    final var text = token();
+
+    if( value == null ) {
+      text.append( '_' );
+    }
+    else {
+      text.append( '#' ).append( Integer.toHexString( value.getRGB() ) );
+    }
+
+    return this;
+  }
+
+  /**
+   * Adds a child atom, to be written after the settings of the atom being
+   * described. Children are written in the order they are added. When
+   * numbering, the child's number is written instead.
+   *
+   * @param child the child atom, or {@code null}
+   * @return this writer
+   */
+  public CanonicalWriter child( final Atom child ) {
+    mChildren.add( child );
+
+    if( mNumbers != null ) {
+      final Long number = child == null ? null : mNumbers.get( child );
+
+      if( child == null ) {
+        token().append( '_' );
+      }
+      else if( number == null || number.longValue() == UNKNOWN ) {
+        mUnknown = true;
+      }
+      else {
+        token().append( '#' ).append( number.longValue() );
+      }
+    }
+
+    return this;
+  }
+
+  private StringBuilder token() {
+    if( mSeparate ) {
+      mText.append( ' ' );
+    }
+
+    mSeparate = true;
+    return mText;
+  }
+}
@@ -32,12 +32,25 @@ import com.whitemagicsoftware.tex.*;
 import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.boxes.CharBox;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * An atom representing exactly one alphanumeric character and the text style in which 
  * it should be drawn. 
  */
 public class CharAtom extends CharSymbolAtom {
 
+   // characters below this are represented by shared atoms
+   private static final int SHARED = 128;
+
+   // shared atoms in the default text style, by character
+   private static final CharAtom[] defaultStyle = create( null );
+
+   // shared atoms by text style, then by character
+   private static final Map<String, CharAtom[]> textStyles =
+       new ConcurrentHashMap<>();
+
    // alphanumeric character
    private final char c;
 
@@ -56,6 +69,48 @@ public class CharAtom extends CharSymbolAtom {
       this.textStyle = textStyle;
    }
 
+   /**
+    * Returns an atom that represents the given character in the given text
+    * style. Atoms for ASCII characters are created once per text style and
+    * shared by all formulas, which saves an atom per character.
+    *
+    * @param c the alphanumeric character
+    * @param textStyle the text style in which the character should be drawn,
+    * or null for the default text style
+    * @return the shared atom, or a new one for other characters
+    */
+   public static CharAtom get(char c, String textStyle) {
+      if (c >= SHARED)
+         return new CharAtom(c, textStyle);
+
+      return getAtoms(textStyle)[c];
+   }
+
+   private static CharAtom[] getAtoms(String textStyle) {
+      return textStyle == null
+          ? defaultStyle
+          : textStyles.computeIfAbsent(textStyle, CharAtom::create);
+   }
+
+   private static CharAtom[] create(String textStyle) {
+      final CharAtom[] atoms = new CharAtom[SHARED];
+
+      for (char c = 0; c < SHARED; c++)
+         atoms[c] = new CharAtom(c, textStyle);
+
+      return atoms;
+   }
+
+   @Override
+   boolean isShared() {
+      if (c >= SHARED)
+         return false;
+
+      final CharAtom[] atoms =
+          textStyle == null ? defaultStyle : textStyles.get(textStyle);
+      return atoms != null && atoms[c] == this;
+   }
+
    public Box createBox( TeXEnvironment env) {
       Char ch = getChar( env.getTeXFont(), env.getStyle());
       return new CharBox( ch);
@@ -75,4 +130,10 @@ public class CharAtom extends CharSymbolAtom {
       // style doesn't matter here 
       return getChar(tf, TeXConstants.STYLE_DISPLAY).getCharFont();
    }
+
+   @Override
+   protected boolean describe( final CanonicalWriter w ) {
+      w.begin( "char", type ).add( c ).add( textStyle );
+      return true;
+   }
 }
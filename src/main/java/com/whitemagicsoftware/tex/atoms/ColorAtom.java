@@ -29,11 +29,11 @@
 package com.whitemagicsoftware.tex.atoms;
 
 import com.whitemagicsoftware.tex.boxes.Box;
-import com.whitemagicsoftware.tex.Dummy;
 import com.whitemagicsoftware.tex.Row;
 import com.whitemagicsoftware.tex.TeXEnvironment;
 
 import java.awt.Color;
+import java.util.function.Consumer;
 
 /**
  * An atom representing the foreground and background color of an other atom. 
@@ -79,12 +79,17 @@ public class ColorAtom extends Atom implements Row {
    }
 
    public Box createBox( TeXEnvironment env) {
+      return LayoutStack.layout( this, env );
+   }
+
+   @Override
+   protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
       TeXEnvironment copy = env.copy();
       if (background != null)
          copy.setBackground(background);
       if (color != null)
          copy.setColor(color);
-      return elements.createBox(copy);
+      stack.request( elements, copy, stack.getPrevious(), stack::finish );
    }
 
    public int getLeftType() {
@@ -95,8 +100,14 @@ public class ColorAtom extends Atom implements Row {
       return elements.getRightType();
    }
 
-   public void setPreviousAtom( Dummy prev) {
-      elements.setPreviousAtom(prev);
+   @Override
+   protected void visitChildren( final Consumer<Atom> action ) {
+      visit( elements, action );
    }
 
+   @Override
+   protected boolean describe( final CanonicalWriter w ) {
+      w.begin( "color", type ).add( background ).add( color ).child( elements );
+      return true;
+   }
 }
@@ -60,4 +60,10 @@ public class EmptyAtom extends Atom {
   public Box createBox( final TeXEnvironment env ) {
     return new StrutBox();
   }
+
+  @Override
+  protected boolean describe( final CanonicalWriter w ) {
+    w.begin( "empty", type );
+    return true;
+  }
 }
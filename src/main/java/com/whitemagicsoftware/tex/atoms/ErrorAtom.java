@@ -0,0 +1,49 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.atoms;
+
+import com.whitemagicsoftware.tex.TeXEnvironment;
+import com.whitemagicsoftware.tex.boxes.Box;
+import com.whitemagicsoftware.tex.boxes.ErrorBox;
+
+/**
+ * Stands in for source text that could not be parsed, so that the rest of
+ * the formula can still be rendered. See
+ * {@link com.whitemagicsoftware.tex.TeXFormula#parseTolerant(String)}.
+ */
+public final class ErrorAtom extends Atom {
+  @Override
+  public Box createBox( final TeXEnvironment env ) {
+    final var tf = env.getTeXFont();
+    final int style = env.getStyle();
+    final int fontId = tf.getMuFontId();
+
+    return new ErrorBox(
+        tf.getQuad( style, fontId ) / 2,
+        tf.getXHeight( style, fontId ),
+        tf.getDefaultRuleThickness( style ) );
+  }
+
+  @Override
+  protected boolean describe( final CanonicalWriter w ) {
+    w.begin( "error", type );
+    return true;
+  }
+}
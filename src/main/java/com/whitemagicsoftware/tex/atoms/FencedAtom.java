@@ -32,6 +32,8 @@ import com.whitemagicsoftware.tex.*;
 import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.boxes.HorizontalBox;
 
+import java.util.function.Consumer;
+
 /**
  * An atom representing a base atom surrounded with delimiters that change their size
  * according to the height of the base.
@@ -87,9 +89,18 @@ public class FencedAtom extends Atom {
    }
 
    public Box createBox( TeXEnvironment env) {
+      return LayoutStack.layout( this, env );
+   }
+
+   @Override
+   protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+      stack.request( base, env, content -> stack.finish(
+          createBox( env, content ) ) );
+   }
+
+   private Box createBox( TeXEnvironment env, Box content ) {
       TeXFont tf = env.getTeXFont();
 
-      Box content = base.createBox(env);
       float axis = axis = tf.getAxisHeight(env.getStyle()), delta = Math.max(
             content.getHeight() - axis, content.getDepth() + axis), minHeight = Math
             .max((delta / 500) * DELIMITER_FACTOR, 2 * delta
@@ -127,4 +138,16 @@ public class FencedAtom extends Atom {
       return hBox;
    }
 
+   @Override
+   protected void visitChildren( final Consumer<Atom> action ) {
+      visit( left, action );
+      visit( base, action );
+      visit( right, action );
+   }
+
+   @Override
+   protected boolean describe( final CanonicalWriter w ) {
+      w.begin( "fenced", type ).child( base ).child( left ).child( right );
+      return true;
+   }
 }
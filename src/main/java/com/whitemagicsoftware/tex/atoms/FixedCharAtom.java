@@ -53,4 +53,9 @@ public class FixedCharAtom extends CharSymbolAtom {
       return new CharBox( c);
    }
 
+   @Override
+   protected boolean describe( final CanonicalWriter w ) {
+      w.begin( "fixed", type ).add( cf.c ).add( cf.fontId );
+      return true;
+   }
 }
@@ -32,6 +32,8 @@ import com.whitemagicsoftware.tex.*;
 import com.whitemagicsoftware.tex.boxes.*;
 import com.whitemagicsoftware.tex.exceptions.InvalidUnitException;
 
+import java.util.function.Consumer;
+
 /**
  * An atom representing a fraction.
  */
@@ -52,8 +54,8 @@ public class FractionAtom extends Atom {
     private final Atom numerator;
     private final Atom denominator;
     
-    // thickness of the fraction line
-    private float thickness;
+    // thickness of the fraction line (in the given unit)
+    private final float thickness;
     
     // thickness of the fraction line relative to the default thickness
     private float defFactor;
@@ -171,22 +173,36 @@ public class FractionAtom extends Atom {
     }
     
     public Box createBox( TeXEnvironment env) {
+        return LayoutStack.layout( this, env );
+    }
+
+    @Override
+    protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
         final TeXFont tf = env.getTeXFont();
         final int style = env.getStyle();
         // set thickness to default if default value should be used
-        float drt = tf.getDefaultRuleThickness(style);
-        if (noDefault)
+        final float drt = tf.getDefaultRuleThickness(style);
+        final float t = noDefault
             // convert the thickness to pixels
-            thickness = new SpaceAtom(unit, 0, thickness, 0).createBox(env).getHeight();
-        else
-            thickness = (defFactorSet ? defFactor * drt : drt);
+            ? new SpaceAtom(unit, 0, thickness, 0).createBox(env).getHeight()
+            : (defFactorSet ? defFactor * drt : drt);
         
         // create equal width boxes (in appropriate styles)
-        Box num = (numerator == null ? new StrutBox() : numerator
-                .createBox(env.numStyle()));
-        Box denom = (denominator == null ? new StrutBox() : denominator
-                .createBox(env.denomStyle()));
-        
+        stack.request( numerator, env.numStyle(), num ->
+            stack.request( denominator, env.denomStyle(), denom ->
+                stack.finish( createBox( env, num, denom, t ) ) ) );
+    }
+
+    /*
+     * Stacks the boxes, separated by a rule of the given thickness in pixels
+     * (which is never stored, so the atom stays unchanged).
+     */
+    private Box createBox( TeXEnvironment env, Box num, Box denom,
+                           float thickness ) {
+        final TeXFont tf = env.getTeXFont();
+        final int style = env.getStyle();
+        final float drt = tf.getDefaultRuleThickness(style);
+
         if (num.getWidth() < denom.getWidth())
             num = new HorizontalBox( num, denom.getWidth(), numAlign);
         else
@@ -264,4 +280,27 @@ public class FractionAtom extends Atom {
         vBox.setDepth(shiftDown + denom.getDepth());
         return vBox;
     }
+
+    @Override
+    protected void visitChildren( final Consumer<Atom> action ) {
+        visit( numerator, action );
+        visit( denominator, action );
+    }
+
+    @Override
+    protected boolean describe( final CanonicalWriter w ) {
+        w.begin( "frac", type )
+            .add( noDefault ).add( numAlign ).add( denomAlign );
+
+        // the thickness is computed from the font unless it's given
+        if( noDefault ) {
+            w.add( unit ).add( thickness );
+        }
+        else {
+            w.add( defFactorSet ).add( defFactor );
+        }
+
+        w.child( numerator ).child( denominator );
+        return true;
+    }
 }
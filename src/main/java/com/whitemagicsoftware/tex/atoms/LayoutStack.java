@@ -0,0 +1,209 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.atoms;
+
+import com.whitemagicsoftware.tex.Cancellation;
+import com.whitemagicsoftware.tex.Dummy;
+import com.whitemagicsoftware.tex.FragmentCache;
+import com.whitemagicsoftware.tex.TeXEnvironment;
+import com.whitemagicsoftware.tex.boxes.Box;
+import com.whitemagicsoftware.tex.boxes.StrutBox;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+/**
+ * Lays out a tree of atoms using an explicit stack rather than recursion, so
+ * that deeply nested formulas can't exhaust the call stack. Atoms composed
+ * of child atoms lay themselves out in steps (see
+ * {@link Atom#layout(LayoutStack, TeXEnvironment)}): each step either
+ * requests the box of a child atom, along with the step that continues with
+ * that box, or finishes with the atom's own box. Steps waiting for a child's
+ * box are kept on the stack, so its size grows with the depth of the tree.
+ * <p>
+ * The environment's {@link Cancellation}, if any, is checked before each
+ * atom is laid out. Likewise, the environment's {@link FragmentCache}, if
+ * any, is asked for each atom's box before the atom is laid out, and keeps
+ * the box once it has been laid out.
+ * </p>
+ */
+public final class LayoutStack {
+  private final ArrayDeque<Consumer<Box>> mSteps = new ArrayDeque<>();
+
+  /**
+   * Child atom requested by the most recent step, if any.
+   */
+  private Atom mChild;
+  private TeXEnvironment mEnv;
+  private Dummy mPrevious;
+
+  /**
+   * Atom before the atom being started in the row that contains it, if any.
+   */
+  private Dummy mPreceding;
+
+  /**
+   * Box finished by the most recent step, if no child was requested.
+   */
+  private Box mBox;
+
+  private final Cancellation mCancellation;
+  private final FragmentCache mCache;
+
+  /**
+   * Numbers subtrees for the cache, remembering their numbers for the rest
+   * of the layout; created when first needed.
+   */
+  private CanonicalWriter mWriter;
+
+  private LayoutStack( final TeXEnvironment env ) {
+    mCancellation = env.getCancellation();
+    mCache = env.getFragmentCache();
+  }
+
+  /**
+   * Converts the given atom into a box.
+   *
+   * @param atom the atom to lay out
+   * @param env  the environment in which to lay out the atom
+   * @return the atom's box
+   */
+  public static Box layout( final Atom atom, final TeXEnvironment env ) {
+    final var stack = new LayoutStack( env );
+
+    stack.mChild = atom;
+    stack.mEnv = env;
+
+    while( true ) {
+      final Atom child = stack.mChild;
+
+      if( child != null ) {
+        final TeXEnvironment childEnv = stack.mEnv;
+        final Dummy previous = stack.mPrevious;
+        stack.mChild = null;
+        stack.mEnv = null;
+        stack.mPrevious = null;
+        stack.start( child, childEnv, previous );
+      }
+      else if( stack.mSteps.isEmpty() ) {
+        return stack.mBox;
+      }
+      else {
+        final Box box = stack.mBox;
+        stack.mBox = null;
+        stack.mSteps.pop().accept( box );
+      }
+    }
+  }
+
+  /**
+   * Starts laying out the given atom, unless the cache has its box.
+   */
+  private void start( final Atom atom, final TeXEnvironment env,
+                      final Dummy previous ) {
+    if( mCancellation != null ) {
+      mCancellation.check();
+    }
+
+    final FragmentCache cache = mCache;
+
+    if( cache != null ) {
+      if( mWriter == null ) {
+        mWriter = new CanonicalWriter();
+      }
+
+      final var key = cache.key( mWriter, atom, env );
+
+      if( key != null ) {
+        final Box box = cache.get( key, env );
+
+        if( box != null ) {
+          mBox = box;
+          return;
+        }
+
+        mSteps.push( b -> finish( cache.put( key, env, b ) ) );
+      }
+    }
+
+    mPreceding = previous;
+    atom.layout( this, env );
+    mPreceding = null;
+  }
+
+  /**
+   * Returns the atom before the atom being laid out, in the row that
+   * contains it. Nested rows need it for the glue and the type of their
+   * first element (see {@link com.whitemagicsoftware.tex.Row}). This is only
+   * known to the first step of an atom.
+   *
+   * @return the previous atom, or {@code null} if none
+   */
+  public Dummy getPrevious() {
+    return mPreceding;
+  }
+
+  /**
+   * Requests the box of a child atom. This must be the last thing a step
+   * does; the given step receives the box once the child has been laid out.
+   *
+   * @param child the child atom, or {@code null} for an empty box
+   * @param env   the environment in which to lay out the child
+   * @param step  continues laying out the parent atom with the child's box
+   */
+  public void request( final Atom child, final TeXEnvironment env,
+                       final Consumer<Box> step ) {
+    request( child, env, null, step );
+  }
+
+  /**
+   * Requests the box of a child atom that follows the given atom in a row.
+   * This must be the last thing a step does.
+   *
+   * @param child    the child atom, or {@code null} for an empty box
+   * @param env      the environment in which to lay out the child
+   * @param previous the atom before the child, or {@code null} if none
+   * @param step     continues laying out the parent atom with the child's
+   *                 box
+   */
+  public void request( final Atom child, final TeXEnvironment env,
+                       final Dummy previous, final Consumer<Box> step ) {
+    mSteps.push( step );
+
+    if( child == null ) {
+      mBox = new StrutBox();
+    }
+    else {
+      mChild = child;
+      mEnv = env;
+      mPrevious = previous;
+    }
+  }
+
+  /**
+   * Provides the box of the atom being laid out. This must be the last thing
+   * a step does.
+   *
+   * @param box the atom's box
+   */
+  public void finish( final Box box ) {
+    mBox = box;
+  }
+}
@@ -40,6 +40,8 @@ import com.whitemagicsoftware.tex.boxes.HorizontalBox;
 import com.whitemagicsoftware.tex.boxes.OverBar;
 import com.whitemagicsoftware.tex.boxes.StrutBox;
 
+import java.util.function.Consumer;
+
 import static java.lang.Math.abs;
 
 /**
@@ -63,6 +65,17 @@ public class NthRootAtom extends Atom {
   }
 
   public Box createBox( TeXEnvironment env ) {
+    return LayoutStack.layout( this, env );
+  }
+
+  @Override
+  protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+    // cramped style for the formula under the root sign
+    stack.request( base, env.crampStyle(), bs -> layout( stack, env, bs ) );
+  }
+
+  private void layout(
+      final LayoutStack stack, final TeXEnvironment env, final Box bs ) {
     // first create a simple square root construction
     final TeXFont tf = env.getTeXFont();
     final int style = env.getStyle();
@@ -80,8 +93,6 @@ public class NthRootAtom extends Atom {
 
     clr = drt + abs( clr ) / 4;
 
-    // cramped style for the formula under the root sign
-    final Box bs = base.createBox( env.crampStyle() );
     final HorizontalBox b = new HorizontalBox( bs );
     b.add( new SpaceAtom( TeXConstants.UNIT_MU, 1, 0, 0 ).createBox( env.crampStyle() ) );
     // create radical sign
@@ -101,8 +112,12 @@ public class NthRootAtom extends Atom {
     squareRoot.add( ob );
 
     // create box from root for nth root
-    final Box r = root.createBox( env.rootStyle() );
+    stack.request( root, env.rootStyle(), r -> stack.finish(
+        createBox( env, squareRoot, r ) ) );
+  }
 
+  private static Box createBox(
+      final TeXEnvironment env, final HorizontalBox squareRoot, final Box r ) {
     // shift root up
     final float bottomShift =
         FACTOR * (squareRoot.getHeight() + squareRoot.getDepth());
@@ -113,7 +128,7 @@ public class NthRootAtom extends Atom {
         new SpaceAtom( TeXConstants.UNIT_MU, -10f, 0, 0 ).createBox( env );
 
     // arrange both boxes together with the negative kern
-    final Box result = new HorizontalBox();
+    final HorizontalBox result = new HorizontalBox();
     final float pos = r.getWidth() + negativeKern.getWidth();
     if( pos < 0 ) {
       result.add( new StrutBox( -pos ) );
@@ -124,4 +139,16 @@ public class NthRootAtom extends Atom {
     result.add( squareRoot );
     return result;
   }
+
+  @Override
+  protected void visitChildren( final Consumer<Atom> action ) {
+    visit( root, action );
+    visit( base, action );
+  }
+
+  @Override
+  protected boolean describe( final CanonicalWriter w ) {
+    w.begin( "root", type ).child( base ).child( root );
+    return true;
+  }
 }
@@ -38,6 +38,8 @@ import com.whitemagicsoftware.tex.atoms.SymbolAtom;
 import com.whitemagicsoftware.tex.boxes.*;
 import com.whitemagicsoftware.tex.exceptions.InvalidUnitException;
 
+import java.util.function.Consumer;
+
 /**
  * A box representing another atom with a delimiter and a script above or under it, 
  * with script and delimiter separated by a kern.
@@ -68,13 +70,24 @@ public class OverUnderDelimiterAtom extends Atom {
    }
 
    public Box createBox( TeXEnvironment env) {
-      Box b = (base == null ? new StrutBox() : base.createBox( env));
-      Box del = DelimiterFactory.create( symbol.getName(), env, b.getWidth());
+      return LayoutStack.layout( this, env );
+   }
 
-      Box scriptBox = null;
-      if (script != null)
-         scriptBox = script.createBox((over ? env.supStyle() : env.subStyle()));
+   @Override
+   protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+      stack.request( base, env, b -> {
+         final Box del =
+             DelimiterFactory.create( symbol.getName(), env, b.getWidth());
+
+         if (script == null)
+            stack.finish( createBox( env, b, del, null ) );
+         else
+            stack.request( script, (over ? env.supStyle() : env.subStyle()),
+                           s -> stack.finish( createBox( env, b, del, s ) ) );
+      } );
+   }
 
+   private Box createBox( TeXEnvironment env, Box b, Box del, Box scriptBox ) {
       // create centered horizontal box if smaller dan maximum width
       float max = getMaxWidth(b, del, scriptBox);
       if (Math.abs(max - b.getWidth()) > TeXFormula.PREC)
@@ -96,4 +109,18 @@ public class OverUnderDelimiterAtom extends Atom {
          max = Math.max(max, script.getWidth());
       return max;
    }
+
+   @Override
+   protected void visitChildren( final Consumer<Atom> action ) {
+      visit( base, action );
+      visit( symbol, action );
+      visit( script, action );
+   }
+
+   @Override
+   protected boolean describe( final CanonicalWriter w ) {
+      w.begin( "delimiter", type ).add( over )
+         .child( base ).child( script ).child( symbol ).child( kern );
+      return true;
+   }
 }
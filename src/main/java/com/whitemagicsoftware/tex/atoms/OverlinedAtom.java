@@ -32,7 +32,8 @@ import com.whitemagicsoftware.tex.TeXConstants;
 import com.whitemagicsoftware.tex.TeXEnvironment;
 import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.boxes.OverBar;
-import com.whitemagicsoftware.tex.boxes.StrutBox;
+
+import java.util.function.Consumer;
 
 /**
  * An atom representing another atom with a horizontal line above it
@@ -48,19 +49,34 @@ public class OverlinedAtom extends Atom {
   }
 
   public Box createBox( TeXEnvironment env ) {
+    return LayoutStack.layout( this, env );
+  }
+
+  @Override
+  protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
     final float drt =
         env.getTeXFont().getDefaultRuleThickness( env.getStyle() );
 
     // cramp the style of the formula to be overlined and create vertical box
-    final Box b = base == null
-        ? new StrutBox()
-        : base.createBox( env.crampStyle() );
-    final OverBar ob = new OverBar( b, 3 * drt, drt );
+    stack.request( base, env.crampStyle(), b -> {
+      final OverBar ob = new OverBar( b, 3 * drt, drt );
+
+      // baseline vertical box = baseline box b
+      ob.setDepth( b.getDepth() );
+      ob.setHeight( b.getHeight() + 5 * drt );
 
-    // baseline vertical box = baseline box b
-    ob.setDepth( b.getDepth() );
-    ob.setHeight( b.getHeight() + 5 * drt );
+      stack.finish( ob );
+    } );
+  }
+
+  @Override
+  protected void visitChildren( final Consumer<Atom> action ) {
+    visit( base, action );
+  }
 
-    return ob;
+  @Override
+  protected boolean describe( final CanonicalWriter w ) {
+    w.begin( "overline", type ).child( base );
+    return true;
   }
 }
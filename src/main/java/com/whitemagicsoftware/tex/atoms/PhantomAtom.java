@@ -28,7 +28,6 @@
 
 package com.whitemagicsoftware.tex.atoms;
 
-import com.whitemagicsoftware.tex.Dummy;
 import com.whitemagicsoftware.tex.Row;
 import com.whitemagicsoftware.tex.TeXEnvironment;
 import com.whitemagicsoftware.tex.atoms.Atom;
@@ -36,6 +35,8 @@ import com.whitemagicsoftware.tex.atoms.RowAtom;
 import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.boxes.StrutBox;
 
+import java.util.function.Consumer;
+
 /**
  * An atom representing another atom that should be drawn invisibly.
  */
@@ -62,9 +63,14 @@ public class PhantomAtom extends Atom implements Row {
    }
 
    public Box createBox( TeXEnvironment env) {
-      Box res = elements.createBox(env);
-      return new StrutBox( (w ? res.getWidth() : 0), (h ? res.getHeight() : 0),
-                           (d ? res.getDepth() : 0), res.getShift());
+      return LayoutStack.layout( this, env );
+   }
+
+   @Override
+   protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+      stack.request( elements, env, stack.getPrevious(), res -> stack.finish(
+          new StrutBox( (w ? res.getWidth() : 0), (h ? res.getHeight() : 0),
+                        (d ? res.getDepth() : 0), res.getShift()) ) );
    }
 
    public int getLeftType() {
@@ -75,7 +81,14 @@ public class PhantomAtom extends Atom implements Row {
       return elements.getRightType();
    }
 
-   public void setPreviousAtom( Dummy prev) {
-      elements.setPreviousAtom(prev);
+   @Override
+   protected void visitChildren( final Consumer<Atom> action ) {
+      visit( elements, action );
+   }
+
+   @Override
+   protected boolean describe( final CanonicalWriter w ) {
+      w.begin( "phantom", type ).add( this.w ).add( h ).add( d ).child( elements );
+      return true;
    }
 }
@@ -34,10 +34,15 @@ import com.whitemagicsoftware.tex.boxes.HorizontalBox;
 import com.whitemagicsoftware.tex.boxes.StrutBox;
 import com.whitemagicsoftware.tex.exceptions.EmptyFormulaException;
 
+import java.awt.Color;
+import java.util.ArrayList;
 import java.util.BitSet;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import static java.util.Arrays.copyOf;
 
 /**
  * An atom representing a horizontal row of other atoms, to be separated by glue.
@@ -46,14 +51,16 @@ import java.util.ListIterator;
 public class RowAtom extends Atom implements Row {
     
     // atoms to be displayed horizontally next to eachother
-    protected List<Atom> elements = new LinkedList<>();
-    
-    // previous atom (for nested Row atoms)
-    private Dummy previousAtom;
+    protected List<Atom> elements = new ArrayList<>();
     
     // set of atom types that make a previous bin atom change to ord
     private static final BitSet binSet;
     
+    // number of elements after which a run that is laid out again ends
+    private static final int RUN_LENGTH = 16;
+
+    private static final int INITIAL_RUNS = 8;
+
     // set of atom types that can possibly need a kern or, together with the
     // previous atom, be replaced by a ligature
     private static final BitSet ligKernSet;
@@ -141,86 +148,429 @@ public class RowAtom extends Atom implements Row {
     }
     
     public Box createBox( final TeXEnvironment env) {
-        final TeXFont tf = env.getTeXFont();
-        final HorizontalBox hBox = new HorizontalBox(
-            env.getColor(), env.getBackground() );
-        env.reset();
-        
-        final ListIterator<Atom> it = elements.listIterator();
-
-        // convert atoms to boxes and add to the horizontal box
-        while( it.hasNext() ) {
-            final Dummy atom = new Dummy( it.next() );
-            
-            // if necessary, change BIN type to ORD
-            Atom nextAtom = null;
-            if (it.hasNext()) {
-                nextAtom = it.next();
-                it.previous();
-            }
-            changeToOrd(atom, previousAtom, nextAtom);
-            
-            // check for ligatures or kerning
-            float kern = 0;
-            if (it.hasNext() && atom.getRightType() == TeXConstants.TYPE_ORDINARY
-                    && atom.isCharSymbol()) {
-                final Atom next = it.next();
-                if (next instanceof CharSymbolAtom
-                        && ligKernSet.get(next.getLeftType())) {
-                    atom.markAsTextSymbol();
-                    final CharFont l = atom.getCharFont(tf);
-                    final CharFont r = ((CharSymbolAtom) next).getCharFont( tf);
-                    final CharFont lig = tf.getLigature(l, r);
-                    if (lig == null) {
-                        kern = tf.getKern(l, r, env.getStyle());
-                        // iterator remains unchanged (no ligature!)
+        return LayoutStack.layout( this, env );
+    }
+
+    @Override
+    protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+        new Elements( stack, env ).next();
+    }
+
+    /**
+     * Returns where to keep the boxes of this row's elements, so that laying
+     * out an edited copy of this row can reuse the runs of elements that
+     * weren't changed. Subclasses return the same instance for each copy.
+     *
+     * @return the runs of the most recent layout, or null to lay out all
+     * elements
+     */
+    protected Runs getRuns() {
+        return null;
+    }
+
+    /**
+     * The boxes of a row's elements from its most recent layout, in runs of
+     * consecutive elements. The next layout of the row reuses the boxes of a
+     * run if the run's elements, the element after them, the type of the
+     * atom before them and the last font id are the same, in the same
+     * environment. The other elements are laid out as usual.
+     */
+    public static final class Runs {
+        private Layout layout;
+    }
+
+    /**
+     * The runs of one layout of a row. Run k consists of the elements from
+     * starts[k] to starts[k + 1] (including an element joined to the one
+     * before it by a ligature) and of the row's child boxes from
+     * children[k] to children[k + 1]. The widths of the child boxes and the
+     * height and depth of each run are kept as well, so that a run's boxes
+     * can be added to a row without reading them.
+     */
+    private static final class Layout {
+        private final List<Atom> elements;
+        private final TeXFont font;
+        private final int style;
+        private final Color color;
+        private final Color background;
+
+        private HorizontalBox box;
+        private float[] widths = new float[INITIAL_RUNS];
+        private int size;
+
+        private int count;
+        private int[] starts = new int[INITIAL_RUNS + 1];
+        private int[] children = new int[INITIAL_RUNS + 1];
+
+        // right type of the atom before each run (-1 if none) and the last
+        // font id the run was laid out with
+        private int[] types = new int[INITIAL_RUNS];
+        private int[] fontIds = new int[INITIAL_RUNS];
+
+        // previous atom and last font id after each run
+        private Dummy[] previous = new Dummy[INITIAL_RUNS];
+        private int[] lastFontIds = new int[INITIAL_RUNS];
+
+        // greatest height and depth of each run's boxes, as for HorizontalBox
+        private float[] heights = new float[INITIAL_RUNS];
+        private float[] depths = new float[INITIAL_RUNS];
+
+        private Layout(final List<Atom> elements, final TeXEnvironment env) {
+            this.elements = elements;
+            font = env.getTeXFont();
+            style = env.getStyle();
+            color = env.getColor();
+            background = env.getBackground();
+        }
+
+        private boolean matches(final Layout l) {
+            return l != null && font == l.font && style == l.style
+                    && Objects.equals(color, l.color)
+                    && Objects.equals(background, l.background);
+        }
+
+        private void begin(final int start, final int child, final int type,
+                           final int fontId) {
+            if (count == types.length) {
+                final int capacity = count << 1;
+                starts = copyOf(starts, capacity + 1);
+                children = copyOf(children, capacity + 1);
+                types = copyOf(types, capacity);
+                fontIds = copyOf(fontIds, capacity);
+                previous = copyOf(previous, capacity);
+                lastFontIds = copyOf(lastFontIds, capacity);
+                heights = copyOf(heights, capacity);
+                depths = copyOf(depths, capacity);
+            }
+
+            starts[count] = start;
+            children[count] = child;
+            types[count] = type;
+            fontIds[count] = fontId;
+            heights[count] = Float.NEGATIVE_INFINITY;
+            depths[count] = Float.NEGATIVE_INFINITY;
+        }
+
+        private void add(final Box b) {
+            if (size == widths.length) {
+                widths = copyOf(widths, size << 1);
+            }
+
+            widths[size++] = b.getWidth();
+            heights[count] = Math.max(heights[count], b.getHeight() - b.getShift());
+            depths[count] = Math.max(depths[count], b.getDepth() + b.getShift());
+        }
+
+        private void add(final Layout l, final int k) {
+            final int from = l.children[k];
+            final int length = l.children[k + 1] - from;
+
+            if (size + length > widths.length) {
+                widths = copyOf(widths, Math.max(size + length, size << 1));
+            }
+
+            System.arraycopy(l.widths, from, widths, size, length);
+            size += length;
+            heights[count] = l.heights[k];
+            depths[count] = l.depths[k];
+        }
+
+        private void end(final int end, final int child, final Dummy prev,
+                         final int fontId) {
+            previous[count] = prev;
+            lastFontIds[count++] = fontId;
+            starts[count] = end;
+            children[count] = child;
+        }
+    }
+
+    /**
+     * Converts the elements to boxes, one at a time, and adds them to a
+     * horizontal box. Receives the boxes of elements that had to be laid out
+     * on the stack. Reuses and records runs of elements, if this row keeps
+     * its layout.
+     */
+    private final class Elements implements Consumer<Box> {
+        private final LayoutStack stack;
+        private final TeXEnvironment env;
+        private final TeXFont tf;
+        private final HorizontalBox hBox;
+        private ListIterator<Atom> it = elements.listIterator();
+
+        // element being laid out and the kern to insert after it
+        private Dummy atom;
+        private float kern;
+
+        // previous atom (the one before this row, if nested, at first)
+        private Dummy previousAtom;
+
+        // font id of the most recent box
+        private int fontId;
+
+        // where the layout is kept, the runs of this layout and the runs of
+        // the most recent layout, if they can be reused
+        private final Runs runs;
+        private final Layout layout;
+        private final Layout earlier;
+
+        // change in the number of elements since the earlier layout
+        private final int shift;
+
+        // next earlier run to try at the same and at the shifted position
+        private int same;
+        private int moved;
+
+        // first element of the run being laid out, -1 if none
+        private int run = -1;
+
+        private Elements(final LayoutStack stack, final TeXEnvironment env) {
+            this.stack = stack;
+            this.env = env;
+            previousAtom = stack.getPrevious();
+            tf = env.getTeXFont();
+            hBox = new HorizontalBox( env.getColor(), env.getBackground() );
+            env.reset();
+
+            runs = getRuns();
+
+            if( runs == null ) {
+                layout = null;
+                earlier = null;
+                shift = 0;
+            }
+            else {
+                layout = new Layout( elements, env );
+                earlier = layout.matches( runs.layout ) ? runs.layout : null;
+                shift = earlier == null
+                        ? 0
+                        : elements.size() - earlier.elements.size();
+            }
+        }
+
+        /**
+         * Converts atoms to boxes and adds them to the horizontal box, until
+         * an element has to be laid out on the stack or the row is finished.
+         */
+        private void next() {
+            while( it.hasNext() ) {
+                if( layout != null && reuse() ) {
+                    continue;
+                }
+
+                atom = new Dummy( it.next() );
+
+                // if necessary, change BIN type to ORD
+                Atom nextAtom = null;
+                if (it.hasNext()) {
+                    nextAtom = it.next();
+                    it.previous();
+                }
+                changeToOrd(atom, previousAtom, nextAtom);
+
+                // check for ligatures or kerning
+                kern = 0;
+                if (it.hasNext() && atom.getRightType() == TeXConstants.TYPE_ORDINARY
+                        && atom.isCharSymbol()) {
+                    final Atom next = it.next();
+                    if (next instanceof CharSymbolAtom
+                            && ligKernSet.get(next.getLeftType())) {
+                        final CharFont l = atom.getCharFont(tf);
+                        final CharFont r = ((CharSymbolAtom) next).getCharFont( tf);
+                        final CharFont lig = tf.getLigature(l, r);
+                        if (lig == null) {
+                            kern = tf.getKern(l, r, env.getStyle());
+                            // iterator remains unchanged (no ligature!)
+                            it.previous();
+                        }
+                        else {
+                            // go on with the ligature
+                            atom.changeAtom(new FixedCharAtom(lig));
+                        }
+                    } else {
+                        // iterator remains unchanged
                         it.previous();
-                    } 
-                    else {
-                        // go on with the ligature
-                        atom.changeAtom(new FixedCharAtom(lig));
                     }
-                } else {
-                    // iterator remains unchanged
-                    it.previous();
                 }
+
+                // insert glue, unless it's the first element of the row
+                // OR this element or the next is a Kern.
+                if (it.previousIndex() != 0 && previousAtom != null
+                        && !previousAtom.isKern() && !atom.isKern())
+                    append(Glue.get(previousAtom.getRightType(), atom.getLeftType(),
+                            env));
+
+                // insert atom's box, characters (and ligatures) have no
+                // child atoms
+                if( !atom.isCharSymbol() ) {
+                    stack.request( atom.getAtom(), env, previousAtom, this );
+                    return;
+                }
+
+                add( atom.createBox( env ) );
+            }
+
+            if( layout != null ) {
+                if( run >= 0 ) {
+                    end( it.nextIndex() );
+                }
+
+                layout.box = hBox;
+                runs.layout = layout;
             }
-            
-            // insert glue, unless it's the first element of the row
-            // OR this element or the next is a Kern.
-            if (it.previousIndex() != 0 && previousAtom != null
-                    && !previousAtom.isKern() && !atom.isKern())
-                hBox.add(Glue.get(previousAtom.getRightType(), atom.getLeftType(),
-                        env));
-            
-            // insert atom's box
-            atom.setPreviousAtom(previousAtom);
-            Box b = atom.createBox(env);
-            hBox.add(b);
-            
+
+            // return resulting horizontal box
+            stack.finish( hBox );
+        }
+
+        @Override
+        public void accept( final Box b ) {
+            add( b );
+            next();
+        }
+
+        private void add( final Box b ) {
+            append(b);
+
             // set last used fontId (for next atom)
-            env.setLastFontId(b.getLastFontId());
-            
+            fontId = b.getLastFontId();
+            env.setLastFontId(fontId);
+
             // insert kern
             if( kern > TeXFormula.PREC ) {
-                hBox.add( new StrutBox( 0, kern, 0, 0 ) );
+                append( new StrutBox( 0, kern, 0, 0 ) );
             }
-            
+
             // kerns do not interfere with the normal glue-rules without kerns
             if( !atom.isKern() ) {
                 previousAtom = atom;
             }
         }
 
-        // reset previousAtom
-        previousAtom = null;
-        
-        // return resulting horizontal box
-        return hBox;
+        private void append( final Box b ) {
+            hBox.add( b );
+
+            if( layout != null ) {
+                layout.add( b );
+            }
+        }
+
+        /**
+         * Ends the run being laid out once it's long enough, or when the
+         * elements that follow are those of an earlier run, whose boxes are
+         * then added. Otherwise, starts a run with the next element if none
+         * is being laid out.
+         *
+         * @return true if an earlier run was reused
+         */
+        private boolean reuse() {
+            final int index = it.nextIndex();
+
+            if( run >= 0 && index - run >= RUN_LENGTH ) {
+                end( index );
+            }
+
+            final int k = earlier == null ? -1 : find( index );
+
+            if( k < 0 ) {
+                if( run < 0 ) {
+                    begin( index );
+                }
+
+                return false;
+            }
+
+            if( run >= 0 ) {
+                end( index );
+            }
+
+            final int length = earlier.starts[k + 1] - earlier.starts[k];
+
+            begin( index );
+            hBox.add( earlier.box, earlier.children[k], earlier.children[k + 1],
+                      earlier.widths, earlier.heights[k], earlier.depths[k] );
+            layout.add( earlier, k );
+            previousAtom = earlier.previous[k];
+            fontId = earlier.lastFontIds[k];
+            env.setLastFontId( fontId );
+            it = elements.listIterator( index + length );
+            end( index + length );
+            return true;
+        }
+
+        /**
+         * Returns the earlier run that can be reused at the given element.
+         * Elements before an edit keep their positions, those after it are
+         * moved by the change in the number of elements.
+         *
+         * @return the run's index, or -1 if none
+         */
+        private int find( final int index ) {
+            final int[] starts = earlier.starts;
+            final int count = earlier.count;
+
+            while( same < count && starts[same] < index ) {
+                same++;
+            }
+
+            if( same < count && starts[same] == index && matches( same, index ) ) {
+                return same;
+            }
+
+            while( moved < count && starts[moved] + shift < index ) {
+                moved++;
+            }
+
+            return shift != 0 && moved < count
+                    && starts[moved] + shift == index && matches( moved, index )
+                    ? moved
+                    : -1;
+        }
+
+        /**
+         * Answers whether the given earlier run would be laid out the same
+         * way at the given element. Besides the run's own elements, the
+         * element after the run matters, for kerns, ligatures and the type
+         * of the run's last element.
+         */
+        private boolean matches( final int k, final int index ) {
+            final int start = earlier.starts[k];
+            final int end = earlier.starts[k + 1];
+
+            if( (start == 0) != (index == 0)
+                    || earlier.types[k] != getType( previousAtom )
+                    || earlier.fontIds[k] != env.getLastFontId() ) {
+                return false;
+            }
+
+            final List<Atom> old = earlier.elements;
+            final int size = elements.size();
+
+            for( int i = start, j = index; i <= end; i++, j++ ) {
+                final Atom a = i < old.size() ? old.get( i ) : null;
+                final Atom b = j < size ? elements.get( j ) : null;
+
+                if( a != b ) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        private void begin( final int index ) {
+            layout.begin( index, hBox.getSize(), getType( previousAtom ),
+                          env.getLastFontId() );
+            run = index;
+        }
+
+        private void end( final int index ) {
+            layout.end( index, hBox.getSize(), previousAtom, fontId );
+            run = -1;
+        }
     }
-    
-    public void setPreviousAtom(Dummy prev) {
-        previousAtom = prev;
+
+    private static int getType( final Dummy atom ) {
+        return atom == null ? -1 : atom.getRightType();
     }
     
     public int getLeftType() {
@@ -236,4 +586,22 @@ public class RowAtom extends Atom implements Row {
         else
             return elements.get(elements.size() - 1).getRightType();
     }
+
+    @Override
+    protected void visitChildren( final Consumer<Atom> action ) {
+        for( final Atom atom : elements ) {
+            visit( atom, action );
+        }
+    }
+
+    @Override
+    protected boolean describe( final CanonicalWriter w ) {
+        w.begin( "row", type );
+
+        for( final Atom atom : elements ) {
+            w.child( atom );
+        }
+
+        return true;
+    }
 }
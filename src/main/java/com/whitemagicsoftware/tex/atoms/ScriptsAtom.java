@@ -31,6 +31,10 @@ package com.whitemagicsoftware.tex.atoms;
 import com.whitemagicsoftware.tex.*;
 import com.whitemagicsoftware.tex.boxes.*;
 
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
 import static com.whitemagicsoftware.tex.boxes.Box.NO_FONT;
 import static java.lang.Math.abs;
 import static java.lang.Math.max;
@@ -46,22 +50,96 @@ public class ScriptsAtom extends Atom {
 
    private final Atom base;
 
+   // most atoms to share, see get(Atom, Atom, Atom)
+   private static final int MAX_SHARED = 1 << 14;
+
+   // shared atoms, by their base and scripts
+   private static final Map<Parts, ScriptsAtom> shared =
+       new ConcurrentHashMap<>();
+
    // subscript and superscript to be attached to the base (if not null)
    private final Atom subscript;
    private final Atom superscript;
 
+   // whether this is the shared atom for its base and scripts
+   private final boolean isShared;
+
    public ScriptsAtom(Atom base, Atom sub, Atom sup) {
+      this(base, sub, sup, false);
+   }
+
+   private ScriptsAtom(Atom base, Atom sub, Atom sup, boolean isShared) {
       this.base = base;
       subscript = sub;
       superscript = sup;
+      this.isShared = isShared;
+   }
+
+   /**
+    * Returns an atom attaching the given scripts to the given base. Small
+    * constructs made of shared atoms, such as {@code x^2} or
+    * {@code a_i}, are created once and shared by all formulas.
+    *
+    * @param base the atom to attach the scripts to
+    * @param sub the subscript, or null
+    * @param sup the superscript, or null
+    * @return the shared atom, or a new one
+    */
+   public static ScriptsAtom get(Atom base, Atom sub, Atom sup) {
+      if (!isShared(base) || !isShared(sub) || !isShared(sup))
+         return new ScriptsAtom(base, sub, sup);
+
+      final Parts parts = new Parts(base, sub, sup);
+      final ScriptsAtom atom = shared.get(parts);
+
+      if (atom != null)
+         return atom;
+
+      // beyond the limit, the constructs used first remain shared
+      if (shared.size() >= MAX_SHARED)
+         return new ScriptsAtom(base, sub, sup);
+
+      return shared.computeIfAbsent(
+          parts, p -> new ScriptsAtom(base, sub, sup, true));
+   }
+
+   private static boolean isShared(Atom atom) {
+      return atom == null || atom.isShared();
+   }
+
+   @Override
+   boolean isShared() {
+      return isShared;
    }
 
    public Box createBox( TeXEnvironment env) {
-      final Box b = (base == null ? new StrutBox() : base.createBox( env ));
-      if( subscript == null && superscript == null ) {
-         return b;
-      }
+      return LayoutStack.layout( this, env );
+   }
 
+   @Override
+   protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+      stack.request( base, env, b -> {
+         if( subscript == null && superscript == null ) {
+            stack.finish( b );
+         }
+         else if (base instanceof AccentedAtom
+               && ((AccentedAtom) base).base != null) {
+            // improve superscript position relative to the accent.
+            stack.request( ((AccentedAtom) base).base, env.crampStyle(),
+                           box -> layout( stack, env, b, box ) );
+         }
+         else {
+            layout( stack, env, b, null );
+         }
+      } );
+   }
+
+   /*
+    * Lays out the scripts, given the base's box and, if the base is
+    * accented, the box of the accented atom.
+    */
+   private void layout( final LayoutStack stack, final TeXEnvironment env,
+                        final Box b, final Box box ) {
       final TeXFont tf = env.getTeXFont();
       final int style = env.getStyle();
 
@@ -80,9 +158,7 @@ public class ScriptsAtom extends Atom {
       float delta = 0, shiftUp, shiftDown;
 
       // TODO: use polymorphism?
-      if (base instanceof AccentedAtom) {
-         // improve superscript position relative to the accent.
-         Box box = ((AccentedAtom) base).base.createBox(env.crampStyle());
+      if (box != null) {
          shiftUp = box.getHeight() - tf.getSupDrop(supStyle.getStyle());
          shiftDown = box.getDepth() + tf.getSubDrop(subStyle.getStyle());
       } else if (base instanceof SymbolAtom
@@ -107,9 +183,7 @@ public class ScriptsAtom extends Atom {
       } else if (base instanceof CharSymbolAtom ) {
          shiftUp = shiftDown = 0;
          CharFont cf = ((CharSymbolAtom) base).getCharFont( tf );
-         if (!((CharSymbolAtom) base).isMarkedAsTextSymbol()
-               || !tf.hasSpace(cf.fontId))
-            delta = tf.getChar(cf, style).getItalic();
+         delta = tf.getChar(cf, style).getItalic();
          if (delta > TeXFormula.PREC && subscript == null) {
             hor.add(new StrutBox(delta));
             delta = 0;
@@ -119,82 +193,116 @@ public class ScriptsAtom extends Atom {
          shiftDown = b.getDepth() + tf.getSubDrop(subStyle.getStyle());
       }
 
+      final HorizontalBox h = hor;
+      final int fontId = lastFontId;
+      final float d = delta, up = shiftUp, down = shiftDown;
+
       if (superscript == null) { // only subscript
-         final Box x = subscript.createBox(subStyle);
-         // calculate and set shift amount
-         x.setShift( max( max( shiftDown, tf.getSub1( style)), x
-               .getHeight()
-               - 4 * abs(tf.getXHeight(style, lastFontId)) / 5));
-
-         hor.add(x);
-         // add scriptspace (constant value!)
-         hor.add(SCRIPT_SPACE.createBox(env));
+         stack.request( subscript, subStyle, x -> {
+            // calculate and set shift amount
+            x.setShift( max( max( down, tf.getSub1( style)), x
+                  .getHeight()
+                  - 4 * abs(tf.getXHeight(style, fontId)) / 5));
+
+            h.add(x);
+            // add scriptspace (constant value!)
+            h.add(SCRIPT_SPACE.createBox(env));
+            stack.finish( h );
+         } );
       } else {
-         final Box x = superscript.createBox(supStyle);
-         final HorizontalBox sup = new HorizontalBox(x);
-         // add scriptspace (constant value!)
-         sup.add(SCRIPT_SPACE.createBox(env));
+         stack.request( superscript, supStyle,
+                        x -> attach( stack, env, h, fontId, d, up, down, x ) );
+      }
+   }
 
-         // adjust shift-up
-         final float p;
+   /*
+    * Attaches the superscript's box and, if present, the subscript to the
+    * base's box.
+    */
+   private void attach( final LayoutStack stack, final TeXEnvironment env,
+                        final HorizontalBox hor, final int lastFontId,
+                        final float delta, final float up,
+                        final float shiftDown, final Box x ) {
+      final TeXFont tf = env.getTeXFont();
+      final int style = env.getStyle();
+      final HorizontalBox sup = new HorizontalBox(x);
+      // add scriptspace (constant value!)
+      sup.add(SCRIPT_SPACE.createBox(env));
 
-         if( style == TeXConstants.STYLE_DISPLAY ) {
-            p = tf.getSup1( style );
-         }
-         else if( env.crampStyle().getStyle() == style ) {
-            p = tf.getSup3( style );
-         }
-         else {
-            p = tf.getSup2( style );
-         }
+      // adjust shift-up
+      final float p;
 
-         shiftUp = max( max( shiftUp, p ), x.getDepth()
-             + abs( tf.getXHeight( style, lastFontId ) ) / 4 );
+      if( style == TeXConstants.STYLE_DISPLAY ) {
+         p = tf.getSup1( style );
+      }
+      else if( env.crampStyle().getStyle() == style ) {
+         p = tf.getSup3( style );
+      }
+      else {
+         p = tf.getSup2( style );
+      }
 
-         if (subscript == null) { // only superscript
-            sup.setShift(-shiftUp);
-            hor.add(sup);
-         } else { // both superscript and subscript
-            Box y = subscript.createBox(subStyle);
-            HorizontalBox sub = new HorizontalBox(y);
-            // add scriptspace (constant value!)
-            sub.add(SCRIPT_SPACE.createBox(env));
-            // adjust shift-down
-            shiftDown = max(shiftDown, tf.getSub2(style));
-            // position both sub- and superscript
-            float drt = tf.getDefaultRuleThickness(style);
-            float interSpace = shiftUp - x.getDepth() + shiftDown
-                  - y.getHeight(); // space between sub- en
-            // superscript
-            if (interSpace < 4 * drt) { // too small
-               shiftUp += 4 * drt - interSpace;
-               // set bottom superscript at least 4/5 of X-height
-               // above
-               // baseline
-               float psi = 4 * abs(tf.getXHeight(style, lastFontId))
-                     / 5 - (shiftUp - x.getDepth());
-
-               if (psi > 0) {
-                  shiftUp += psi;
-                  shiftDown -= psi;
-               }
-            }
-            // create total box
-
-            VerticalBox vBox = new VerticalBox();
-            sup.setShift(delta);
-            vBox.add(sup);
-            // recalculate interspace
-            interSpace = shiftUp - x.getDepth() + shiftDown - y.getHeight();
-            vBox.add(new StrutBox(0, interSpace, 0, 0));
-            vBox.add(sub);
-            vBox.setHeight(shiftUp + x.getHeight());
-            vBox.setDepth(shiftDown + y.getDepth());
-            hor.add(vBox);
+      final float shiftUp = max( max( up, p ), x.getDepth()
+          + abs( tf.getXHeight( style, lastFontId ) ) / 4 );
+
+      if (subscript == null) { // only superscript
+         sup.setShift(-shiftUp);
+         hor.add(sup);
+         stack.finish( hor );
+      } else { // both superscript and subscript
+         stack.request( subscript, env.subStyle(), y -> {
+            attach( env, hor, lastFontId, delta, shiftUp, shiftDown, x, sup,
+                    y );
+            stack.finish( hor );
+         } );
+      }
+   }
+
+   /*
+    * Attaches both the superscript's and the subscript's boxes.
+    */
+   private static void attach( final TeXEnvironment env,
+                               final HorizontalBox hor, final int lastFontId,
+                               final float delta, float shiftUp,
+                               float shiftDown, final Box x,
+                               final HorizontalBox sup, final Box y ) {
+      final TeXFont tf = env.getTeXFont();
+      final int style = env.getStyle();
+      HorizontalBox sub = new HorizontalBox(y);
+      // add scriptspace (constant value!)
+      sub.add(SCRIPT_SPACE.createBox(env));
+      // adjust shift-down
+      shiftDown = max(shiftDown, tf.getSub2(style));
+      // position both sub- and superscript
+      float drt = tf.getDefaultRuleThickness(style);
+      float interSpace = shiftUp - x.getDepth() + shiftDown
+            - y.getHeight(); // space between sub- en
+      // superscript
+      if (interSpace < 4 * drt) { // too small
+         shiftUp += 4 * drt - interSpace;
+         // set bottom superscript at least 4/5 of X-height
+         // above
+         // baseline
+         float psi = 4 * abs(tf.getXHeight(style, lastFontId))
+               / 5 - (shiftUp - x.getDepth());
+
+         if (psi > 0) {
+            shiftUp += psi;
+            shiftDown -= psi;
          }
       }
+      // create total box
 
-      return hor;
+      VerticalBox vBox = new VerticalBox();
+      sup.setShift(delta);
+      vBox.add(sup);
+      // recalculate interspace
+      interSpace = shiftUp - x.getDepth() + shiftDown - y.getHeight();
+      vBox.add(new StrutBox(0, interSpace, 0, 0));
+      vBox.add(sub);
+      vBox.setHeight(shiftUp + x.getHeight());
+      vBox.setDepth(shiftDown + y.getDepth());
+      hor.add(vBox);
    }
 
    public int getLeftType() {
@@ -204,4 +312,48 @@ public class ScriptsAtom extends Atom {
    public int getRightType() {
       return base.getRightType();
    }
+
+   @Override
+   protected void visitChildren( final Consumer<Atom> action ) {
+      visit( base, action );
+      visit( subscript, action );
+      visit( superscript, action );
+   }
+
+   @Override
+   protected boolean describe( final CanonicalWriter w ) {
+      w.begin( "scripts", type )
+         .child( base ).child( subscript ).child( superscript );
+      return true;
+   }
+
+   /*
+    * The base and scripts of a shared atom, which are shared atoms
+    * themselves, so they are compared by identity.
+    */
+   private static final class Parts {
+      private final Atom base, sub, sup;
+
+      private Parts(Atom base, Atom sub, Atom sup) {
+         this.base = base;
+         this.sub = sub;
+         this.sup = sup;
+      }
+
+      @Override
+      public boolean equals(Object o) {
+         if (!(o instanceof Parts))
+            return false;
+
+         final Parts p = (Parts) o;
+         return base == p.base && sub == p.sub && sup == p.sup;
+      }
+
+      @Override
+      public int hashCode() {
+         return (31 * System.identityHashCode(base)
+             + System.identityHashCode(sub)) * 31
+             + System.identityHashCode(sup);
+      }
+   }
 }
@@ -131,4 +131,13 @@ public class SpaceAtom extends Atom {
     public static float getFactor( final int unit, final TeXEnvironment env ) {
         return unitConversions[ unit ].getPixelConversion( env );
     }
+
+    @Override
+    protected boolean describe( final CanonicalWriter w ) {
+        w.begin( "space", type ).add( blankSpace )
+            .add( width ).add( wUnit )
+            .add( height ).add( hUnit )
+            .add( depth ).add( dUnit );
+        return true;
+    }
 }
@@ -39,6 +39,8 @@ import java.util.BitSet;
 import java.util.Map;
 import java.util.Optional;
 
+import static java.util.Collections.unmodifiableMap;
+
 /**
  * A box representing a symbol (a non-alphanumeric character).
  */
@@ -135,6 +137,18 @@ public class SymbolAtom extends CharSymbolAtom {
         return symbols.get( name );
     }
     
+    /**
+     * @return all defined symbols, keyed by name (read-only)
+     */
+    public static Map<String, SymbolAtom> getSymbols() {
+        return unmodifiableMap( symbols );
+    }
+
+    @Override
+    boolean isShared() {
+        return symbols.get( name ) == this;
+    }
+
     /**
      *
      * @return true if this symbol can act as a delimiter to embrace formulas
@@ -166,4 +180,10 @@ public class SymbolAtom extends CharSymbolAtom {
             ", delimiter=" + delimiter +
             '}';
     }
+
+    @Override
+    protected boolean describe( final CanonicalWriter w ) {
+        w.begin( "symbol", type ).add( name ).add( delimiter );
+        return true;
+    }
 }
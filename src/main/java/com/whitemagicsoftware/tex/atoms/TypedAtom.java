@@ -31,6 +31,8 @@ package com.whitemagicsoftware.tex.atoms;
 import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.TeXEnvironment;
 
+import java.util.function.Consumer;
+
 /**
  * An atom representing another atom with an overrided lefttype and righttype. This
  * affects the glue inserted before and after this atom.
@@ -51,7 +53,12 @@ public class TypedAtom extends Atom {
    }
 
    public Box createBox( TeXEnvironment env) {
-      return atom.createBox(env);
+      return LayoutStack.layout( this, env );
+   }
+
+   @Override
+   protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+      stack.request( atom, env, stack::finish );
    }
 
    public int getLeftType() {
@@ -61,4 +68,15 @@ public class TypedAtom extends Atom {
    public int getRightType() {
       return rightType;
    }
+
+   @Override
+   protected void visitChildren( final Consumer<Atom> action ) {
+      visit( atom, action );
+   }
+
+   @Override
+   protected boolean describe( final CanonicalWriter w ) {
+      w.begin( "typed", type ).add( leftType ).add( rightType ).child( atom );
+      return true;
+   }
 }
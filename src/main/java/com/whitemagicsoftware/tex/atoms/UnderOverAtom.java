@@ -31,10 +31,11 @@ package com.whitemagicsoftware.tex.atoms;
 import com.whitemagicsoftware.tex.*;
 import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.boxes.HorizontalBox;
-import com.whitemagicsoftware.tex.boxes.StrutBox;
 import com.whitemagicsoftware.tex.boxes.VerticalBox;
 import com.whitemagicsoftware.tex.exceptions.InvalidUnitException;
 
+import java.util.function.Consumer;
+
 /**
  * An atom representing another atom with an atom above it (if not null) separated
  * by a kern and in a smaller size depending on "overScriptSize" and/or an atom under
@@ -110,19 +111,37 @@ public class UnderOverAtom extends Atom {
     }
     
     public Box createBox( TeXEnvironment env) {
-        
-        // create boxes in right style and calculate maximum width
-        Box b = (base == null ? new StrutBox() : base.createBox( env));
-        Box o = null, u = null;
+        return LayoutStack.layout( this, env );
+    }
+
+    @Override
+    protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+        // create boxes in right style
+        stack.request( base, env, b -> {
+            if (over != null)
+                stack.request( over, overScriptSize ? env.subStyle() : env,
+                               o -> layoutUnder( stack, env, b, o ) );
+            else
+                layoutUnder( stack, env, b, null );
+        } );
+    }
+
+    private void layoutUnder( LayoutStack stack, TeXEnvironment env, Box b,
+                              Box o ) {
+        if (under != null)
+            stack.request( under, underScriptSize ? env.subStyle() : env,
+                           u -> stack.finish( createBox( env, b, o, u ) ) );
+        else
+            stack.finish( createBox( env, b, o, null ) );
+    }
+
+    private Box createBox( TeXEnvironment env, Box b, Box o, Box u ) {
+        // calculate maximum width
         float max = b.getWidth();
-        if (over != null) {
-            o = over.createBox(overScriptSize ? env.subStyle() : env);
+        if (o != null)
             max = Math.max(max, o.getWidth());
-        }
-        if (under != null) {
-            u = under.createBox(underScriptSize ? env.subStyle() : env);
+        if (u != null)
             max = Math.max(max, u.getWidth());
-        }
         
         // create vertical box
         VerticalBox vBox = new VerticalBox();
@@ -164,4 +183,20 @@ public class UnderOverAtom extends Atom {
         else
             return b;
     }
+
+    @Override
+    protected void visitChildren( final Consumer<Atom> action ) {
+        visit( base, action );
+        visit( under, action );
+        visit( over, action );
+    }
+
+    @Override
+    protected boolean describe( final CanonicalWriter w ) {
+        w.begin( "underover", type )
+            .add( underUnit ).add( underSpace ).add( underScriptSize )
+            .add( overUnit ).add( overSpace ).add( overScriptSize )
+            .child( base ).child( under ).child( over );
+        return true;
+    }
 }
@@ -34,6 +34,8 @@ import com.whitemagicsoftware.tex.boxes.HorizontalRuleBox;
 import com.whitemagicsoftware.tex.boxes.StrutBox;
 import com.whitemagicsoftware.tex.boxes.VerticalBox;
 
+import java.util.function.Consumer;
+
 /**
  * An atom representing another atom with a line under it. 
  */
@@ -48,22 +50,38 @@ public class UnderlinedAtom extends Atom {
    }
 
    public Box createBox( TeXEnvironment env) {
-      float drt = env.getTeXFont().getDefaultRuleThickness(env.getStyle());
+      return LayoutStack.layout( this, env );
+   }
+
+   @Override
+   protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+      final float drt = env.getTeXFont().getDefaultRuleThickness(env.getStyle());
 
       // create formula box in same style
-      Box b = (base == null ? new StrutBox() : base.createBox( env));
+      stack.request( base, env, b -> {
+         // create vertical box
+         VerticalBox vBox = new VerticalBox();
+         vBox.add(b);
+         vBox.add(new StrutBox(0, 3 * drt, 0, 0));
+         vBox.add(new HorizontalRuleBox( drt, b.getWidth(), 0));
 
-      // create vertical box
-      VerticalBox vBox = new VerticalBox();
-      vBox.add(b);
-      vBox.add(new StrutBox(0, 3 * drt, 0, 0));
-      vBox.add(new HorizontalRuleBox( drt, b.getWidth(), 0));
+         // baseline vertical box = baseline box b
+         // there's also an invisible strut of height drt under the rule
+         vBox.setDepth(b.getDepth() + 5 * drt);
+         vBox.setHeight(b.getHeight());
 
-      // baseline vertical box = baseline box b
-      // there's also an invisible strut of height drt under the rule
-      vBox.setDepth(b.getDepth() + 5 * drt);
-      vBox.setHeight(b.getHeight());
+         stack.finish( vBox );
+      } );
+   }
+
+   @Override
+   protected void visitChildren( final Consumer<Atom> action ) {
+      visit( base, action );
+   }
 
-      return vBox;
+   @Override
+   protected boolean describe( final CanonicalWriter w ) {
+      w.begin( "underline", type ).child( base );
+      return true;
    }
 }
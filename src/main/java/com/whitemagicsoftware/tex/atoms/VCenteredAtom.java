@@ -32,6 +32,8 @@ import com.whitemagicsoftware.tex.boxes.Box;
 import com.whitemagicsoftware.tex.boxes.HorizontalBox;
 import com.whitemagicsoftware.tex.TeXEnvironment;
 
+import java.util.function.Consumer;
+
 /**
  * An atom representing another atom vertically centered with respect to the axis 
  * (determined by a general TeXFont parameter)
@@ -46,15 +48,31 @@ public class VCenteredAtom extends Atom {
    }
 
    public Box createBox( TeXEnvironment env) {
-      Box b = atom.createBox(env);
+      return LayoutStack.layout( this, env );
+   }
+
+   @Override
+   protected void layout( final LayoutStack stack, final TeXEnvironment env ) {
+      stack.request( atom, env, b -> {
+         float total = b.getHeight() + b.getDepth(), axis = env.getTeXFont()
+               .getAxisHeight(env.getStyle());
+
+         // center on axis
+         b.setShift(-(total / 2) - axis);
 
-      float total = b.getHeight() + b.getDepth(), axis = env.getTeXFont()
-            .getAxisHeight(env.getStyle());
+         // put in horizontal box, so shifting will be vertically!
+         stack.finish( new HorizontalBox( b) );
+      } );
+   }
+
+   @Override
+   protected void visitChildren( final Consumer<Atom> action ) {
+      visit( atom, action );
+   }
 
-      // center on axis
-      b.setShift(-(total / 2) - axis);
-      
-      // put in horizontal box, so shifting will be vertically!
-      return new HorizontalBox( b);
+   @Override
+   protected boolean describe( final CanonicalWriter w ) {
+      w.begin( "vcenter", type ).child( atom );
+      return true;
    }
 }
@@ -29,46 +29,26 @@
 package com.whitemagicsoftware.tex.boxes;
 
 import java.awt.*;
-import java.awt.geom.Rectangle2D;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.function.Consumer;
 
 /**
  * An abstract graphical representation of a formula, that can be painted. All characters, font
  * sizes, positions are fixed. Only special Glue boxes could possibly stretch or shrink.
- * A box has 3 dimensions (width, height and depth), can be composed of other child boxes
- * that can possibly be shifted (up, down, left or right). Child boxes can also be positioned
- * outside their parent's box (defined by it's dimensions).
+ * A box has 3 dimensions (width, height and depth) and a shift amount (up, down, left or
+ * right). Boxes that are composed of child boxes extend {@link ContainerBox}; leaf boxes
+ * carry nothing beyond their dimensions. Child boxes can also be positioned outside their
+ * parent's box (defined by it's dimensions).
  * <p>
- * Subclasses must implement the abstract {@link #draw(Graphics2D, float, float)} method
- * (that paints the box). <b> This implementation must start with calling the method
- * {@link #startDraw(Graphics2D, float, float)} and end with calling the method
- * {@link #endDraw(Graphics2D)} to set and restore the color's that must be used for
- * painting the box and to draw the background!</b> They must also implement the abstract
- * {@link #getLastFontId()} method (the last font
+ * Subclasses may override the {@link #draw(Graphics2D, float, float)} method
+ * (that paints the box) and the {@link #getLastFontId()} method (the last font
  * that will be used when this box will be painted).
  */
 public abstract class Box {
 
    public static final int NO_FONT = -1;
 
-   /**
-    * The foreground color of the whole box. Child boxes can override this color.
-    * If it's null and it has a parent box, the foreground color of the parent will
-    * be used. If it has no parent, the foreground color of the component on which it
-    * will be painted, will be used.
-    */
-   protected Color foreground;
-
-   /**
-    * The background color of the whole box. Child boxes can paint a background on top of
-    * this background. If it's null, no background will be painted.
-    */
-   protected Color background;
-
-   // used temporarily in startDraw and endDraw
-   private Color prevColor;
-
    /**
     * The width of this box, i.e. the value that will be used for further
     * calculations.
@@ -94,47 +74,9 @@ public abstract class Box {
    protected float shift;
 
    /**
-    * List of child boxes
-    */
-   protected List<Box> children = new LinkedList<>();
-
-   /**
-    * Creates an empty box (no children) with all dimensions set to 0 and no
-    * foreground and background color set (default values will be used: null)
+    * Creates an empty box with all dimensions set to 0.
     */
    protected Box() {
-      this (null, null);
-   }
-
-   /**
-    * Creates an empty box (no children) with all dimensions set to 0 and sets
-    * the foreground and background color of the box.
-    *
-    * @param fg the foreground color
-    * @param bg the background color
-    */
-   protected Box(final Color fg, final Color bg) {
-      foreground = fg;
-      background = bg;
-   }
-
-   /**
-    * Inserts the given box at the end of the list of child boxes.
-    *
-    * @param b the box to be inserted
-    */
-   public void add(final Box b) {
-      children.add(b);
-   }
-
-   /**
-    * Inserts the given box at the given position in the list of child boxes.
-    *
-    * @param pos the position at which to insert the given box
-    * @param b the box to be inserted
-    */
-   public void add(final int pos, final Box b) {
-      children.add(pos, b);
    }
 
    /**
@@ -220,6 +162,57 @@ public abstract class Box {
    public void draw( final Graphics2D g, final float x, final float y ) {
    }
 
+   /**
+    * Answers whether this box is composed of child boxes that it positions
+    * using {@link #start}, {@link #nextChild}, {@link #childDrawn}, and
+    * {@link #finish}, so that a {@link BoxPainter} can draw them without
+    * recursion. Such boxes draw themselves using a {@link BoxPainter}.
+    *
+    * @return {@code false} by default, for boxes that draw themselves
+    */
+   boolean isComposite() {
+      return false;
+   }
+
+   /**
+    * Prepares to draw the children, such as by setting colors.
+    *
+    * @param g the graphics (2D) context to use for painting
+    * @param f the position of this box, and where to keep drawing state
+    */
+   void start( final Graphics2D g, final BoxPainter.Frame f ) {
+   }
+
+   /**
+    * Returns the next child to draw, after storing its position in the
+    * frame.
+    *
+    * @param g the graphics (2D) context to use for painting
+    * @param f the position of this box, and its drawing state
+    * @return the next child, or {@code null} once all have been drawn
+    */
+   Box nextChild( final Graphics2D g, final BoxPainter.Frame f ) {
+      return null;
+   }
+
+   /**
+    * Called once the child last returned by {@link #nextChild} is drawn.
+    *
+    * @param g the graphics (2D) context to use for painting
+    * @param f the position of this box, and its drawing state
+    */
+   void childDrawn( final Graphics2D g, final BoxPainter.Frame f ) {
+   }
+
+   /**
+    * Restores what {@link #start} changed, once all children are drawn.
+    *
+    * @param g the graphics (2D) context to use for painting
+    * @param f the position of this box, and its drawing state
+    */
+   void finish( final Graphics2D g, final BoxPainter.Frame f ) {
+   }
+
    /**
     * Get the id of the font that will be used the last when this box will be
     * painted.
@@ -231,34 +224,39 @@ public abstract class Box {
    }
 
    /**
-    * Stores the old color setting, draws the background of the box (if not null)
-    * and sets the foreground color (if not null).
+    * Passes this box, then every box it contains, to the given action. The
+    * tree is walked using an explicit stack, so deep trees can't exhaust the
+    * call stack.
     *
-    * @param g the graphics (2D) context
-    * @param x the x-coordinate
-    * @param y the y-coordinate
+    * @param action receives each box of the tree rooted at this box
     */
-   protected void startDraw(
-       final Graphics2D g, final float x, final float y ) {
-      prevColor = g.getColor();
+   public final void visit( final Consumer<Box> action ) {
+      final ArrayDeque<Box> pending = new ArrayDeque<>();
+      final ArrayList<Box> children = new ArrayList<>();
+      final Consumer<Box> collect = children::add;
 
-      if( background != null ) {
-         g.setColor( background );
-         g.fill( new Rectangle2D.Float(
-             x, y - height, getWidth(), getHeight() + getDepth() )
-         );
-      }
+      pending.push( this );
 
-      g.setColor( foreground == null ? prevColor : foreground );
+      while( !pending.isEmpty() ) {
+         final Box box = pending.pop();
+         action.accept( box );
+
+         children.clear();
+         box.visitChildren( collect );
+
+         for( int i = children.size() - 1; i >= 0; i-- ) {
+            pending.push( children.get( i ) );
+         }
+      }
    }
 
    /**
-    * Restores the previous color setting.
+    * Passes each child box, in order, to the given action. Boxes that
+    * contain other boxes must override this method.
     *
-    * @param g the graphics (2D) context
+    * @param action receives each child box
     */
-   protected void endDraw(final Graphics2D g) {
-      g.setColor(prevColor);
+   protected void visitChildren( final Consumer<Box> action ) {
    }
 
    @Override
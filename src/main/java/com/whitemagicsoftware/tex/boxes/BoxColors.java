@@ -0,0 +1,83 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.boxes;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * The foreground and background color of a box. Few boxes are colored, so
+ * boxes refer to an instance of this class only when a color was set,
+ * rather than every box carrying its own color fields.
+ */
+final class BoxColors {
+  /**
+   * The foreground color of the whole box. Child boxes can override this
+   * color. If it's null, the foreground color of the parent will be used.
+   */
+  private final Color mForeground;
+
+  /**
+   * The background color of the whole box. Child boxes can paint a background
+   * on top of this background. If it's null, no background will be painted.
+   */
+  private final Color mBackground;
+
+  private BoxColors( final Color fg, final Color bg ) {
+    mForeground = fg;
+    mBackground = bg;
+  }
+
+  /**
+   * Returns the colors to use for a box.
+   *
+   * @param fg the foreground color, may be null
+   * @param bg the background color, may be null
+   * @return null if neither color is set.
+   */
+  static BoxColors of( final Color fg, final Color bg ) {
+    return fg == null && bg == null ? null : new BoxColors( fg, bg );
+  }
+
+  /**
+   * Draws the background (if not null) and sets the foreground color (if not
+   * null).
+   *
+   * @param g the graphics (2D) context
+   * @param b the box being drawn
+   * @param x the x-coordinate
+   * @param y the y-coordinate
+   * @return the previous color, to be restored after drawing the box.
+   */
+  Color apply( final Graphics2D g, final Box b, final float x, final float y ) {
+    final var prevColor = g.getColor();
+
+    if( mBackground != null ) {
+      g.setColor( mBackground );
+      g.fill( new Rectangle2D.Float(
+          x, y - b.height, b.getWidth(), b.getHeight() + b.getDepth() )
+      );
+    }
+
+    g.setColor( mForeground == null ? prevColor : mForeground );
+
+    return prevColor;
+  }
+}
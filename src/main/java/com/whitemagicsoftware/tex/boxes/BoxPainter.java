@@ -0,0 +1,153 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.boxes;
+
+import com.whitemagicsoftware.tex.Cancellation;
+
+import java.awt.*;
+
+import static java.util.Arrays.copyOf;
+
+/**
+ * Draws a tree of boxes using an explicit stack, so that deeply nested
+ * formulas can be drawn on small stacks (such as those of virtual threads).
+ * Boxes composed of other boxes take part by overriding
+ * {@link Box#isComposite()} and the hooks that position their children;
+ * the painter then draws the children, descending into composite children
+ * instead of calling their {@link Box#draw(Graphics2D, float, float)}
+ * method. All other boxes draw themselves.
+ * <p>
+ * The {@link Cancellation} applied to the graphics context, if any, is
+ * checked before each composite box is drawn.
+ * </p>
+ */
+final class BoxPainter {
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * The drawing of a composite box, interrupted to draw one of its
+   * composite children.
+   */
+  static final class Frame {
+    /**
+     * The box being drawn, at the position given by {@link #x} and
+     * {@link #y}.
+     */
+    Box box;
+    float x;
+    float y;
+
+    /**
+     * Number of children positioned so far.
+     */
+    int index;
+
+    /**
+     * Where the next child goes, such as along the baseline.
+     */
+    float cursor;
+
+    /**
+     * Graphics state to restore once the box is drawn.
+     */
+    Object saved;
+
+    /**
+     * Position of the child most recently returned by
+     * {@link Box#nextChild(Graphics2D, Frame)}.
+     */
+    float childX;
+    float childY;
+  }
+
+  private final Graphics2D mGraphics;
+  private final Cancellation mCancellation;
+
+  /**
+   * Frames are kept for reuse, only the first {@link #mDepth} are in use.
+   */
+  private Frame[] mFrames = new Frame[ INITIAL_CAPACITY ];
+  private int mDepth;
+
+  BoxPainter( final Graphics2D g ) {
+    mGraphics = g;
+    mCancellation = Cancellation.of( g );
+  }
+
+  /**
+   * Draws the tree rooted at the given composite box.
+   *
+   * @param root the box to draw
+   * @param x    the x-coordinate
+   * @param y    the y-coordinate
+   */
+  void draw( final Box root, final float x, final float y ) {
+    final var g = mGraphics;
+
+    push( root, x, y );
+
+    while( mDepth > 0 ) {
+      final Frame frame = mFrames[ mDepth - 1 ];
+      final Box parent = frame.box;
+      final Box child = parent.nextChild( g, frame );
+
+      if( child == null ) {
+        parent.finish( g, frame );
+        frame.box = null;
+        frame.saved = null;
+
+        if( --mDepth > 0 ) {
+          final Frame outer = mFrames[ mDepth - 1 ];
+          outer.box.childDrawn( g, outer );
+        }
+      }
+      else if( child.isComposite() ) {
+        push( child, frame.childX, frame.childY );
+      }
+      else {
+        child.draw( g, frame.childX, frame.childY );
+        parent.childDrawn( g, frame );
+      }
+    }
+  }
+
+  private void push( final Box box, final float x, final float y ) {
+    if( mCancellation != null ) {
+      mCancellation.check();
+    }
+
+    if( mDepth == mFrames.length ) {
+      mFrames = copyOf( mFrames, mDepth << 1 );
+    }
+
+    Frame frame = mFrames[ mDepth ];
+
+    if( frame == null ) {
+      mFrames[ mDepth ] = frame = new Frame();
+    }
+
+    mDepth++;
+    frame.box = box;
+    frame.x = x;
+    frame.y = y;
+    frame.index = 0;
+    box.start( mGraphics, frame );
+  }
+}
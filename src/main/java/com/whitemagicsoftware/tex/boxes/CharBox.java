@@ -30,6 +30,7 @@ package com.whitemagicsoftware.tex.boxes;
 
 import com.whitemagicsoftware.tex.Char;
 import com.whitemagicsoftware.tex.FontInfo;
+import com.whitemagicsoftware.tex.graphics.AbstractGraphics2D;
 
 import java.awt.*;
 
@@ -75,8 +76,16 @@ public final class CharBox extends Box {
       g.scale( size / FONT_SCALE_FACTOR, size / FONT_SCALE_FACTOR );
     }
 
-    g.setFont( FontInfo.getFont( c.getFontId() ) );
-    g.drawChars( new char[]{c.getChar()}, 0, 1, 0, 0 );
+    final var outlines = FontInfo.getOutlines( c.getFontId() );
+
+    if( outlines != null && g instanceof AbstractGraphics2D ) {
+      // Avoids loading the platform font for vector output.
+      ((AbstractGraphics2D) g).drawGlyph( outlines, c.getChar(), 0, 0 );
+    }
+    else {
+      g.setFont( FontInfo.getFont( c.getFontId() ) );
+      g.drawChars( new char[]{c.getChar()}, 0, 1, 0, 0 );
+    }
     g.setTransform( at );
   }
 
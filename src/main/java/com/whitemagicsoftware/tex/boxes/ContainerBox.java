@@ -0,0 +1,182 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.boxes;
+
+import java.awt.*;
+import java.util.function.Consumer;
+
+import static java.lang.System.arraycopy;
+import static java.util.Arrays.copyOf;
+
+/**
+ * A box composed of child boxes. Only containers hold children, so that leaf
+ * boxes (characters, glue, struts, and rules) need no storage beyond their
+ * dimensions.
+ * <p>
+ * A box must be complete before it is added to a container: like the
+ * container's dimensions, its last font id is taken from each child box as
+ * the child is added.
+ * </p>
+ */
+public abstract class ContainerBox extends Box {
+
+  /**
+   * Initial number of child slots; most containers hold only a few boxes.
+   */
+  private static final int INITIAL_CAPACITY = 4;
+
+  /**
+   * Child boxes, only the first {@link #childCount} slots are used.
+   */
+  protected Box[] children = new Box[ INITIAL_CAPACITY ];
+
+  /**
+   * Number of child boxes.
+   */
+  protected int childCount;
+
+  /**
+   * Last font id of the child boxes, updated as they are added.
+   */
+  private int mLastFontId = NO_FONT;
+
+  /**
+   * Inserts the given box at the end of the list of child boxes.
+   *
+   * @param b the box to be inserted
+   */
+  public void add( final Box b ) {
+    if( childCount == children.length ) {
+      children = copyOf( children, childCount << 1 );
+    }
+
+    children[ childCount++ ] = b;
+
+    final int fontId = b.getLastFontId();
+
+    if( fontId != NO_FONT ) {
+      mLastFontId = fontId;
+    }
+  }
+
+  /**
+   * Inserts the given box at the given position in the list of child boxes.
+   *
+   * @param pos the position at which to insert the given box
+   * @param b   the box to be inserted
+   */
+  public void add( final int pos, final Box b ) {
+    if( pos < 0 || pos > childCount ) {
+      throw new IndexOutOfBoundsException(
+          "Index: " + pos + ", Size: " + childCount );
+    }
+
+    if( childCount == children.length ) {
+      children = copyOf( children, childCount << 1 );
+    }
+
+    arraycopy( children, pos, children, pos + 1, childCount - pos );
+    children[ pos ] = b;
+    childCount++;
+    mLastFontId = findLastFontId( 0, childCount );
+  }
+
+  /**
+   * Appends some of the given boxes to the list of child boxes, in order.
+   * Unlike {@link #add(Box)}, this doesn't update this box's dimensions.
+   *
+   * @param boxes the boxes to append some of
+   * @param from  index of the first box to append
+   * @param to    index after the last box to append
+   */
+  void add( final Box[] boxes, final int from, final int to ) {
+    final int count = childCount + to - from;
+
+    if( count > children.length ) {
+      children = copyOf( children, Math.max( count, childCount << 1 ) );
+    }
+
+    arraycopy( boxes, from, children, childCount, to - from );
+
+    final int fontId = findLastFontId( childCount, count );
+
+    if( fontId != NO_FONT ) {
+      mLastFontId = fontId;
+    }
+
+    childCount = count;
+  }
+
+  /**
+   * Returns the number of child boxes.
+   *
+   * @return the number of boxes added to this container.
+   */
+  public int getSize() {
+    return childCount;
+  }
+
+  /**
+   * Returns the last font id of the child boxes that's not equal to
+   * {@link Box#NO_FONT}, as found when they were added.
+   *
+   * @return {@link Box#NO_FONT} if there's no font ID in this
+   * {@link Box}'s list of child instances.
+   */
+  @Override
+  public int getLastFontId() {
+    return mLastFontId;
+  }
+
+  /**
+   * Iterates from the child box before the given end down to the given start
+   * until a font id is found that's not equal to {@link Box#NO_FONT}.
+   */
+  private int findLastFontId( final int from, final int to ) {
+    int fontId = NO_FONT;
+
+    for( int i = to - 1; fontId == NO_FONT && i >= from; i-- ) {
+      fontId = children[ i ].getLastFontId();
+    }
+
+    return fontId;
+  }
+
+  /**
+   * Draws the child boxes using a {@link BoxPainter}, which positions them
+   * using {@link #start}, {@link #nextChild}, and {@link #finish}.
+   */
+  @Override
+  public void draw( final Graphics2D g, final float x, final float y ) {
+    new BoxPainter( g ).draw( this, x, y );
+  }
+
+  @Override
+  boolean isComposite() {
+    return true;
+  }
+
+  @Override
+  protected void visitChildren( final Consumer<Box> action ) {
+    for( int i = 0; i < childCount; i++ ) {
+      action.accept( children[ i ] );
+    }
+  }
+}
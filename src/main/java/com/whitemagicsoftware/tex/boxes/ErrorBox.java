@@ -0,0 +1,59 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.boxes;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * A box drawn as a red frame, marking the place where the source text could
+ * not be parsed.
+ */
+public final class ErrorBox extends Box {
+  private static final Color COLOR = Color.RED;
+
+  private final float mThickness;
+
+  /**
+   * @param width     width of the frame
+   * @param height    height of the frame above the baseline
+   * @param thickness thickness of the frame's lines
+   */
+  public ErrorBox( final float width, final float height,
+                   final float thickness ) {
+    this.width = width;
+    this.height = height;
+    mThickness = thickness;
+  }
+
+  @Override
+  public void draw( final Graphics2D g, final float x, final float y ) {
+    final var prevColor = g.getColor();
+    final float t = mThickness;
+    final float top = y - height;
+
+    g.setColor( COLOR );
+    g.fill( new Rectangle2D.Float( x, top, width, t ) );
+    g.fill( new Rectangle2D.Float( x, y - t, width, t ) );
+    g.fill( new Rectangle2D.Float( x, top, t, height ) );
+    g.fill( new Rectangle2D.Float( x + width - t, top, t, height ) );
+    g.setColor( prevColor );
+  }
+}
@@ -29,7 +29,8 @@
 package com.whitemagicsoftware.tex.boxes;
 
 /**
- * A box representing glue.
+ * A box representing glue. Glue boxes are immutable so that a single
+ * instance can be shared by every layout that needs the same amount of space.
  */
 public final class GlueBox extends Box {
 
@@ -41,4 +42,27 @@ public final class GlueBox extends Box {
     this.width = space;
   }
 
+  @Override
+  public void setWidth( final float w ) {
+    throw immutable();
+  }
+
+  @Override
+  public void setHeight( final float h ) {
+    throw immutable();
+  }
+
+  @Override
+  public void setDepth( final float d ) {
+    throw immutable();
+  }
+
+  @Override
+  public void setShift( final float s ) {
+    throw immutable();
+  }
+
+  private static UnsupportedOperationException immutable() {
+    return new UnsupportedOperationException( "Glue boxes are shared" );
+  }
 }
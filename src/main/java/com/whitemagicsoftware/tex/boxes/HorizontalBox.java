@@ -31,7 +31,6 @@ package com.whitemagicsoftware.tex.boxes;
 import com.whitemagicsoftware.tex.TeXConstants;
 
 import java.awt.*;
-import java.util.ListIterator;
 
 import static java.lang.Float.NEGATIVE_INFINITY;
 import static java.lang.Math.max;
@@ -39,19 +38,27 @@ import static java.lang.Math.max;
 /**
  * A box composed of a horizontal row of child boxes.
  */
-public final class HorizontalBox extends Box {
+public final class HorizontalBox extends ContainerBox {
+
+  /**
+   * Colors to draw this box with, or null to inherit them.
+   */
+  private final BoxColors mColors;
 
   /**
    * Basic horizontal box.
    */
   public HorizontalBox() {
+    mColors = null;
   }
 
   public HorizontalBox( final Box b ) {
+    mColors = null;
     add( b );
   }
 
   public HorizontalBox( final Box b, final float w, final int alignment ) {
+    mColors = null;
     final float rest = w - b.getWidth();
     switch( alignment ) {
       case TeXConstants.ALIGN_CENTER:
@@ -73,18 +80,41 @@ public final class HorizontalBox extends Box {
     }
   }
 
+  /**
+   * @param fg the foreground color, or null to inherit the parent's color
+   * @param bg the background color, or null for no background
+   */
   public HorizontalBox( final Color fg, final Color bg ) {
-    super( fg, bg );
+    mColors = BoxColors.of( fg, bg );
+  }
+
+  @Override
+  void start( final Graphics2D g, final BoxPainter.Frame f ) {
+    if( mColors != null ) {
+      f.saved = mColors.apply( g, this, f.x, f.y );
+    }
+
+    f.cursor = f.x;
+  }
+
+  @Override
+  Box nextChild( final Graphics2D g, final BoxPainter.Frame f ) {
+    if( f.index == childCount ) {
+      return null;
+    }
+
+    final Box box = children[ f.index++ ];
+    f.childX = f.cursor;
+    f.childY = f.y + box.shift;
+    f.cursor += box.width;
+    return box;
   }
 
-  public void draw( final Graphics2D g, final float x, final float y ) {
-    startDraw( g, x, y );
-    float xPos = x;
-    for( final Box box : children ) {
-      box.draw( g, xPos, y + box.getShift() );
-      xPos += box.getWidth();
+  @Override
+  void finish( final Graphics2D g, final BoxPainter.Frame f ) {
+    if( mColors != null ) {
+      g.setColor( (Color) f.saved );
     }
-    endDraw( g );
   }
 
   public final void add( final Box b ) {
@@ -92,31 +122,45 @@ public final class HorizontalBox extends Box {
     super.add( b );
   }
 
-  private void recalculate( final Box b ) {
-    width += b.getWidth();
-    height = max( children.size() == 0 ? NEGATIVE_INFINITY : height,
-                  b.height - b.shift );
-    depth = max( children.size() == 0 ? NEGATIVE_INFINITY : depth,
-                 b.depth + b.shift );
-  }
-
   /**
-   * Iterates from the last child box (the lowest) to the first (the highest)
-   * until a font id is found that's not equal to {@link Box#NO_FONT}.
+   * Appends some of another horizontal box's child boxes, as if each were
+   * added in turn, without reading their dimensions.
    *
-   * @return {@link Box#NO_FONT} if there's no font ID in this
-   * {@link Box}'s list of child instances.
+   * @param box    the box whose child boxes to append
+   * @param from   index of the first child box to append
+   * @param to     index after the last child box to append
+   * @param widths the width of each of the other box's child boxes
+   * @param height the greatest height of the appended boxes above the
+   *               baseline, taking their shifts into account
+   * @param depth  the greatest depth of the appended boxes below the
+   *               baseline, taking their shifts into account
    */
-  @Override
-  public int getLastFontId() {
-    int fontId = NO_FONT;
+  public final void add( final HorizontalBox box, final int from, final int to,
+                         final float[] widths, final float height,
+                         final float depth ) {
+    if( from == to ) {
+      return;
+    }
 
-    final ListIterator<Box> it = children.listIterator( children.size() );
+    float w = width;
 
-    while( fontId == NO_FONT && it.hasPrevious() ) {
-      fontId = it.previous().getLastFontId();
+    for( int i = from; i < to; i++ ) {
+      w += widths[ i ];
     }
 
-    return fontId;
+    width = w;
+    this.height = max( childCount == 0 ? NEGATIVE_INFINITY : this.height,
+                       height );
+    this.depth = max( childCount == 0 ? NEGATIVE_INFINITY : this.depth,
+                      depth );
+    add( box.children, from, to );
+  }
+
+  private void recalculate( final Box b ) {
+    width += b.getWidth();
+    height = max( childCount == 0 ? NEGATIVE_INFINITY : height,
+                  b.height - b.shift );
+    depth = max( childCount == 0 ? NEGATIVE_INFINITY : depth,
+                 b.depth + b.shift );
   }
 }
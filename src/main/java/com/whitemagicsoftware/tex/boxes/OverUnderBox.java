@@ -30,6 +30,7 @@ package com.whitemagicsoftware.tex.boxes;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
+import java.util.function.Consumer;
 
 /**
  * A box representing another box with a delimiter box and a script box above
@@ -78,41 +79,62 @@ public final class OverUnderBox extends Box {
             + (!over && script == null ? 0 : script.height + script.depth + kern);
    }
 
-   public void draw( Graphics2D g, float x, float y ) {
-      base.draw( g, x, y);
-
-      float yVar = y - base.height;
-      if (over) { // draw delimiter and script above base box
-         double transX = x + del.getWidth() / 2, transY = yVar - del.getWidth()
-               / 2;
-         AffineTransform oldAt = g.getTransform();
-         g.translate( transX, transY);
-         g.rotate( Math.PI / 2);
-         del.draw( g, -del.getWidth() / 2, -del.depth + del.getWidth() / 2);
-         g.setTransform( oldAt);
-         yVar -= del.getWidth();
-
-         // draw superscript
-         if (script != null)
-            script.draw( g, x, yVar - kern - script.depth);
-      }
+   /**
+    * Draws the base, the delimiter (rotated), and the script using a
+    * {@link BoxPainter}.
+    */
+   @Override
+   public void draw( final Graphics2D g, final float x, final float y ) {
+      new BoxPainter( g ).draw( this, x, y );
+   }
 
-      yVar = y + base.depth;
-      if (!over) { // draw delimiter and script under base box
-         yVar += del.getWidth();
-         double transX = x + del.getWidth() / 2, transY = yVar - del.getWidth()
-               / 2;
-         AffineTransform oldAt = g.getTransform();
-         g.translate( transX, transY);
-         g.rotate( Math.PI / 2);
-         del.draw( g, -del.getWidth() / 2, -del.depth + del.getWidth() / 2);
-         g.setTransform( oldAt);
-
-         // draw subscript
-         if (script != null)
-            script.draw( g, x, yVar + kern + script.height);
+   @Override
+   boolean isComposite() {
+      return true;
+   }
+
+   @Override
+   Box nextChild( final Graphics2D g, final BoxPainter.Frame f ) {
+      final float w = del.getWidth();
+
+      switch( f.index++ ) {
+         case 0:
+            f.childX = f.x;
+            f.childY = f.y;
+            return base;
+
+         case 1:
+            // the delimiter is drawn rotated, and the transform restored
+            // once it's drawn
+            final float yVar = over ? f.y - base.height : f.y + base.depth + w;
+            f.saved = g.getTransform();
+            g.translate( f.x + w / 2, yVar - w / 2 );
+            g.rotate( Math.PI / 2 );
+            f.childX = -w / 2;
+            f.childY = -del.depth + w / 2;
+            return del;
+
+         case 2:
+            if( script == null ) {
+               return null;
+            }
+
+            f.childX = f.x;
+            f.childY = over
+                ? f.y - base.height - w - kern - script.depth
+                : f.y + base.depth + w + kern + script.height;
+            return script;
+
+         default:
+            return null;
       }
+   }
 
+   @Override
+   void childDrawn( final Graphics2D g, final BoxPainter.Frame f ) {
+      if( f.index == 2 ) {
+         g.setTransform( (AffineTransform) f.saved );
+      }
    }
 
    public int getLastFontId() {
@@ -126,4 +148,14 @@ public final class OverUnderBox extends Box {
           ", over=" + over +
           '}';
    }
+
+   @Override
+   protected void visitChildren( final Consumer<Box> action ) {
+      action.accept( base );
+      action.accept( del );
+
+      if( script != null ) {
+         action.accept( script );
+      }
+   }
 }
@@ -38,7 +38,7 @@ import static java.lang.Math.min;
 /**
  * A box composed of other boxes, put one above the other.
  */
-public class VerticalBox extends Box {
+public class VerticalBox extends ContainerBox {
 
   private float leftMostPos = Float.MAX_VALUE;
   private float rightMostPos = Float.MIN_VALUE; // NOPMD
@@ -72,7 +72,7 @@ public class VerticalBox extends Box {
 
   public final void add( final Box b ) {
     super.add( b );
-    if( children.size() == 1 ) {
+    if( childCount == 1 ) {
       height = b.height;
       depth = b.depth;
     }
@@ -100,36 +100,33 @@ public class VerticalBox extends Box {
     width = rightMostPos - leftMostPos;
   }
 
-  public void draw( final Graphics2D g, final float x, final float y ) {
-    float yPos = y - height;
-    for( final Box b : children ) {
-      yPos += b.getHeight();
-      b.draw( g, x + b.getShift() - leftMostPos, yPos );
-      yPos += b.getDepth();
-    }
+  /**
+   * Subclasses outside this package may override
+   * {@link #draw(Graphics2D, float, float)}, so only this class and
+   * {@link OverBar} are drawn by positioning their children.
+   */
+  @Override
+  boolean isComposite() {
+    final Class<?> c = getClass();
+    return c == VerticalBox.class || c == OverBar.class;
   }
 
-  public int getSize() {
-    return children.size();
+  @Override
+  void start( final Graphics2D g, final BoxPainter.Frame f ) {
+    f.cursor = f.y - height;
   }
 
-  /**
-   * Iterates from the last child box (the lowest) to the first (the
-   * highest) until a font id is found that's not equal to
-   * {@link Box#NO_FONT}.
-   *
-   * @return {@link Box#NO_FONT} if there's no font ID in this
-   * {@link Box}'s list of child instances.
-   */
   @Override
-  public int getLastFontId() {
-    int fontId = NO_FONT;
-    final var it = children.listIterator( children.size() );
-    while( fontId == NO_FONT && it.hasPrevious() ) {
-      fontId = it.previous().getLastFontId();
+  Box nextChild( final Graphics2D g, final BoxPainter.Frame f ) {
+    if( f.index == childCount ) {
+      return null;
     }
 
-    return fontId;
+    final Box b = children[ f.index++ ];
+    f.childX = f.x + b.shift - leftMostPos;
+    f.childY = f.cursor + b.height;
+    f.cursor = f.childY + b.depth;
+    return b;
   }
 
   @Override
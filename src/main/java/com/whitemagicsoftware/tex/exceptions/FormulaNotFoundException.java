@@ -28,8 +28,6 @@
 
 package com.whitemagicsoftware.tex.exceptions;
 
-import com.whitemagicsoftware.tex.parsers.PredefinedTeXFormulaParser;
-
 /**
  * Signals that unknown predefined TeXFormula name was used.
  * 
@@ -38,9 +36,7 @@ import com.whitemagicsoftware.tex.parsers.PredefinedTeXFormulaParser;
 public class FormulaNotFoundException extends JMathTeXException {
 
    public FormulaNotFoundException(String name) {
-      super("There's no predefined TeXFormula with the name '" + name
-            + "' defined in '" + PredefinedTeXFormulaParser.RESOURCE_NAME
-            + "'");
+      super("There's no predefined TeXFormula with the name '" + name + "'");
    }
 
 }
@@ -25,6 +25,7 @@ import java.awt.*;
 import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphVector;
 import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
 import java.awt.image.BufferedImage;
 import java.awt.image.BufferedImageOp;
 import java.awt.image.ImageObserver;
@@ -35,6 +36,7 @@ import java.util.Map;
 
 import static com.whitemagicsoftware.tex.graphics.RyuDouble.doubleToString;
 import static java.awt.Color.BLACK;
+import static java.lang.String.format;
 
 /**
  * Allows subclasses to implement only those methods that are necessary
@@ -52,10 +54,12 @@ public abstract class AbstractGraphics2D extends Graphics2D {
   private static final int DECIMALS_TRANSFORM = 6;
 
   private Color mColour = BLACK;
+  private String mFill;
   private Font mFont = new Font( "Default", Font.PLAIN, 12 );
   private AffineTransform mAffineTransform = new AffineTransform();
   private final FontRenderContext mRenderContext =
       new FontRenderContext( null, false, true );
+  private final RenderingHints mHints = new RenderingHints( null );
 
   /**
    * Resets the SVG buffer to a new state. One of the {@link #initialize}
@@ -100,6 +104,47 @@ public abstract class AbstractGraphics2D extends Graphics2D {
     drawString( glyphs, (float) x, (float) y );
   }
 
+  /**
+   * Draws a character's glyph using outlines read directly from the font
+   * file, which avoids initializing the platform's font machinery. The
+   * outline is identical to the one {@link #drawString(String, float, float)}
+   * fills for the same font.
+   *
+   * @param font Glyph outlines of the font to draw with.
+   * @param c    The character to draw.
+   * @param x    Horizontal position of the glyph's origin.
+   * @param y    Baseline position of the glyph's origin.
+   */
+  public void drawGlyph(
+      final TrueTypeFont font, final char c, final float x, final float y ) {
+    final var path = new Path2D.Float();
+
+    font.outline( c, x, y, new GlyphPath() {
+      @Override
+      public void moveTo( final float x, final float y ) {
+        path.moveTo( x, y );
+      }
+
+      @Override
+      public void lineTo( final float x, final float y ) {
+        path.lineTo( x, y );
+      }
+
+      @Override
+      public void quadTo(
+          final float cx, final float cy, final float x, final float y ) {
+        path.quadTo( cx, cy, x, y );
+      }
+
+      @Override
+      public void closePath() {
+        path.closePath();
+      }
+    } );
+
+    fill( path );
+  }
+
   @Override
   public void drawGlyphVector(
       final GlyphVector g, final float x, final float y ) {
@@ -200,6 +245,20 @@ public abstract class AbstractGraphics2D extends Graphics2D {
   @Override
   public void setColor( final Color colour ) {
     mColour = colour;
+    mFill = colour == null || BLACK.equals( colour )
+        ? null
+        : format( "#%06x", colour.getRGB() & 0xFFFFFF );
+  }
+
+  /**
+   * Answers the current colour as an SVG fill value, unless it is the
+   * default (black), which needs no fill attribute.
+   *
+   * @return The fill colour (e.g., {@code #ff0000}), or {@code null} when
+   * the current colour is black.
+   */
+  protected String getFill() {
+    return mFill;
   }
 
   @Override
@@ -316,27 +375,35 @@ public abstract class AbstractGraphics2D extends Graphics2D {
   public void setStroke( final Stroke s ) {
   }
 
+  /**
+   * Hints are kept, but don't affect the output. They can carry settings
+   * from the code that draws on this context to the code it calls.
+   */
   @Override
   public void setRenderingHint(
       final RenderingHints.Key hintKey, final Object hintValue ) {
+    mHints.put( hintKey, hintValue );
   }
 
   @Override
   public Object getRenderingHint( final RenderingHints.Key hintKey ) {
-    return null;
+    return mHints.get( hintKey );
   }
 
   @Override
   public void setRenderingHints( final Map<?, ?> hints ) {
+    mHints.clear();
+    mHints.putAll( hints );
   }
 
   @Override
   public void addRenderingHints( final Map<?, ?> hints ) {
+    mHints.putAll( hints );
   }
 
   @Override
   public RenderingHints getRenderingHints() {
-    return null;
+    return (RenderingHints) mHints.clone();
   }
 
   @Override
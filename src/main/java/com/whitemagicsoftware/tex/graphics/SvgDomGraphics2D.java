@@ -79,6 +79,7 @@ public final class SvgDomGraphics2D extends AbstractGraphics2D {
   private static final String ATTR_NAME_WIDTH = "width";
   private static final String ATTR_NAME_HEIGHT = "height";
   private static final String ATTR_NAME_TRANSFORM = "transform";
+  private static final String ATTR_NAME_FILL = "fill";
   private static final String ATTR_NAME_PATH_FILL_RULE = "fill-rule";
   private static final String ATTR_NAME_PATH_DATA = "d";
 
@@ -262,6 +263,12 @@ public final class SvgDomGraphics2D extends AbstractGraphics2D {
       e.setAttributeNS(
           null, ATTR_NAME_HEIGHT, toGeometryPrecision( r.getHeight() ) );
 
+      final var fill = getFill();
+
+      if( fill != null ) {
+        e.setAttributeNS( null, ATTR_NAME_FILL, fill );
+      }
+
       if( !isIdentityTransform() ) {
         e.setAttributeNS( null, ATTR_NAME_TRANSFORM, mTransform );
       }
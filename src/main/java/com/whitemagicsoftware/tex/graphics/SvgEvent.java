@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.whitemagicsoftware.tex.graphics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event for drawing and serializing one SVG document, from
+ * {@link SvgGraphics2D#initialize(int, int)} to
+ * {@link SvgGraphics2D#toString()}.
+ */
+@Name( "com.whitemagicsoftware.tex.Svg" )
+@Label( "SVG Emission" )
+@Category( "JMathTeX" )
+@Description( "Draws and serializes an SVG document" )
+final class SvgEvent extends jdk.jfr.Event {
+  @Label( "Width" )
+  int width;
+
+  @Label( "Height" )
+  int height;
+
+  @Label( "Glyphs" )
+  int glyphs;
+
+  @Label( "Path Segments" )
+  int segments;
+
+  @Label( "Output Size" )
+  @DataAmount
+  int bytes;
+}
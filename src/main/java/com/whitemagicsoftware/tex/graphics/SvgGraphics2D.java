@@ -58,11 +58,28 @@ public final class SvgGraphics2D extends AbstractGraphics2D {
    */
   private final float[] mCoords = new float[ 6 ];
 
+  /**
+   * Writes path segments as SVG path data.
+   */
+  private final GlyphPath mPathData = new PathData();
+
   /**
    * Transform attribute value, a matrix function.
    */
   private String mTransform = "";
 
+  /**
+   * Times the document being drawn, {@code null} unless a flight recording
+   * asks for it.
+   */
+  private SvgEvent mEvent;
+
+  /**
+   * Number of glyphs and path segments written to the current document.
+   */
+  private int mGlyphs;
+  private int mSegments;
+
   /**
    * Creates a new instance with a default buffer size. Client classes must
    * call {@link #initialize(int, int)} before using the class to ensure
@@ -83,13 +100,13 @@ public final class SvgGraphics2D extends AbstractGraphics2D {
 
   @Override
   public void initialize( final int w, final int h ) {
-    reset();
+    reset( w, h );
     appendDimensions( w, h );
   }
 
   @Override
   public void initialize( final int id, final int w, final int h ) {
-    reset();
+    reset( w, h );
     mSvg.append( "id='" )
         .append( id )
         .append( "' " );
@@ -98,6 +115,26 @@ public final class SvgGraphics2D extends AbstractGraphics2D {
 
   @Override
   public void draw( final Shape shape ) {
+    appendGroup();
+    appendPath( (Path2D) shape );
+    mSvg.append( "</g>" );
+  }
+
+  /**
+   * Writes the glyph's outline straight into the document, producing the
+   * same output as filling the outline's {@link Path2D}.
+   */
+  @Override
+  public void drawGlyph(
+      final TrueTypeFont font, final char c, final float x, final float y ) {
+    mGlyphs++;
+    appendGroup();
+    mSvg.append( "<path d='" );
+    font.outline( c, x, y, mPathData );
+    mSvg.append( "'/></g>" );
+  }
+
+  private void appendGroup() {
     mSvg.append( "<g" );
 
     if( !isIdentityTransform() ) {
@@ -107,16 +144,29 @@ public final class SvgGraphics2D extends AbstractGraphics2D {
     }
 
     mSvg.append( '>' );
-    appendPath( (Path2D) shape );
-    mSvg.append( "</g>" );
   }
 
   /**
    * Resets the internal buffer to start writing after the {@link #HEADER}
-   * text.
+   * text, and starts timing the new document if recording.
+   *
+   * @param w The final document width (in pixels).
+   * @param h The final document height (in pixels).
    */
-  private void reset() {
+  private void reset( final int w, final int h ) {
     mSvg.setLength( HEADER.length() );
+    mGlyphs = 0;
+    mSegments = 0;
+    mEvent = null;
+
+    final var event = new SvgEvent();
+
+    if( event.isEnabled() ) {
+      event.width = w;
+      event.height = h;
+      event.begin();
+      mEvent = event;
+    }
   }
 
   /**
@@ -147,28 +197,17 @@ public final class SvgGraphics2D extends AbstractGraphics2D {
     while( !iterator.isDone() ) {
       switch( iterator.currentSegment( mCoords ) ) {
         case 0:
-          mSvg.append( 'M' )
-              .append( toGeometryPrecision( mCoords[ 0 ] ) )
-              .append( ' ' )
-              .append( toGeometryPrecision( mCoords[ 1 ] ) );
+          mPathData.moveTo( mCoords[ 0 ], mCoords[ 1 ] );
           break;
         case 1:
-          mSvg.append( 'L' )
-              .append( toGeometryPrecision( mCoords[ 0 ] ) )
-              .append( ' ' )
-              .append( toGeometryPrecision( mCoords[ 1 ] ) );
+          mPathData.lineTo( mCoords[ 0 ], mCoords[ 1 ] );
           break;
         case 2:
-          mSvg.append( 'Q' )
-              .append( toGeometryPrecision( mCoords[ 0 ] ) )
-              .append( ' ' )
-              .append( toGeometryPrecision( mCoords[ 1 ] ) )
-              .append( ' ' )
-              .append( toGeometryPrecision( mCoords[ 2 ] ) )
-              .append( ' ' )
-              .append( toGeometryPrecision( mCoords[ 3 ] ) );
+          mPathData.quadTo( mCoords[ 0 ], mCoords[ 1 ], mCoords[ 2 ],
+                            mCoords[ 3 ] );
           break;
         case 3:
+          mSegments++;
           mSvg.append( 'C' )
               .append( toGeometryPrecision( mCoords[ 0 ] ) )
               .append( ' ' )
@@ -183,7 +222,7 @@ public final class SvgGraphics2D extends AbstractGraphics2D {
               .append( toGeometryPrecision( mCoords[ 5 ] ) );
           break;
         case 4:
-          mSvg.append( 'Z' );
+          mPathData.closePath();
           break;
       }
 
@@ -207,12 +246,19 @@ public final class SvgGraphics2D extends AbstractGraphics2D {
           .append( "' height='" )
           .append( toGeometryPrecision( rect.getHeight() ) );
 
+      final var fill = getFill();
+
+      if( fill != null ) {
+        mSvg.append( "' fill='" )
+            .append( fill );
+      }
+
       if( !isIdentityTransform() ) {
         mSvg.append( "' transform='" )
             .append( mTransform );
       }
 
-      // Double-duty: closes either height or transform.
+      // Closes the height, fill, or transform.
       mSvg.append( "'/>" );
     }
     else {
@@ -227,6 +273,68 @@ public final class SvgGraphics2D extends AbstractGraphics2D {
     mTransform = toString( at );
   }
 
+  /**
+   * Appends path segments to the document.
+   */
+  private final class PathData implements GlyphPath {
+    @Override
+    public void moveTo( final float x, final float y ) {
+      mSegments++;
+      mSvg.append( 'M' )
+          .append( toGeometryPrecision( x ) )
+          .append( ' ' )
+          .append( toGeometryPrecision( y ) );
+    }
+
+    @Override
+    public void lineTo( final float x, final float y ) {
+      mSegments++;
+      mSvg.append( 'L' )
+          .append( toGeometryPrecision( x ) )
+          .append( ' ' )
+          .append( toGeometryPrecision( y ) );
+    }
+
+    @Override
+    public void quadTo(
+        final float cx, final float cy, final float x, final float y ) {
+      mSegments++;
+      mSvg.append( 'Q' )
+          .append( toGeometryPrecision( cx ) )
+          .append( ' ' )
+          .append( toGeometryPrecision( cy ) )
+          .append( ' ' )
+          .append( toGeometryPrecision( x ) )
+          .append( ' ' )
+          .append( toGeometryPrecision( y ) );
+    }
+
+    @Override
+    public void closePath() {
+      mSegments++;
+      mSvg.append( 'Z' );
+    }
+  }
+
+  /**
+   * Answers the number of glyphs written to the current document.
+   *
+   * @return The glyph count since the document was initialized.
+   */
+  public int getGlyphs() {
+    return mGlyphs;
+  }
+
+  /**
+   * Answers the number of path segments (moves, lines, curves, and closes)
+   * written to the current document.
+   *
+   * @return The segment count since the document was initialized.
+   */
+  public int getSegments() {
+    return mSegments;
+  }
+
   /**
    * Call when no more graphics operations are pending and the content is safe
    * to convert to an SVG representation. This is <em>not</em> idempotent;
@@ -238,6 +346,18 @@ public final class SvgGraphics2D extends AbstractGraphics2D {
    */
   @Override
   public String toString() {
-    return mSvg.append( "</svg>" ).toString();
+    final var svg = mSvg.append( "</svg>" ).toString();
+    final var event = mEvent;
+
+    if( event != null ) {
+      // The document is ASCII, one byte per character.
+      event.bytes = svg.length();
+      event.glyphs = mGlyphs;
+      event.segments = mSegments;
+      event.commit();
+      mEvent = null;
+    }
+
+    return svg;
   }
 }
@@ -0,0 +1,513 @@
+/*
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a
+ * copy of this software and associated documentation files (the "Software"),
+ * to deal in the Software without restriction, including without limitation
+ * the rights to use, copy, modify, merge, publish, distribute, sublicense,
+ * and/or sell copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL
+ * THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER
+ * DEALINGS IN THE SOFTWARE.
+ */
+package com.whitemagicsoftware.tex.graphics;
+
+import java.nio.ByteBuffer;
+
+import static java.util.Arrays.copyOf;
+
+/**
+ * Reads glyph outlines directly from the {@code cmap}, {@code loca}, and
+ * {@code glyf} tables of a TrueType font, without involving the platform's
+ * font machinery. Only what the bundled fonts need is supported: a Unicode
+ * (format 4) character map and unhinted simple and composite glyphs.
+ * <p>
+ * Outlines are scaled to the given font size and, like the platform's font
+ * scaler, rounded to 1/64 of a pixel. Instances are immutable and may be
+ * shared between threads.
+ * </p>
+ */
+public final class TrueTypeFont {
+  private static final int TAG_CMAP = 0x636D6170;
+  private static final int TAG_GLYF = 0x676C7966;
+  private static final int TAG_HEAD = 0x68656164;
+  private static final int TAG_LOCA = 0x6C6F6361;
+  private static final int TAG_MAXP = 0x6D617870;
+
+  private static final int ON_CURVE = 0x01;
+  private static final int X_SHORT = 0x02;
+  private static final int Y_SHORT = 0x04;
+  private static final int REPEAT = 0x08;
+  private static final int X_SAME = 0x10;
+  private static final int Y_SAME = 0x20;
+
+  private static final int ARG_WORDS = 0x0001;
+  private static final int ARGS_ARE_XY = 0x0002;
+  private static final int HAVE_SCALE = 0x0008;
+  private static final int MORE_COMPONENTS = 0x0020;
+  private static final int HAVE_XY_SCALE = 0x0040;
+  private static final int HAVE_2X2 = 0x0080;
+
+  /**
+   * Guards against composite glyphs that refer to themselves.
+   */
+  private static final int MAX_COMPONENT_DEPTH = 8;
+
+  private static final float SUBPIXELS = 64f;
+
+  private final ByteBuffer mData;
+  private final int mGlyf;
+  private final int mLoca;
+  private final boolean mLongLoca;
+  private final int mGlyphs;
+  private final int mCmap;
+
+  /**
+   * Font units to 16.16 fixed-point subpixels (1/64 pixel).
+   */
+  private final long mScale;
+
+  /**
+   * @param data the contents of a TrueType font file
+   * @param size the font size, in pixels per em
+   * @throws IllegalArgumentException the font is missing a required table
+   */
+  public TrueTypeFont( final ByteBuffer data, final float size ) {
+    mData = data;
+
+    final int head = table( TAG_HEAD );
+    mGlyf = table( TAG_GLYF );
+    mLoca = table( TAG_LOCA );
+    mLongLoca = data.getShort( head + 50 ) != 0;
+    mGlyphs = u16( table( TAG_MAXP ) + 4 );
+    mCmap = unicodeMap( table( TAG_CMAP ) );
+    mScale = ((long) Math.round( size * SUBPIXELS ) << 16) / u16( head + 18 );
+  }
+
+  /**
+   * Answers whether the font maps the given character to a glyph.
+   *
+   * @param c the character to look up
+   * @return {@code true} if the character has a glyph
+   */
+  public boolean canDisplay( final char c ) {
+    return glyphIndex( c ) != 0;
+  }
+
+  /**
+   * Sends the outline of the given character's glyph to the given path. The
+   * glyph's origin is placed at (x, y), with y increasing downwards.
+   *
+   * @param c    the character to outline
+   * @param x    horizontal position of the glyph's origin
+   * @param y    baseline position of the glyph's origin
+   * @param path receives the outline
+   */
+  public void outline(
+      final char c, final float x, final float y, final GlyphPath path ) {
+    final var points = new Points();
+    load( glyphIndex( c ), points, 0 );
+
+    for( int i = 0; i < points.size; i++ ) {
+      points.x[ i ] = subpixels( points.x[ i ] );
+      points.y[ i ] = subpixels( points.y[ i ] );
+    }
+
+    final var contour = new Contour( x, y, path );
+    int first = 0;
+
+    for( int i = 0; i < points.contours; i++ ) {
+      final int last = points.ends[ i ];
+
+      if( last > first ) {
+        contour.decompose( points, first, last );
+      }
+
+      first = last + 1;
+    }
+  }
+
+  /**
+   * Appends the points of the given glyph, in font units.
+   */
+  private void load( final int glyph, final Points points, final int depth ) {
+    if( glyph >= mGlyphs || depth > MAX_COMPONENT_DEPTH ) {
+      return;
+    }
+
+    final int start = mLongLoca
+        ? mData.getInt( mLoca + (glyph << 2) )
+        : u16( mLoca + (glyph << 1) ) << 1;
+    final int end = mLongLoca
+        ? mData.getInt( mLoca + ((glyph + 1) << 2) )
+        : u16( mLoca + ((glyph + 1) << 1) ) << 1;
+
+    if( end > start ) {
+      final int offset = mGlyf + start;
+      final int contours = mData.getShort( offset );
+
+      if( contours >= 0 ) {
+        loadSimple( offset, contours, points );
+      }
+      else {
+        loadComposite( offset, points, depth );
+      }
+    }
+  }
+
+  private void loadSimple(
+      final int offset, final int contours, final Points points ) {
+    final int base = points.size;
+    int p = offset + 10;
+
+    for( int i = 0; i < contours; i++ ) {
+      points.addContour( base + u16( p ) );
+      p += 2;
+    }
+
+    final int count = contours == 0 ? 0 : u16( p - 2 ) + 1;
+    final byte[] flags = new byte[ count ];
+    p += 2 + u16( p );
+
+    for( int i = 0; i < count; ) {
+      final byte flag = mData.get( p++ );
+      flags[ i++ ] = flag;
+
+      if( (flag & REPEAT) != 0 ) {
+        for( int r = mData.get( p++ ) & 0xFF; r > 0 && i < count; r-- ) {
+          flags[ i++ ] = flag;
+        }
+      }
+    }
+
+    points.ensure( base + count );
+
+    int value = 0;
+
+    for( int i = 0; i < count; i++ ) {
+      final int flag = flags[ i ];
+
+      if( (flag & X_SHORT) != 0 ) {
+        final int delta = mData.get( p++ ) & 0xFF;
+        value += (flag & X_SAME) != 0 ? delta : -delta;
+      }
+      else if( (flag & X_SAME) == 0 ) {
+        value += mData.getShort( p );
+        p += 2;
+      }
+
+      points.x[ base + i ] = value;
+      points.on[ base + i ] = (flag & ON_CURVE) != 0;
+    }
+
+    value = 0;
+
+    for( int i = 0; i < count; i++ ) {
+      final int flag = flags[ i ];
+
+      if( (flag & Y_SHORT) != 0 ) {
+        final int delta = mData.get( p++ ) & 0xFF;
+        value += (flag & Y_SAME) != 0 ? delta : -delta;
+      }
+      else if( (flag & Y_SAME) == 0 ) {
+        value += mData.getShort( p );
+        p += 2;
+      }
+
+      points.y[ base + i ] = value;
+    }
+
+    points.size = base + count;
+  }
+
+  private void loadComposite(
+      final int offset, final Points points, final int depth ) {
+    int p = offset + 10;
+    int flags;
+
+    do {
+      flags = u16( p );
+      final int glyph = u16( p + 2 );
+      p += 4;
+
+      final int arg1, arg2;
+
+      if( (flags & ARG_WORDS) != 0 ) {
+        arg1 = mData.getShort( p );
+        arg2 = mData.getShort( p + 2 );
+        p += 4;
+      }
+      else {
+        arg1 = mData.get( p );
+        arg2 = mData.get( p + 1 );
+        p += 2;
+      }
+
+      float a = 1, b = 0, c = 0, d = 1;
+
+      if( (flags & HAVE_SCALE) != 0 ) {
+        a = d = f2dot14( p );
+        p += 2;
+      }
+      else if( (flags & HAVE_XY_SCALE) != 0 ) {
+        a = f2dot14( p );
+        d = f2dot14( p + 2 );
+        p += 4;
+      }
+      else if( (flags & HAVE_2X2) != 0 ) {
+        a = f2dot14( p );
+        b = f2dot14( p + 2 );
+        c = f2dot14( p + 4 );
+        d = f2dot14( p + 6 );
+        p += 8;
+      }
+
+      final int base = points.size;
+      load( glyph, points, depth + 1 );
+
+      // Point-matched placement doesn't occur in the bundled fonts.
+      final float dx = (flags & ARGS_ARE_XY) != 0 ? arg1 : 0;
+      final float dy = (flags & ARGS_ARE_XY) != 0 ? arg2 : 0;
+
+      for( int i = base; i < points.size; i++ ) {
+        final float px = points.x[ i ];
+        final float py = points.y[ i ];
+        points.x[ i ] = a * px + c * py + dx;
+        points.y[ i ] = b * px + d * py + dy;
+      }
+    } while( (flags & MORE_COMPONENTS) != 0 );
+  }
+
+  /**
+   * Converts font units to 1/64 pixels, rounding as the platform scaler does.
+   */
+  private float subpixels( final float units ) {
+    final long fixed = (long) (units * 65536f);
+    final long product = fixed * mScale;
+    final long rounded = product >= 0
+        ? (product + 0x80000000L) >> 32
+        : -((-product + 0x80000000L) >> 32);
+
+    return rounded;
+  }
+
+  private int glyphIndex( final char c ) {
+    final int segments2 = u16( mCmap + 6 );
+    final int ends = mCmap + 14;
+    final int starts = ends + segments2 + 2;
+    final int deltas = starts + segments2;
+    final int ranges = deltas + segments2;
+
+    int lo = 0;
+    int hi = segments2 / 2 - 1;
+
+    while( lo <= hi ) {
+      final int mid = (lo + hi) >>> 1;
+
+      if( u16( ends + mid * 2 ) < c ) {
+        lo = mid + 1;
+      }
+      else {
+        hi = mid - 1;
+      }
+    }
+
+    final int segment = lo * 2;
+
+    if( lo >= segments2 / 2 || c < u16( starts + segment ) ) {
+      return 0;
+    }
+
+    final int delta = mData.getShort( deltas + segment );
+    final int range = u16( ranges + segment );
+
+    if( range == 0 ) {
+      return (c + delta) & 0xFFFF;
+    }
+
+    final int glyph = u16(
+        ranges + segment + range + (c - u16( starts + segment )) * 2 );
+
+    return glyph == 0 ? 0 : (glyph + delta) & 0xFFFF;
+  }
+
+  private int table( final int tag ) {
+    final int tables = u16( 4 );
+
+    for( int i = 0; i < tables; i++ ) {
+      final int record = 12 + i * 16;
+
+      if( mData.getInt( record ) == tag ) {
+        return mData.getInt( record + 8 );
+      }
+    }
+
+    throw new IllegalArgumentException(
+        "Missing TrueType table: " + Integer.toHexString( tag ) );
+  }
+
+  /**
+   * Finds the Unicode BMP character map, which must be in format 4.
+   */
+  private int unicodeMap( final int cmap ) {
+    final int maps = u16( cmap + 2 );
+
+    for( int i = 0; i < maps; i++ ) {
+      final int record = cmap + 4 + i * 8;
+      final int platform = u16( record );
+      final int encoding = u16( record + 2 );
+      final int subtable = cmap + mData.getInt( record + 4 );
+
+      if( (platform == 3 && encoding == 1 || platform == 0) &&
+          u16( subtable ) == 4 ) {
+        return subtable;
+      }
+    }
+
+    throw new IllegalArgumentException( "Missing Unicode character map" );
+  }
+
+  private int u16( final int offset ) {
+    return mData.getShort( offset ) & 0xFFFF;
+  }
+
+  private float f2dot14( final int offset ) {
+    return mData.getShort( offset ) / 16384f;
+  }
+
+  /**
+   * Decomposes contours into lines and quadratic curves, inserting the
+   * on-curve points implied between consecutive off-curve points. Points
+   * are in subpixels until they're sent to the path.
+   */
+  private static final class Contour {
+    private final float mX;
+    private final float mY;
+    private final GlyphPath mPath;
+
+    private Contour( final float x, final float y, final GlyphPath path ) {
+      mX = x;
+      mY = y;
+      mPath = path;
+    }
+
+    private void decompose( final Points p, final int first, int last ) {
+      float startX = p.x[ first ];
+      float startY = p.y[ first ];
+      int i = first;
+
+      if( !p.on[ first ] ) {
+        if( p.on[ last ] ) {
+          startX = p.x[ last ];
+          startY = p.y[ last ];
+          last--;
+        }
+        else {
+          startX = middle( startX, p.x[ last ] );
+          startY = middle( startY, p.y[ last ] );
+        }
+
+        i--;
+      }
+
+      mPath.moveTo( x( startX ), y( startY ) );
+
+      while( i < last ) {
+        i++;
+
+        if( p.on[ i ] ) {
+          mPath.lineTo( x( p.x[ i ] ), y( p.y[ i ] ) );
+          continue;
+        }
+
+        float cx = p.x[ i ];
+        float cy = p.y[ i ];
+        boolean closing = true;
+
+        while( i < last ) {
+          i++;
+
+          if( p.on[ i ] ) {
+            mPath.quadTo( x( cx ), y( cy ), x( p.x[ i ] ), y( p.y[ i ] ) );
+            closing = false;
+            break;
+          }
+
+          final float mx = middle( cx, p.x[ i ] );
+          final float my = middle( cy, p.y[ i ] );
+          mPath.quadTo( x( cx ), y( cy ), x( mx ), y( my ) );
+          cx = p.x[ i ];
+          cy = p.y[ i ];
+        }
+
+        if( closing ) {
+          mPath.quadTo( x( cx ), y( cy ), x( startX ), y( startY ) );
+          mPath.closePath();
+          return;
+        }
+      }
+
+      mPath.lineTo( x( startX ), y( startY ) );
+      mPath.closePath();
+    }
+
+    /**
+     * Halves in whole subpixels, truncating, as the platform scaler does.
+     */
+    private static float middle( final float a, final float b ) {
+      return ((int) a + (int) b) / 2;
+    }
+
+    private float x( final float subpixels ) {
+      final float x = subpixels / SUBPIXELS;
+      return mX == 0 ? x : mX + x;
+    }
+
+    /**
+     * Flips the axis; like the platform scaler, the origin is only added
+     * when it isn't zero, which preserves the sign of zero coordinates.
+     */
+    private float y( final float subpixels ) {
+      final float y = -subpixels / SUBPIXELS;
+      return mY == 0 ? y : mY + y;
+    }
+  }
+
+  /**
+   * Growable point list in font units.
+   */
+  private static final class Points {
+    private float[] x = new float[ 64 ];
+    private float[] y = new float[ 64 ];
+    private boolean[] on = new boolean[ 64 ];
+    private int[] ends = new int[ 8 ];
+    private int size;
+    private int contours;
+
+    private void ensure( final int capacity ) {
+      if( capacity > x.length ) {
+        final int length = Math.max( capacity, x.length * 2 );
+        x = copyOf( x, length );
+        y = copyOf( y, length );
+        on = copyOf( on, length );
+      }
+    }
+
+    private void addContour( final int end ) {
+      if( contours == ends.length ) {
+        ends = copyOf( ends, contours * 2 );
+      }
+
+      ends[ contours++ ] = end;
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.parsers;
+
+import com.whitemagicsoftware.tex.exceptions.XMLResourceParseException;
+import com.whitemagicsoftware.tex.resources.BinaryResourceReader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Provides the configuration resources in the compiled form that is built
+ * from the XML resources, which remain the source of truth. All resources are
+ * compiled into one binary resource ({@value #RESOURCE_NAME}), loaded with a
+ * single read, and divided into sections: one per XML resource. Each parser
+ * decodes its section, if present, instead of parsing its XML resource.
+ * <p>
+ * Run {@link #main(String[])} at build time to create the compiled resource.
+ * </p>
+ */
+public final class CompiledSettings {
+  /**
+   * Name of the compiled resource.
+   */
+  public static final String RESOURCE_NAME = "TeXSettings.bin";
+
+  /**
+   * Set this system property to {@code true} to parse the XML resources even
+   * if the compiled resource is present, such as while editing them.
+   */
+  public static final String XML_PROPERTY = "com.whitemagicsoftware.tex.xml";
+
+  private static final int MAGIC = 0x4A4D5458;
+  private static final int VERSION = 1;
+
+  /**
+   * Loads the compiled resource when it's first needed.
+   */
+  private static final class Sections {
+    private static final Map<String, ByteBuffer> SECTIONS = load();
+  }
+
+  /**
+   * Writes a section of the compiled resource.
+   */
+  @FunctionalInterface
+  private interface SectionWriter {
+    void write( DataOutput out ) throws IOException;
+  }
+
+  private CompiledSettings() {
+  }
+
+  /**
+   * Returns the compiled form of the given XML resource.
+   *
+   * @param resourceName the name of the XML resource
+   * @return the compiled section, positioned at its start, or {@code null} if
+   * the XML resource must be parsed
+   */
+  public static ByteBuffer getSection( final String resourceName ) {
+    if( Boolean.getBoolean( XML_PROPERTY ) ) {
+      return null;
+    }
+
+    final ByteBuffer section = Sections.SECTIONS.get( resourceName );
+    return section == null ? null : section.duplicate();
+  }
+
+  /**
+   * Parses the XML resources and writes the compiled resource.
+   *
+   * @param args the path of the compiled resource to write
+   * @throws IOException could not write the compiled resource
+   */
+  public static void main( final String[] args ) throws IOException {
+    System.setProperty( XML_PROPERTY, "true" );
+
+    final Map<String, byte[]> sections = new LinkedHashMap<>();
+    sections.put( DefaultTeXFontParser.RESOURCE_NAME,
+                  compile( new DefaultTeXFontParser()::write ) );
+    sections.put( TeXSymbolParser.RESOURCE_NAME,
+                  compile( new TeXSymbolParser()::write ) );
+    sections.put( TeXFormulaSettingsParser.RESOURCE_NAME,
+                  compile( new TeXFormulaSettingsParser()::write ) );
+    sections.put( GlueSettingsParser.RESOURCE_NAME,
+                  compile( new GlueSettingsParser()::write ) );
+
+    final Path path = Path.of( args[ 0 ] );
+    final Path parent = path.toAbsolutePath().getParent();
+
+    if( parent != null ) {
+      Files.createDirectories( parent );
+    }
+
+    try( final var out = new DataOutputStream( Files.newOutputStream( path ) ) ) {
+      out.writeInt( MAGIC );
+      out.writeInt( VERSION );
+      out.writeInt( sections.size() );
+
+      for( final var section : sections.entrySet() ) {
+        writeString( out, section.getKey() );
+        out.writeInt( section.getValue().length );
+        out.write( section.getValue() );
+      }
+    }
+  }
+
+  private static byte[] compile( final SectionWriter writer )
+      throws IOException {
+    final var bytes = new ByteArrayOutputStream();
+
+    try( final var out = new DataOutputStream( bytes ) ) {
+      writer.write( out );
+    }
+
+    return bytes.toByteArray();
+  }
+
+  private static Map<String, ByteBuffer> load() {
+    final ByteBuffer in = new BinaryResourceReader( RESOURCE_NAME ).read();
+    final Map<String, ByteBuffer> sections = new HashMap<>();
+
+    if( in != null ) {
+      if( in.getInt() != MAGIC || in.getInt() != VERSION ) {
+        throw new XMLResourceParseException(
+            RESOURCE_NAME + ": unsupported format, rebuild it" );
+      }
+
+      for( int i = in.getInt(); i > 0; i-- ) {
+        final String name = readString( in );
+        final int length = in.getInt();
+
+        sections.put( name, in.slice().limit( length ) );
+        in.position( in.position() + length );
+      }
+    }
+
+    return sections;
+  }
+
+  static void writeString( final DataOutput out, final String s )
+      throws IOException {
+    final byte[] bytes = s.getBytes( UTF_8 );
+
+    out.writeShort( bytes.length );
+    out.write( bytes );
+  }
+
+  static String readString( final ByteBuffer in ) {
+    final byte[] bytes = new byte[ in.getShort() & 0xFFFF ];
+
+    in.get( bytes );
+    return new String( bytes, UTF_8 );
+  }
+}
@@ -32,13 +32,14 @@ import com.whitemagicsoftware.tex.CharFont;
 import com.whitemagicsoftware.tex.FontInfo;
 import com.whitemagicsoftware.tex.exceptions.ResourceParseException;
 import com.whitemagicsoftware.tex.exceptions.XMLResourceParseException;
-import com.whitemagicsoftware.tex.resources.FontResourceReader;
 import com.whitemagicsoftware.tex.resources.XMLResourceReader;
 import com.whitemagicsoftware.tex.DefaultTeXFont;
 import org.jdom2.Attribute;
 import org.jdom2.Element;
 
-import java.awt.*;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -174,20 +175,190 @@ public class DefaultTeXFontParser {
         charChildParsers.put("Extension", new ExtensionParser());
     }
 
-    private Map<String, CharFont[]> parsedTextStyles;
-
-    private Element root;
+    private final Map<String, Float> parameters;
+    private final Map<String, Number> generalSettings;
+    private final Map<String, CharFont[]> parsedTextStyles;
+    private final String[] defaultTextStyleMappings;
+    private final Map<String, CharFont> symbolMappings;
+    private final FontInfo[] fontInfo = new FontInfo[ MAX_FONT_DESCRIPTIONS ];
+    private final String[] fontNames = new String[ MAX_FONT_DESCRIPTIONS ];
 
     public DefaultTeXFontParser() throws ResourceParseException {
-        root = new XMLResourceReader( RESOURCE_NAME ).read();
-        // parse textstyles ahead of the rest, because it's used while
-        // parsing the default text style
-        parsedTextStyles = parseStyleMappings();
+        final ByteBuffer compiled = CompiledSettings.getSection( RESOURCE_NAME );
+
+        if( compiled == null ) {
+            final Element root = new XMLResourceReader( RESOURCE_NAME ).read();
+            // parse textstyles ahead of the rest, because it's used while
+            // parsing the default text style
+            parsedTextStyles = parseStyleMappings( root );
+            parameters = parseParameters( root );
+            generalSettings = parseGeneralSettings( root );
+            defaultTextStyleMappings = parseDefaultTextStyleMappings( root );
+            symbolMappings = parseSymbolMappings( root );
+            parseFontDescriptions( root );
+        }
+        else {
+            parsedTextStyles = readStyleMappings( compiled );
+            parameters = readParameters( compiled );
+            generalSettings = readGeneralSettings( compiled );
+            defaultTextStyleMappings = readDefaultTextStyleMappings( compiled );
+            symbolMappings = readSymbolMappings( compiled );
+            readFontDescriptions( compiled );
+        }
+    }
+
+    public Map<String, Float> parseParameters() {
+        return parameters;
+    }
+
+    public Map<String, Number> parseGeneralSettings() {
+        return generalSettings;
+    }
+
+    public Map<String, CharFont[]> getParsedTextStyleMappings() {
+        return parsedTextStyles;
+    }
+
+    public String[] parseDefaultTextStyleMappings() {
+        return defaultTextStyleMappings;
+    }
+
+    public Map<String, CharFont> parseSymbolMappings() {
+        return symbolMappings;
+    }
+
+    public FontInfo[] parseFontDescriptions() {
+        return fontInfo;
+    }
+
+    /**
+     * Writes the font information in the form read by the constructor when
+     * the compiled settings are present. The fonts themselves are referenced
+     * by name and loaded when first drawn.
+     *
+     * @param out receives the font information
+     * @throws IOException could not write the font information
+     */
+    public void write( final DataOutput out ) throws IOException {
+        out.writeShort( parsedTextStyles.size() );
+        for( final var style : parsedTextStyles.entrySet() ) {
+            CompiledSettings.writeString( out, style.getKey() );
+            for( final CharFont charFont : style.getValue() ) {
+                writeCharFont( out, charFont );
+            }
+        }
+
+        out.writeShort( parameters.size() );
+        for( final var parameter : parameters.entrySet() ) {
+            CompiledSettings.writeString( out, parameter.getKey() );
+            out.writeFloat( parameter.getValue() );
+        }
+
+        out.writeInt( generalSettings.get( MUFONTID_ATTR ).intValue() );
+        out.writeInt( generalSettings.get( SPACEFONTID_ATTR ).intValue() );
+        out.writeFloat( generalSettings.get( "scriptfactor" ).floatValue() );
+        out.writeFloat(
+            generalSettings.get( "scriptscriptfactor" ).floatValue() );
+
+        for( final String style : defaultTextStyleMappings ) {
+            out.writeBoolean( style != null );
+            if( style != null ) {
+                CompiledSettings.writeString( out, style );
+            }
+        }
+
+        out.writeShort( symbolMappings.size() );
+        for( final var symbol : symbolMappings.entrySet() ) {
+            CompiledSettings.writeString( out, symbol.getKey() );
+            writeCharFont( out, symbol.getValue() );
+        }
+
+        for( int id = 0; id < fontInfo.length; id++ ) {
+            if( fontInfo[ id ] != null ) {
+                out.writeByte( id );
+                CompiledSettings.writeString( out, fontNames[ id ] );
+                fontInfo[ id ].write( out );
+            }
+        }
+        out.writeByte( -1 );
+    }
+
+    private static void writeCharFont(
+        final DataOutput out, final CharFont charFont ) throws IOException {
+        out.writeBoolean( charFont != null );
+        if( charFont != null ) {
+            out.writeChar( charFont.c );
+            out.writeInt( charFont.fontId );
+        }
     }
 
-    public FontInfo[] parseFontDescriptions()
+    private static CharFont readCharFont( final ByteBuffer in ) {
+        return in.get() == 0 ? null : new CharFont( in.getChar(), in.getInt() );
+    }
+
+    private static Map<String, CharFont[]> readStyleMappings(
+        final ByteBuffer in ) {
+        final Map<String, CharFont[]> res = new HashMap<>();
+        for( int i = in.getShort(); i > 0; i-- ) {
+            final String name = CompiledSettings.readString( in );
+            final CharFont[] charFonts = new CharFont[ 3 ];
+            for( int j = 0; j < charFonts.length; j++ ) {
+                charFonts[ j ] = readCharFont( in );
+            }
+            res.put( name, charFonts );
+        }
+        return res;
+    }
+
+    private static Map<String, Float> readParameters( final ByteBuffer in ) {
+        final Map<String, Float> res = new HashMap<>();
+        for( int i = in.getShort(); i > 0; i-- ) {
+            res.put( CompiledSettings.readString( in ), in.getFloat() );
+        }
+        return res;
+    }
+
+    private static Map<String, Number> readGeneralSettings(
+        final ByteBuffer in ) {
+        final Map<String, Number> res = new HashMap<>();
+        res.put( MUFONTID_ATTR, in.getInt() );
+        res.put( SPACEFONTID_ATTR, in.getInt() );
+        res.put( "scriptfactor", in.getFloat() );
+        res.put( "scriptscriptfactor", in.getFloat() );
+        return res;
+    }
+
+    private static String[] readDefaultTextStyleMappings(
+        final ByteBuffer in ) {
+        final String[] res = new String[ 3 ];
+        for( int i = 0; i < res.length; i++ ) {
+            if( in.get() != 0 ) {
+                res[ i ] = CompiledSettings.readString( in );
+            }
+        }
+        return res;
+    }
+
+    private static Map<String, CharFont> readSymbolMappings(
+        final ByteBuffer in ) {
+        final Map<String, CharFont> res = new HashMap<>();
+        for( int i = in.getShort(); i > 0; i-- ) {
+            res.put( CompiledSettings.readString( in ), readCharFont( in ) );
+        }
+        return res;
+    }
+
+    private void readFontDescriptions( final ByteBuffer in ) {
+        for( int id = in.get(); id >= 0; id = in.get() ) {
+            final String name = CompiledSettings.readString( in );
+
+            fontNames[ id ] = name;
+            fontInfo[ id ] = FontInfo.read( id, name, in );
+        }
+    }
+
+    private void parseFontDescriptions( final Element root )
         throws ResourceParseException {
-        final var res = new FontInfo[MAX_FONT_DESCRIPTIONS];
         final Element fontDescriptions = root.getChild( "FontDescriptions" );
 
         if (fontDescriptions != null) {
@@ -200,8 +371,8 @@ public class DefaultTeXFontParser {
 
                 int skewChar = parseOptionalInt( "skewChar", font, -1);
 
-                final Font f = new FontResourceReader( name ).read();
-                final FontInfo info = new FontInfo(id, f, xHeight, space, quad);
+                final FontInfo info =
+                    new FontInfo(id, name, xHeight, space, quad);
 
                 if( skewChar != -1 ) {
                     info.setSkewChar( (char) skewChar );
@@ -212,11 +383,10 @@ public class DefaultTeXFontParser {
                 }
 
                 // parsing OK, add to table
-                res[id] = info;
+                fontNames[id] = name;
+                fontInfo[id] = info;
             }
         }
-
-        return res;
     }
 
     private static void processCharElement(Element charElement, FontInfo info)
@@ -248,7 +418,8 @@ public class DefaultTeXFontParser {
         }
     }
 
-    public Map<String,CharFont> parseSymbolMappings() throws ResourceParseException {
+    private static Map<String,CharFont> parseSymbolMappings( final Element root )
+        throws ResourceParseException {
         final Element symbolMappings = root.getChild("SymbolMappings");
         if (symbolMappings == null) {
             throw new XMLResourceParseException( RESOURCE_NAME,"SymbolMappings" );
@@ -273,7 +444,7 @@ public class DefaultTeXFontParser {
         return res;
     }
 
-    public String[] parseDefaultTextStyleMappings()
+    private String[] parseDefaultTextStyleMappings( final Element root )
     throws ResourceParseException {
         Element defaultTextStyleMappings = root.getChild("DefaultTextStyleMapping");
         if (defaultTextStyleMappings == null) {
@@ -312,7 +483,8 @@ public class DefaultTeXFontParser {
         return res;
     }
 
-    public Map<String,Float> parseParameters() throws ResourceParseException {
+    private static Map<String,Float> parseParameters( final Element root )
+        throws ResourceParseException {
         final Element parameters = root.getChild( "Parameters" );
         if( parameters == null ) {
             throw new XMLResourceParseException( RESOURCE_NAME, "Parameters" );
@@ -326,8 +498,8 @@ public class DefaultTeXFontParser {
 
     }
 
-    public Map<String, Number> parseGeneralSettings()
-        throws ResourceParseException {
+    private static Map<String, Number> parseGeneralSettings(
+        final Element root ) throws ResourceParseException {
 
         // TODO: must this be 'Number' ?
         Element generalSettings = root.getChild( "GeneralSettings" );
@@ -353,12 +525,8 @@ public class DefaultTeXFontParser {
         return result;
     }
 
-    public Map<String, CharFont[]> getParsedTextStyleMappings() {
-        return parsedTextStyles;
-    }
-
-    private Map<String, CharFont[]> parseStyleMappings()
-        throws ResourceParseException {
+    private static Map<String, CharFont[]> parseStyleMappings(
+        final Element root ) throws ResourceParseException {
         final Element textStyleMappings = root.getChild("TextStyleMappings");
 
         if( textStyleMappings == null ) {
@@ -35,7 +35,11 @@ import com.whitemagicsoftware.tex.exceptions.XMLResourceParseException;
 import com.whitemagicsoftware.tex.resources.XMLResourceReader;
 import org.jdom2.Element;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,7 +49,7 @@ import java.util.Map;
  */
 public class GlueSettingsParser {
     
-    private static final String RESOURCE_NAME = "GlueSettings.xml";
+    public static final String RESOURCE_NAME = "GlueSettings.xml";
     
     private static final Map<String,Integer> typeMappings = new HashMap<>();
     private static final Map<String,Integer> styleMappings = new HashMap<>();
@@ -70,17 +74,29 @@ public class GlueSettingsParser {
     }
 
     private final Map<String,Integer> glueTypeMappings = new HashMap<>();
+    private String[] glueNames;
+    private float[][] glueValues;
     private Glue[] glueTypes;
-    
-    private final Element root;
+    private final int[][][] glueTable;
     
     public GlueSettingsParser() throws ResourceParseException {
-        root = new XMLResourceReader( RESOURCE_NAME ).read();
-        parseGlueTypes();
+        final ByteBuffer compiled = CompiledSettings.getSection( RESOURCE_NAME );
+
+        if( compiled == null ) {
+            final Element root = new XMLResourceReader( RESOURCE_NAME ).read();
+            parseGlueTypes( root );
+            glueTable = parseGlueTable( root );
+        }
+        else {
+            readGlueTypes( compiled );
+            glueTable = readGlueTable( compiled );
+        }
     }
     
-    private void parseGlueTypes() throws ResourceParseException {
-        List<Glue> glueTypesList = new ArrayList<>();
+    private void parseGlueTypes( final Element root )
+        throws ResourceParseException {
+        List<String> names = new ArrayList<>();
+        List<float[]> values = new ArrayList<>();
         Element types = root.getChild("GlueTypes");
         int defaultIndex = -1;
         int index = 0;
@@ -89,34 +105,58 @@ public class GlueSettingsParser {
                 Element type = (Element) obj;
                 // retrieve required attribute value, throw exception if not set
                 String name = getAttrValueAndCheckIfNotNull("name", type);
-                Glue glue = createGlue(type, name);
                 if (name.equalsIgnoreCase("default")) // default must have value
                     defaultIndex = index;
-                glueTypesList.add(glue);
+                names.add(name);
+                values.add(parseGlueValues(type));
                 index ++;
             }
         }
         if (defaultIndex < 0) {
             // create a default glue object if missing
             defaultIndex = index;
-            glueTypesList.add(new Glue(0,0,0,"default"));
+            names.add("default");
+            values.add(new float[3]);
         }
         
-        glueTypes = glueTypesList.toArray( new Glue[ 0 ] );
-        
         // make sure default glue is at the front
-        if (defaultIndex > 0) {
-            Glue tmp = glueTypes[defaultIndex];
-            glueTypes[defaultIndex] = glueTypes[0];
-            glueTypes[0] = tmp;
+        Collections.swap(names, 0, defaultIndex);
+        Collections.swap(values, 0, defaultIndex);
+
+        glueNames = names.toArray( new String[ 0 ] );
+        glueValues = values.toArray( new float[ 0 ][] );
+        createGlueTypes();
+    }
+    
+    private void readGlueTypes( final ByteBuffer in ) {
+        final int count = in.get();
+
+        glueNames = new String[ count ];
+        glueValues = new float[ count ][ 3 ];
+
+        for( int i = 0; i < count; i++ ) {
+            glueNames[ i ] = CompiledSettings.readString( in );
+
+            for( int j = 0; j < 3; j++ ) {
+                glueValues[ i ][ j ] = in.getFloat();
+            }
+        }
+
+        createGlueTypes();
+    }
+
+    private void createGlueTypes() {
+        glueTypes = new Glue[ glueNames.length ];
+
+        for( int i = 0; i < glueTypes.length; i++ ) {
+            final float[] v = glueValues[ i ];
+            glueTypes[ i ] = new Glue( v[ 0 ], v[ 1 ], v[ 2 ], glueNames[ i ] );
+            // make reverse map
+            glueTypeMappings.put( glueNames[ i ], i );
         }
-        
-        // make reverse map
-        for (int i = 0; i < glueTypes.length; i++)
-            glueTypeMappings.put(glueTypes[i].getName(), i);
     }
     
-    private Glue createGlue(Element type, String name) throws ResourceParseException {
+    private static float[] parseGlueValues(Element type) throws ResourceParseException {
         final String[] names = { "space", "stretch", "shrink" };
         float[] values = new float[names.length];
         for (int i = 0; i < names.length; i++) {
@@ -132,16 +172,62 @@ public class GlueSettingsParser {
             }
             values[i] = (float) val;
         }
-        return new Glue(values[0], values[1], values[2], name);
+        return values;
     }
     
     public Glue[] getGlueTypes() {
         return glueTypes;
     }
     
-    public int[][][] createGlueTable() throws ResourceParseException {
-        int size = typeMappings.size();
-        int[][][] table = new int[size][size][styleMappings.size()];
+    public int[][][] createGlueTable() {
+        return glueTable;
+    }
+
+    /**
+     * Writes the glue types and the glue table in the form read by the
+     * constructor when the compiled settings are present.
+     *
+     * @param out receives the glue settings
+     * @throws IOException could not write the glue settings
+     */
+    public void write( final DataOutput out ) throws IOException {
+        out.writeByte( glueNames.length );
+        for( int i = 0; i < glueNames.length; i++ ) {
+            CompiledSettings.writeString( out, glueNames[ i ] );
+            for( final float value : glueValues[ i ] ) {
+                out.writeFloat( value );
+            }
+        }
+
+        for( final int[][] left : glueTable ) {
+            for( final int[] right : left ) {
+                for( final int value : right ) {
+                    out.writeByte( value );
+                }
+            }
+        }
+    }
+
+    private static int[][][] readGlueTable( final ByteBuffer in ) {
+        final int[][][] table = newGlueTable();
+        for( final int[][] left : table ) {
+            for( final int[] right : left ) {
+                for( int i = 0; i < right.length; i++ ) {
+                    right[ i ] = in.get();
+                }
+            }
+        }
+        return table;
+    }
+
+    private static int[][][] newGlueTable() {
+        final int size = typeMappings.size();
+        return new int[ size ][ size ][ styleMappings.size() ];
+    }
+
+    private int[][][] parseGlueTable( final Element root )
+        throws ResourceParseException {
+        int[][][] table = newGlueTable();
         Element glueTable = root.getChild("GlueTable");
         if (glueTable != null) { // element present
             // iterate all the "Glue"-elements
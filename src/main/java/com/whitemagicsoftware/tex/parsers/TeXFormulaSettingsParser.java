@@ -35,6 +35,9 @@ import com.whitemagicsoftware.tex.exceptions.XMLResourceParseException;
 import com.whitemagicsoftware.tex.resources.XMLResourceReader;
 import org.jdom2.Element;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -47,31 +50,103 @@ public class TeXFormulaSettingsParser {
     public static final String RESOURCE_NAME = "TeXFormulaSettings.xml";
     public static final String CHAR_MAPPING_EL = "Map";
 
-    private final Element root;
+    private final String[] symbolMappings;
+    private final String[] delimiterMappings;
+    private final Set<String> textStyles;
 
     public TeXFormulaSettingsParser() throws ResourceParseException {
-        root = new XMLResourceReader( RESOURCE_NAME ).read();
+        final ByteBuffer compiled = CompiledSettings.getSection( RESOURCE_NAME );
+
+        if( compiled == null ) {
+            final Element root = new XMLResourceReader( RESOURCE_NAME ).read();
+            symbolMappings = parseMappings( root, "CharacterToSymbolMappings" );
+            delimiterMappings = parseMappings(
+                root, "CharacterToDelimiterMappings" );
+            textStyles = parseTextStyles( root );
+        }
+        else {
+            symbolMappings = readMappings( compiled );
+            delimiterMappings = readMappings( compiled );
+            textStyles = readTextStyles( compiled );
+        }
+    }
+
+    public String[] parseSymbolMappings() {
+        return symbolMappings;
+    }
+
+    public String[] parseDelimiterMappings() {
+        return delimiterMappings;
     }
 
-    public String[] parseSymbolMappings() throws ResourceParseException {
+    public Set<String> parseTextStyles() {
+        return textStyles;
+    }
+
+    /**
+     * Writes the settings in the form read by the constructor when the
+     * compiled settings are present.
+     *
+     * @param out receives the settings
+     * @throws IOException could not write the settings
+     */
+    public void write( final DataOutput out ) throws IOException {
+        writeMappings( out, symbolMappings );
+        writeMappings( out, delimiterMappings );
+
+        out.writeShort( textStyles.size() );
+        for( final String name : textStyles ) {
+            CompiledSettings.writeString( out, name );
+        }
+    }
+
+    private static String[] parseMappings( final Element root,
+                                           final String elementName )
+        throws ResourceParseException {
         String[] mappings = new String[ FontInfo.NUMBER_OF_CHAR_CODES ];
-        Element symbols = root.getChild( "CharacterToSymbolMappings" );
-        if( symbols != null ) {
-            addToMap( symbols.getChildren( CHAR_MAPPING_EL ), mappings );
+        Element element = root.getChild( elementName );
+        if( element != null ) {
+            addToMap( element.getChildren( CHAR_MAPPING_EL ), mappings );
         }
         return mappings;
     }
 
-    public String[] parseDelimiterMappings() throws ResourceParseException {
-        String[] mappings = new String[ FontInfo.NUMBER_OF_CHAR_CODES ];
-        Element delimiters = root.getChild( "CharacterToDelimiterMappings" );
-        if( delimiters != null ) {
-            addToMap( delimiters.getChildren( CHAR_MAPPING_EL ),
-                      mappings );
+    private static void writeMappings( final DataOutput out,
+                                       final String[] mappings )
+        throws IOException {
+        int count = 0;
+        for( final String symbol : mappings ) {
+            if( symbol != null ) {
+                count++;
+            }
+        }
+
+        out.writeShort( count );
+        for( int c = 0; c < mappings.length; c++ ) {
+            if( mappings[ c ] != null ) {
+                out.writeChar( c );
+                CompiledSettings.writeString( out, mappings[ c ] );
+            }
+        }
+    }
+
+    private static String[] readMappings( final ByteBuffer in ) {
+        final String[] mappings = new String[ FontInfo.NUMBER_OF_CHAR_CODES ];
+        for( int i = in.getShort(); i > 0; i-- ) {
+            final char c = in.getChar();
+            mappings[ c ] = CompiledSettings.readString( in );
         }
         return mappings;
     }
 
+    private static Set<String> readTextStyles( final ByteBuffer in ) {
+        final Set<String> res = new HashSet<>();
+        for( int i = in.getShort(); i > 0; i-- ) {
+            res.add( CompiledSettings.readString( in ) );
+        }
+        return res;
+    }
+
     private static void addToMap(List<Element> mapList, String[] table)
         throws ResourceParseException {
         for (Object obj : mapList) {
@@ -98,7 +173,8 @@ public class TeXFormulaSettingsParser {
         }
     }
 
-    public Set<String> parseTextStyles() throws ResourceParseException {
+    private static Set<String> parseTextStyles( final Element root )
+        throws ResourceParseException {
         final Set<String> res = new HashSet<>();
         final Element textStyles = root.getChild("TextStyles");
         if (textStyles != null) {
@@ -35,6 +35,9 @@ import com.whitemagicsoftware.tex.resources.XMLResourceReader;
 import com.whitemagicsoftware.tex.TeXConstants;
 import org.jdom2.Element;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -62,35 +65,82 @@ public class TeXSymbolParser {
       typeMappings.put( "acc", TeXConstants.TYPE_ACCENT );
    }
 
-   private final Element root;
+   private final String[] names;
+   private final int[] types;
+   private final boolean[] delimiters;
 
    public TeXSymbolParser() throws ResourceParseException {
-      root = new XMLResourceReader( RESOURCE_NAME ).read();
-   }
-
-   public Map<String, SymbolAtom> readSymbols() throws ResourceParseException {
-      final Map<String, SymbolAtom> res = new HashMap<>();
+      final ByteBuffer compiled = CompiledSettings.getSection( RESOURCE_NAME );
+
+      if( compiled == null ) {
+         final var root = new XMLResourceReader( RESOURCE_NAME ).read();
+         final var symbols = root.getChildren( "Symbol" );
+         final int count = symbols.size();
+
+         names = new String[ count ];
+         types = new int[ count ];
+         delimiters = new boolean[ count ];
+
+         for( int i = 0; i < count; i++ ) {
+            final Element symbol = symbols.get( i );
+            String type = getAttrValueAndCheckIfNotNull( TYPE_ATTR, symbol );
+            final var typeVal = typeMappings.get( type );
+
+            if( typeVal == null ) {
+               final var msg = format( "has an unknown value '%s'", type );
+               throw new XMLResourceParseException(
+                   RESOURCE_NAME, "Symbol", "type", msg );
+            }
+
+            names[ i ] = getAttrValueAndCheckIfNotNull( "name", symbol );
+            types[ i ] = typeVal;
+            delimiters[ i ] =
+                "true".equals( symbol.getAttributeValue( DELIMITER_ATTR ) );
+         }
+      }
+      else {
+         final int count = compiled.getShort() & 0xFFFF;
 
-      for( final Element symbol : root.getChildren( "Symbol" ) ) {
-         String type = getAttrValueAndCheckIfNotNull( TYPE_ATTR, symbol );
-         final var typeVal = typeMappings.get( type );
+         names = new String[ count ];
+         types = new int[ count ];
+         delimiters = new boolean[ count ];
 
-         if( typeVal == null ) {
-            final var msg = format( "has an unknown value '%s'", type );
-            throw new XMLResourceParseException(
-                RESOURCE_NAME, "Symbol", "type", msg );
+         for( int i = 0; i < count; i++ ) {
+            names[ i ] = CompiledSettings.readString( compiled );
+            types[ i ] = compiled.get();
+            delimiters[ i ] = compiled.get() != 0;
          }
+      }
+   }
 
-         String name = getAttrValueAndCheckIfNotNull( "name", symbol );
-         String del = symbol.getAttributeValue( DELIMITER_ATTR );
-         final boolean delimiter = "true".equals( del );
+   public Map<String, SymbolAtom> readSymbols() {
+      final Map<String, SymbolAtom> res = new HashMap<>();
 
-         res.put( name, new SymbolAtom( name, typeVal, delimiter ) );
+      for( int i = 0; i < names.length; i++ ) {
+         res.put( names[ i ],
+                  new SymbolAtom( names[ i ], types[ i ], delimiters[ i ] ) );
       }
 
       return res;
    }
 
+   /**
+    * Writes the symbol definitions in the form read by the constructor when
+    * the compiled settings are present.
+    *
+    * @param out receives the symbol definitions
+    * @throws IOException could not write the symbol definitions
+    */
+   public void write( final DataOutput out ) throws IOException {
+      out.writeShort( names.length );
+
+      for( int i = 0; i < names.length; i++ ) {
+         CompiledSettings.writeString( out, names[ i ] );
+         out.writeByte( types[ i ] );
+         out.writeBoolean( delimiters[ i ] );
+      }
+   }
+
    private static String getAttrValueAndCheckIfNotNull(String attrName,
          Element element) throws ResourceParseException {
       String attrValue = element.getAttributeValue(attrName);
@@ -0,0 +1,60 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.resources;
+
+import com.whitemagicsoftware.tex.exceptions.XMLResourceParseException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static com.whitemagicsoftware.tex.resources.ResourcePath.join;
+
+public class BinaryResourceReader extends ResourceReader<ByteBuffer> {
+
+  /**
+   * Location under the {@code resources} directory where compiled
+   * configuration files are found.
+   */
+  private final static String DIR_BINARY = "config";
+
+  public BinaryResourceReader( final String filename ) {
+    super( join( DIR_BINARY, filename ) );
+  }
+
+  /**
+   * Reads a binary file into memory with a single read.
+   *
+   * @return A new {@link ByteBuffer} wrapping the resource's contents, or
+   * {@code null} if the resource doesn't exist.
+   */
+  public ByteBuffer read() throws XMLResourceParseException {
+    return super.read( ( stream ) -> {
+      if( stream == null ) {
+        return null;
+      }
+
+      try {
+        return ByteBuffer.wrap( stream.readAllBytes() );
+      } catch( final IOException e ) {
+        throw new XMLResourceParseException( e.getMessage() );
+      }
+    } );
+  }
+}
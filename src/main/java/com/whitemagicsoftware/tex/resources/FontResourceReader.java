@@ -38,30 +38,38 @@ public class FontResourceReader extends ResourceReader<Font> {
   /**
    * Location under the {@code resources} directory where font files are found.
    */
-  private static final String DIR_FONT = "fonts";
+  static final String DIR_FONT = "fonts";
 
-  private static final String DIR_FONT_COMPUTER_MODERN = "cm";
+  static final String DIR_FONT_COMPUTER_MODERN = "cm";
 
   public FontResourceReader( final String filename ) {
     super( join( DIR_FONT, DIR_FONT_COMPUTER_MODERN, filename ) );
   }
 
   /**
-   * Reads a true type font file into memory.
+   * Reads a true type font file into memory. The font isn't registered with
+   * the local graphics environment, see {@link #register(Font)}.
    *
    * @return A new {@link Font} instance loaded from a font resource.
    */
   public Font read() {
     return super.read( ( stream ) -> {
       try {
-        final var font = createFont( TRUETYPE_FONT, stream )
+        return createFont( TRUETYPE_FONT, stream )
             .deriveFont( TeXFormula.PIXELS_PER_POINT * TeXFormula.FONT_SCALE_FACTOR );
-        getLocalGraphicsEnvironment().registerFont( font );
-
-        return font;
       } catch( final Exception e ) {
         throw new XMLResourceParseException( e.getMessage() );
       }
     } );
   }
+
+  /**
+   * Makes the given font available by name to the local graphics
+   * environment.
+   *
+   * @param font The font to register.
+   */
+  public static void register( final Font font ) {
+    getLocalGraphicsEnvironment().registerFont( font );
+  }
 }
@@ -0,0 +1,59 @@
+/*
+ * JMathTeX is a Java library for rendering mathematical notation.
+ * Copyright 2020 White Magic Software, Ltd.
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02110-1301,
+ * USA.
+ */
+package com.whitemagicsoftware.tex.resources;
+
+import com.whitemagicsoftware.tex.TeXFormula;
+import com.whitemagicsoftware.tex.exceptions.XMLResourceParseException;
+import com.whitemagicsoftware.tex.graphics.TrueTypeFont;
+
+import java.nio.ByteBuffer;
+
+import static com.whitemagicsoftware.tex.resources.FontResourceReader.DIR_FONT;
+import static com.whitemagicsoftware.tex.resources.FontResourceReader.DIR_FONT_COMPUTER_MODERN;
+import static com.whitemagicsoftware.tex.resources.ResourcePath.join;
+
+/**
+ * Responsible for reading the glyph outlines of font resources located in
+ * the {@code fonts} directory, without loading them as platform fonts.
+ */
+public class TrueTypeResourceReader extends ResourceReader<TrueTypeFont> {
+
+  public TrueTypeResourceReader( final String filename ) {
+    super( join( DIR_FONT, DIR_FONT_COMPUTER_MODERN, filename ) );
+  }
+
+  /**
+   * Reads a true type font file into memory, scaled to the same size as
+   * fonts read using {@link FontResourceReader}.
+   *
+   * @return A new {@link TrueTypeFont} instance loaded from a font resource.
+   */
+  public TrueTypeFont read() {
+    return super.read( ( stream ) -> {
+      try {
+        return new TrueTypeFont(
+            ByteBuffer.wrap( stream.readAllBytes() ),
+            TeXFormula.PIXELS_PER_POINT * TeXFormula.FONT_SCALE_FACTOR );
+      } catch( final Exception e ) {
+        throw new XMLResourceParseException( e.getMessage() );
+      }
+    } );
+  }
+}
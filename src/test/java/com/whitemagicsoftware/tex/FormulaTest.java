@@ -19,20 +19,41 @@
  */
 package com.whitemagicsoftware.tex;
 
+import com.whitemagicsoftware.tex.atoms.CharAtom;
+import com.whitemagicsoftware.tex.atoms.RowAtom;
+import com.whitemagicsoftware.tex.atoms.ScriptsAtom;
+import com.whitemagicsoftware.tex.atoms.SymbolAtom;
+import com.whitemagicsoftware.tex.boxes.Box;
+import com.whitemagicsoftware.tex.exceptions.ParseException;
+import com.whitemagicsoftware.tex.exceptions.RenderCancelledException;
 import com.whitemagicsoftware.tex.graphics.AbstractGraphics2D;
 import com.whitemagicsoftware.tex.graphics.SvgDomGraphics2D;
 import com.whitemagicsoftware.tex.graphics.SvgGraphics2D;
 import org.junit.Test;
 import org.w3c.dom.Document;
 
+import java.awt.geom.Path2D;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Set;
 
 import static java.lang.String.format;
 import static java.lang.System.getProperty;
 import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class FormulaTest {
   private static final String DIR_TEMP = getProperty( "java.io.tmpdir" );
@@ -84,6 +105,477 @@ public class FormulaTest {
     test_Parser( g );
   }
 
+  /**
+   * Test that editing a formula one keystroke at a time renders the same as
+   * parsing the edited text from scratch.
+   */
+  @Test
+  public void test_IncrementalParser_TypeFormula_OutputMatchesFullParse() {
+    final var size = 100f;
+    final var env = new TeXEnvironment( new DefaultTeXFont( size ) );
+    final var text = EQUATIONS[ 6 ];
+    final var formula = new IncrementalTeXFormula( "" );
+
+    for( int i = 0; i < text.length(); i++ ) {
+      try {
+        formula.edit( i, 0, text.substring( i, i + 1 ) );
+      } catch( final ParseException ignored ) {
+        // Partially typed formulas, such as "\\sq", are often invalid.
+      }
+    }
+
+    // Replace the subscript's index, then remove the exponent.
+    formula.edit( text.indexOf( "i=1" ), 1, "j" );
+    formula.edit( text.lastIndexOf( "^2" ), 2, "" );
+
+    final var expected = text
+        .replace( "i=1", "j=1" )
+        .replace( ")^2}", ")}" );
+    assertEquals( expected, formula.getText() );
+
+    final var incremental = formula.createBox( env );
+    final var full = new TeXFormula( expected ).createBox( env );
+    assertEquals( toSvg( full, size ), toSvg( incremental, size ) );
+  }
+
+  /**
+   * Test that edits inside a long row nested in a group, which reuse the
+   * earlier layout of the unchanged runs, render the same as a full parse.
+   */
+  @Test
+  public void test_IncrementalParser_EditNestedRow_OutputMatchesFullParse() {
+    final var size = 100f;
+    final var env = new TeXEnvironment( new DefaultTeXFont( size ) );
+    final var row = "a+b_{i}-\\frac{x}{y}fi".repeat( 20 );
+    final var formula = new IncrementalTeXFormula( "" );
+    var text = "x=\\sqrt{" + row + "}+" + row;
+
+    formula.edit( 0, 0, text );
+    formula.createBox( env );
+
+    final var offsets = new int[]{
+        8 + row.length() / 2, 8, text.length() - 1
+    };
+
+    for( final var offset : offsets ) {
+      formula.edit( offset, 1, "f" );
+      text = text.substring( 0, offset ) + "f" + text.substring( offset + 1 );
+      assertEquals( text, formula.getText() );
+
+      final var incremental = formula.createBox( env );
+      final var full = new TeXFormula( text ).createBox( env );
+      assertEquals( toSvg( full, size ), toSvg( incremental, size ) );
+    }
+  }
+
+  @Test
+  public void test_TolerantParser_InputFormulas_OutputMatchesStrictParse() {
+    final var size = 100f;
+    final var env = new TeXEnvironment( new DefaultTeXFont( size ) );
+
+    for( final var text : EQUATIONS ) {
+      final var result = TeXFormula.parseTolerant( text );
+      final var strict = new TeXFormula( text ).createBox( env );
+
+      assertFalse( result.hasErrors() );
+      assertEquals(
+          toSvg( strict, size ),
+          toSvg( result.getFormula().createBox( env ), size ) );
+    }
+
+    final var fraction = TeXFormula.parseTolerant( "\\frac{a}{" );
+    assertEquals( 1, fraction.getDiagnostics().size() );
+    assertEquals( 9, fraction.getDiagnostics().get( 0 ).getPosition() );
+    assertEquals( "Illegal end, missing '}'",
+                  fraction.getDiagnostics().get( 0 ).getMessage() );
+
+    // The error marker's four sides are filled red in both SVG formats.
+    final var marked = fraction.getFormula().createBox( env );
+    final var svg = toSvg( marked, size );
+    final var dom = toSvg( marked, size, new SvgDomGraphics2D() );
+    assertEquals( 4, svg.split( "fill='#ff0000'", -1 ).length - 1 );
+    assertEquals( 4, dom.split( "fill=\"#ff0000\"", -1 ).length - 1 );
+
+    final var script = TeXFormula.parseTolerant( "x^" );
+    assertEquals( 1, script.getDiagnostics().size() );
+    assertEquals( 2, script.getDiagnostics().get( 0 ).getPosition() );
+    toSvg( script.getFormula().createBox( env ), size );
+  }
+
+  /**
+   * Test that deeply nested groups are parsed and laid out without
+   * exhausting a small call stack.
+   */
+  @Test
+  public void test_Parser_InputDeepNesting_OutputLaidOutOnSmallStack()
+      throws InterruptedException {
+    final var n = 20_000;
+    final var env = new TeXEnvironment( new DefaultTeXFont( 20f ) );
+    final var boxes = new ArrayList<Box>();
+    final var diagnostics = new ArrayList<Diagnostic>();
+    final var failure = new Throwable[ 1 ];
+    final var thread = new Thread( null, () -> {
+      try {
+        for( final var tex : new String[]{
+            "{".repeat( n ) + "x" + "}".repeat( n ),
+            "\\frac{".repeat( n ) + "1" + "}{2}".repeat( n ),
+            "x^{".repeat( n ) + "y" + "}".repeat( n )} ) {
+          boxes.add( new TeXFormula( tex ).createBox( env ) );
+        }
+
+        diagnostics.addAll(
+            TeXFormula.parseTolerant( "\\sqrt{".repeat( n ) )
+                      .getDiagnostics() );
+      } catch( final Throwable t ) {
+        failure[ 0 ] = t;
+      }
+    }, "deep", 128 * 1024 );
+
+    thread.start();
+    thread.join();
+
+    assertNull( failure[ 0 ] );
+    assertEquals( 3, boxes.size() );
+    assertEquals( new TeXFormula( "x" ).createBox( env ).getWidth(),
+                  boxes.get( 0 ).getWidth(), 0 );
+    assertEquals( n, diagnostics.size() );
+  }
+
+  /**
+   * Test that deeply nested formulas are drawn and visited without
+   * exhausting a small call stack.
+   */
+  @Test
+  public void test_Renderer_InputDeepNesting_OutputDrawnOnSmallStack()
+      throws InterruptedException {
+    final var n = 3_000;
+    final var size = 20f;
+    final var env = new TeXEnvironment( new DefaultTeXFont( size ) );
+    final var counts = new ArrayList<Integer>();
+    final var failure = new Throwable[ 1 ];
+    final var thread = new Thread( null, () -> {
+      try {
+        for( final var tex : new String[]{
+            "\\frac{".repeat( n ) + "1" + "}{2}".repeat( n ),
+            "\\sqrt{".repeat( n / 6 ) + "x" + "}".repeat( n / 6 ),
+            "x^{".repeat( n ) + "y" + "}".repeat( n )} ) {
+          final var formula = new TeXFormula( tex );
+          final var box = formula.createBox( env );
+          final int[] count = new int[ 1 ];
+
+          toSvg( box, size );
+          box.visit( b -> count[ 0 ]++ );
+          formula.getRoot().visit( atom -> count[ 0 ]++ );
+          counts.add( count[ 0 ] );
+        }
+      } catch( final Throwable t ) {
+        failure[ 0 ] = t;
+      }
+    }, "deep", 128 * 1024 );
+
+    thread.start();
+    thread.join();
+
+    assertNull( failure[ 0 ] );
+    assertEquals( 3, counts.size() );
+    assertTrue( counts.get( 0 ) > 4 * n );
+  }
+
+  @Test
+  public void test_InlineMathRenderer_InputDocument_OutputSpansReplaced()
+      throws IOException {
+    final var size = 20f;
+    final var renderer = new InlineMathRenderer( size );
+    final var svgs = new ArrayList<String>();
+
+    renderer.setReplacement( ( out, id, tex, svg, first ) -> {
+      if( first ) {
+        svgs.add( svg );
+      }
+
+      out.write( format( "[%d:%s]", id, tex ) );
+    } );
+
+    final var in = "a $x^2$ b $$\\frac{1}{2}$$ c $x^2$ costs \\$5 $x";
+    final var out = new StringWriter();
+    renderer.render( new StringReader( in ), out );
+
+    assertEquals(
+        "a [0:x^2] b [1:\\frac{1}{2}] c [0:x^2] costs \\$5 $x",
+        out.toString() );
+    assertEquals( 2, svgs.size() );
+
+    final var env = new TeXEnvironment(
+        TeXConstants.STYLE_TEXT, new DefaultTeXFont( size ) );
+    final var box = new TeXFormula( "x^2" ).createBox( env );
+    assertEquals( toSvg( box, size ), svgs.get( 0 ) );
+  }
+
+  /**
+   * Test that a span too long to render is copied as text through its
+   * closing delimiter, and the spans after it are still found.
+   */
+  @Test
+  public void test_InlineMathRenderer_InputLongSpan_OutputCopiedAsText()
+      throws IOException {
+    final var renderer = new InlineMathRenderer( 20f );
+    renderer.setReplacement(
+        ( out, id, tex, svg, first ) -> out.write( format( "[%s]", tex ) ) );
+
+    final var n = InlineMathRenderer.MAX_FORMULA_LENGTH + 5;
+    final var span = "$" + "x".repeat( n ) + "\\$$";
+    final var out = new StringWriter();
+    renderer.render(
+        new StringReader( span + " then $y$ and $z$" ), out );
+
+    assertEquals( span + " then [y] and [z]", out.toString() );
+  }
+
+  @Test
+  public void test_InlineMathRenderer_SetListener_OutputStatistics()
+      throws IOException {
+    final var renderer = new InlineMathRenderer( 20f );
+    final var statistics = new ArrayList<RenderStatistics>();
+    final var svgs = new ArrayList<String>();
+
+    renderer.setListener( statistics::add );
+    renderer.setReplacement( ( out, id, tex, svg, first ) -> svgs.add( svg ) );
+    renderer.render( new StringReader( "$\\frac{1}{x}$" ), new StringWriter() );
+
+    assertEquals( 1, statistics.size() );
+
+    final var stats = statistics.get( 0 );
+    assertEquals( "\\frac{1}{x}", stats.getTex() );
+    assertEquals( 3, stats.getAtoms() );
+    assertEquals( 2, stats.getGlyphs() );
+    assertTrue( stats.getBoxes() > stats.getGlyphs() );
+    assertTrue( stats.getSegments() > 0 );
+    assertEquals( svgs.get( 0 ).length(), stats.getBytes() );
+    assertTrue( stats.getTotalNanos() > 0 );
+
+    final var g = new SvgGraphics2D();
+    final var path = new Path2D.Float();
+    path.moveTo( 0, 0 );
+    path.lineTo( 1, 0 );
+    path.quadTo( 1, 1, 0, 1 );
+    path.curveTo( 0, 1, 0, 0.5f, 0, 0 );
+    path.closePath();
+
+    g.initialize( 10, 10 );
+    g.fill( path );
+    assertEquals( 5, g.getSegments() );
+
+    g.initialize( 10, 10 );
+    assertEquals( 0, g.getSegments() );
+  }
+
+  @Test
+  public void test_ComplexityLimits_InputDeepNesting_OutputSpanRefused()
+      throws IOException {
+    final var n = 100_000;
+    final var deep = "\\frac{".repeat( n ) + "1" + "}{2}".repeat( n );
+    final var complexity = FormulaComplexity.estimate( deep );
+
+    assertEquals( n, complexity.getFractions() );
+    assertEquals( n, complexity.getDepth() );
+    assertEquals( n, complexity.getLevels() );
+    assertEquals(
+        2, FormulaComplexity.estimate( "\\sqrt[n]{\\frac{1}{2}}" )
+                            .getDelimiterLevels() );
+    assertEquals(
+        3, FormulaComplexity.estimate( "\\left(\\frac{\\frac12}{3}\\right)" )
+                            .getDelimiterLevels() );
+    assertEquals(
+        1, FormulaComplexity.estimate( "\\left\\{ x \\right." )
+                            .getDelimiterLevels() );
+    assertTrue( FormulaComplexity.estimate( "{".repeat( n ) ).getCost() >= n );
+
+    final var limits = new ComplexityLimits();
+    limits.setMaxLevels( 8 );
+
+    final var renderer = new InlineMathRenderer( 20f );
+    renderer.setLimits( limits );
+    renderer.setReplacement(
+        ( out, id, tex, svg, first ) -> out.write( format( "[%d]", id ) ) );
+
+    final var tall = "x^{".repeat( 9 ) + "y" + "}".repeat( 9 );
+    final var out = new StringWriter();
+    renderer.render(
+        new StringReader( "$x^2$ and $" + tall + "$" ), out );
+
+    assertEquals( "[0] and $" + tall + "$", out.toString() );
+  }
+
+  @Test
+  public void test_Cancellation_Cancelled_OutputRenderingStopped()
+      throws IOException {
+    final var tex = "\\frac{1}{\\sqrt{x^2}}";
+    final var cancellation = new Cancellation();
+    final var env = new TeXEnvironment( new DefaultTeXFont( 20f ) );
+    env.setCancellation( cancellation );
+
+    final var formula = new TeXFormula( tex, cancellation );
+    final var box = formula.createBox( env );
+    final var g = new SvgGraphics2D();
+    cancellation.apply( g );
+    g.initialize( 100, 100 );
+    box.draw( g, 0, 0 );
+
+    cancellation.cancel();
+
+    assertThrows( RenderCancelledException.class,
+                  () -> new TeXFormula( tex, cancellation ) );
+    assertThrows( RenderCancelledException.class,
+                  () -> TeXFormula.parseTolerant( tex, cancellation ) );
+    assertThrows( RenderCancelledException.class,
+                  () -> formula.createBox( env ) );
+    assertThrows( RenderCancelledException.class,
+                  () -> box.draw( g, 0, 0 ) );
+
+    // Once the scope is closed, the context draws without the cancellation.
+    try( final var ignored = Cancellation.after( Duration.ZERO ).apply( g ) ) {
+      assertThrows( RenderCancelledException.class,
+                    () -> box.draw( g, 0, 0 ) );
+    }
+
+    assertThrows( RenderCancelledException.class,
+                  () -> box.draw( g, 0, 0 ) );
+    Cancellation.clear( g );
+    assertNull( Cancellation.of( g ) );
+    box.draw( g, 0, 0 );
+
+    final var renderer = new InlineMathRenderer( 20f );
+    renderer.setTimeout( Duration.ZERO );
+
+    final var out = new StringWriter();
+    renderer.render( new StringReader( "a $x^2$ b $x^2$" ), out );
+
+    assertEquals( "a $x^2$ b $x^2$", out.toString() );
+  }
+
+  @Test
+  public void test_WarmUp_RenderOnce_OutputAllStagesTimed() {
+    final var report = WarmUp.warmUp( 1 );
+
+    assertEquals(
+        Set.of( "symbols", "fonts", "formulas", "outlines", "glue", "numbers",
+                "render" ),
+        report.getTimings().keySet() );
+  }
+
+  /**
+   * Test that formulas sharing a subformula reuse its box, and render the
+   * same as when laid out without the cache.
+   */
+  @Test
+  public void test_FragmentCache_InputRepeatedSubformula_OutputBoxReused() {
+    final var size = 100f;
+    final var font = new DefaultTeXFont( size );
+    final var cache = new FragmentCache( 100 );
+    final String[] formulas = {
+        "\\frac{1}{\\sqrt{2}} + x", "\\frac{ 1 }{ \\sqrt{2} } - y^2",
+        "\\frac{1}{\\sqrt{2}}_{\\frac{1}{\\sqrt{2}}}"
+    };
+
+    for( final var tex : formulas ) {
+      final var env = new TeXEnvironment( font );
+      env.setFragmentCache( cache );
+
+      final var cached = new TeXFormula( tex ).createBox( env );
+      final var laidOut =
+          new TeXFormula( tex ).createBox( new TeXEnvironment( font ) );
+      assertEquals( toSvg( laidOut, size ), toSvg( cached, size ) );
+    }
+
+    // Only the subscript, in a smaller style, needs another layout.
+    assertEquals( 4, cache.getMisses() );
+    assertEquals( 2, cache.getHits() );
+    assertEquals( 4, cache.size() );
+  }
+
+  /**
+   * Test that formulas share the atoms of characters and small scripted
+   * constructs, and that sharing doesn't change their rendering.
+   */
+  @Test
+  public void test_Parser_InputRepeatedSubformula_OutputAtomsShared() {
+    final var size = 100f;
+    final var font = new DefaultTeXFont( size );
+    final var root = new TeXFormula( "x^2" ).getRoot();
+
+    assertSame( root, new TeXFormula( "x^{2}" ).getRoot() );
+    assertSame( CharAtom.get( 'x', null ), CharAtom.get( 'x', null ) );
+    assertNotSame( CharAtom.get( 'x', null ), CharAtom.get( 'x', "mathrm" ) );
+
+    final var tex = "x^2 + \\mathrm{x}^2 - x^2";
+    final var shared = new TeXFormula( tex ).createBox(
+        new TeXEnvironment( font ) );
+    final var row = new RowAtom( root );
+    row.add( SymbolAtom.get( "plus" ) );
+    row.add( new ScriptsAtom(
+        new RowAtom( new CharAtom( 'x', "mathrm" ) ),
+        null, new CharAtom( '2', null ) ) );
+    row.add( SymbolAtom.get( "minus" ) );
+    row.add( new ScriptsAtom(
+        new CharAtom( 'x', null ), null, new CharAtom( '2', null ) ) );
+
+    assertEquals( toSvg( row.createBox( new TeXEnvironment( font ) ), size ),
+                  toSvg( shared, size ) );
+  }
+
+  /**
+   * Test that formulas written differently but parsed to the same atoms have
+   * the same canonical form and fingerprint, and so the same rendering id.
+   */
+  @Test
+  public void test_CanonicalForm_InputEquivalentFormulas_OutputSameFingerprint()
+      throws IOException {
+    final var form = CanonicalForm.of( new TeXFormula( "x^2" ) );
+
+    assertEquals( "scripts[0 char[0 'x' _] _ char[0 '2' _]]", form.getText() );
+    assertEquals( "f4972bbde3f2a311c7832f81a0356c91", form.getFingerprint() );
+    assertEquals( 0xf4972bbde3f2a311L, form.getFingerprint64() );
+
+    for( final var tex : new String[]{"x^{2}", "x ^ 2", "{x}^{2}"} ) {
+      final var equivalent = CanonicalForm.of( new TeXFormula( tex ) );
+      assertEquals( form, equivalent );
+      assertEquals( form.getFingerprint(), equivalent.getFingerprint() );
+    }
+
+    for( final var tex : new String[]{"x^3", "x_2", "x2", ""} ) {
+      final var different = CanonicalForm.of( new TeXFormula( tex ) );
+      assertNotEquals( form, different );
+      assertNotEquals( form.getFingerprint(), different.getFingerprint() );
+    }
+
+    final var renderer = new InlineMathRenderer( 20f );
+    renderer.setReplacement( ( out, id, tex, svg, first ) ->
+        out.write( format( "[%d:%s:%s]", id, tex, first ) ) );
+
+    final var out = new StringWriter();
+    renderer.render(
+        new StringReader( "$x^2$ $x^{2}$ $$x ^ 2$$ $y$ ${x}^{2}$" ), out );
+
+    assertEquals(
+        "[0:x^2:true] [0:x^{2}:false] [1:x ^ 2:true] [2:y:true] " +
+            "[0:{x}^{2}:false]", out.toString() );
+  }
+
+  private static String toSvg( final Box box, final float size ) {
+    return toSvg( box, size, new SvgGraphics2D() );
+  }
+
+  private static String toSvg(
+      final Box box, final float size, final AbstractGraphics2D g ) {
+    final var layout = new TeXLayout( box, size );
+
+    g.scale( size, size );
+    g.initialize( layout.getWidth(), layout.getHeight() );
+    box.draw( g, layout.getX(), layout.getY() );
+
+    return g.toString();
+  }
+
   private void test_Parser( final AbstractGraphics2D g )
       throws IOException {
     final var size = 100f;